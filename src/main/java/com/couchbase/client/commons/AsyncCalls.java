@@ -0,0 +1,103 @@
+package com.couchbase.client.commons;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import com.couchbase.client.java.util.Blocking;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+
+/**
+ * Waits for the result of the asynchronous calls through which the collections implement their synchronous
+ * methods, either like the synchronous SDK API does (see {@link Blocking}) or by parking the calling thread.
+ *
+ * Parking waits with {@link LockSupport}, without holding any monitor and without allocating more than a
+ * {@link Subscriber}, so that virtual threads unmount from their carrier while they wait: a handful of carrier
+ * threads can then keep thousands of calls in flight. Both ways throw the same exceptions: the error of the call if
+ * it is a {@link RuntimeException}, else a {@link RuntimeException} wrapping it (eg. a {@link TimeoutException}).
+ */
+final class AsyncCalls {
+
+    private AsyncCalls() { }
+
+    /**
+     * Wait for the single value (or null if none) of an asynchronous call.
+     *
+     * @param call the call, which is subscribed to once.
+     * @param timeout how long to wait for the call.
+     * @param unit the unit of <code>timeout</code>.
+     * @param park true to park the calling thread, false to block it like the synchronous SDK API.
+     * @return the value of the call, or null if it completed without emitting any.
+     */
+    static <T> T await(Observable<? extends T> call, long timeout, TimeUnit unit, boolean park) {
+        if (!park) {
+            return Blocking.blockForSingle(call, timeout, unit);
+        }
+        ParkingSubscriber<T> subscriber = new ParkingSubscriber<T>(Thread.currentThread());
+        Subscription subscription = call.subscribe(subscriber);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!subscriber.done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                subscription.unsubscribe();
+                throw new RuntimeException(new TimeoutException());
+            }
+            LockSupport.parkNanos(subscriber, remaining);
+            if (Thread.interrupted()) {
+                //keep the interrupt for the caller, even if the call completed meanwhile
+                Thread.currentThread().interrupt();
+                if (!subscriber.done) {
+                    subscription.unsubscribe();
+                    throw new RuntimeException("Interrupted while waiting for subscription to complete.",
+                            new InterruptedException());
+                }
+            }
+        }
+        if (subscriber.error instanceof RuntimeException) {
+            throw (RuntimeException) subscriber.error;
+        } else if (subscriber.error != null) {
+            throw new RuntimeException(subscriber.error);
+        }
+        return subscriber.value;
+    }
+
+    /**
+     * Records the outcome of a call and unparks the thread waiting for it.
+     */
+    private static final class ParkingSubscriber<T> extends Subscriber<T> {
+
+        private final Thread waiter;
+        private T value;
+        private Throwable error;
+        private volatile boolean done;
+
+        ParkingSubscriber(Thread waiter) {
+            this.waiter = waiter;
+        }
+
+        @Override
+        public void onNext(T next) {
+            //like the synchronous API, keep the last value
+            value = next;
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            complete();
+        }
+
+        @Override
+        public void onCompleted() {
+            complete();
+        }
+
+        private void complete() {
+            //the volatile write publishes the value and the error to the waiter
+            done = true;
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.couchbase.client.commons;
+
+import com.couchbase.client.commons.binary.BinaryFormat;
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.Unpooled;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+
+/**
+ * Reads and writes the {@link BinaryDocument BinaryDocuments} backing the binary collections, taking
+ * care of the {@link BinaryFormat header and compression} and of releasing the underlying buffers.
+ *
+ * The calls go through a {@link CouchbaseCollections}, so that they honor its {@link CollectionOptions}: the
+ * writes have its durability requirements, and the waits park and share the deadline of the current operation
+ * like the ones of the other collections.
+ */
+final class BinaryDocuments {
+
+    private BinaryDocuments() { }
+
+    /**
+     * The uncompressed content of a binary document, along with its CAS.
+     */
+    static final class Content {
+        final byte[] bytes;
+        final long cas;
+
+        Content(byte[] bytes, long cas) {
+            this.bytes = bytes;
+            this.cas = cas;
+        }
+    }
+
+    /**
+     * @return the content of the document, or null if it doesn't exist.
+     */
+    static Content read(CouchbaseCollections collections, String id) {
+        BinaryDocument doc = collections.await(collections.bucket().async().get(id, BinaryDocument.class));
+        if (doc == null) {
+            return null;
+        }
+        ByteBuf buffer = doc.content();
+        try {
+            byte[] stored = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), stored);
+            return new Content(BinaryFormat.unwrap(id, stored), doc.cas());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Replace the content of the document if its CAS still is <code>cas</code>, or create it if
+     * <code>cas</code> is 0.
+     *
+     * @return the new CAS of the document.
+     * @throws com.couchbase.client.java.error.CASMismatchException if the document was concurrently modified.
+     * @throws DocumentAlreadyExistsException if the document was concurrently created.
+     */
+    static long write(CouchbaseCollections collections, String id, BinaryWriter content, long cas) {
+        BinaryDocument doc = BinaryDocument.create(id, wrap(content, collections.options()), cas);
+        if (cas == 0L) {
+            return collections.await(collections.insert(doc)).cas();
+        }
+        return collections.await(collections.replace(doc)).cas();
+    }
+
+    /**
+     * Create the document, or overwrite it if it already exists.
+     */
+    static void reset(CouchbaseCollections collections, String id, BinaryWriter content) {
+        collections.await(collections.upsert(BinaryDocument.create(id, wrap(content, collections.options()))));
+    }
+
+    /**
+     * Create the document, unless it already exists.
+     */
+    static void createIfAbsent(CouchbaseCollections collections, String id, BinaryWriter content) {
+        try {
+            collections.await(collections.insert(BinaryDocument.create(id, wrap(content, collections.options()))));
+        } catch (DocumentAlreadyExistsException ex) {
+            // Ignore concurrent creations, keep on moving.
+        }
+    }
+
+    private static ByteBuf wrap(BinaryWriter content, CollectionOptions options) {
+        //small documents are not worth compressing
+        Compression compression = content.size() < options.compressionThreshold()
+                ? Compression.NONE : options.compression();
+        return Unpooled.wrappedBuffer(BinaryFormat.wrap(content.buffer(), content.size(), compression));
+    }
+}
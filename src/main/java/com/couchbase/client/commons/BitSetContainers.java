@@ -0,0 +1,217 @@
+package com.couchbase.client.commons;
+
+import com.couchbase.client.commons.binary.BinaryReader;
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * Encodes the {@link #CHUNK_BITS} bits of a {@link CouchbaseBitSet} chunk in the smallest of three roaring-style
+ * containers:
+ * <ul>
+ *     <li>an array container, the delta-encoded positions of the set bits, for sparse chunks,</li>
+ *     <li>a run container, the delta-encoded start and length of each run of set bits, for clustered chunks,</li>
+ *     <li>a bitmap container, the raw words, for dense chunks.</li>
+ * </ul>
+ * In memory, a chunk is always a bitmap of {@link #WORDS} words.
+ */
+final class BitSetContainers {
+
+    static final int CHUNK_BITS = 1 << 16;
+    static final int WORDS = CHUNK_BITS / 64;
+
+    private static final int ARRAY = 0;
+    private static final int RUNS = 1;
+    private static final int BITMAP = 2;
+
+    /**
+     * Beyond this cardinality, an array container is larger than a bitmap container.
+     */
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    private BitSetContainers() { }
+
+    static BinaryWriter encode(long[] words) {
+        int cardinality = 0;
+        int runs = 0;
+        long previousWord = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+            //a run starts at each set bit whose previous bit is clear
+            runs += Long.bitCount(word & ~((word << 1) | (previousWord >>> 63)));
+            previousWord = word;
+        }
+
+        BinaryWriter runContainer = encodeRuns(words, runs);
+        if (cardinality <= MAX_ARRAY_CARDINALITY) {
+            BinaryWriter arrayContainer = encodeArray(words, cardinality);
+            if (arrayContainer.size() <= runContainer.size()) {
+                return arrayContainer;
+            }
+        }
+        if (runContainer.size() < 1 + WORDS * 8) {
+            return runContainer;
+        }
+        BinaryWriter out = new BinaryWriter(1 + WORDS * 8).writeByte(BITMAP);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+        return out;
+    }
+
+    static long[] decode(String id, byte[] content) {
+        BinaryReader in = new BinaryReader(content);
+        long[] words = new long[WORDS];
+        int type = in.readByte();
+        switch (type) {
+            case ARRAY:
+                long count = in.readVarLong();
+                int position = -1;
+                for (long i = 0; i < count; i++) {
+                    position += (int) in.readVarLong() + 1;
+                    checkPosition(id, position);
+                    words[position >>> 6] |= 1L << position;
+                }
+                break;
+            case RUNS:
+                long runs = in.readVarLong();
+                int end = 0;
+                for (long i = 0; i < runs; i++) {
+                    int start = end + (int) in.readVarLong();
+                    end = start + (int) in.readVarLong() + 1;
+                    checkPosition(id, end - 1);
+                    setRange(words, start, end);
+                }
+                break;
+            case BITMAP:
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] = in.readLong();
+                }
+                break;
+            default:
+                throw new TranscodingException("Document " + id + " has an unknown container type " + type);
+        }
+        return words;
+    }
+
+    /**
+     * Set the bits from <code>from</code> (inclusive) to <code>to</code> (exclusive).
+     */
+    static void setRange(long[] words, int from, int to) {
+        for (int bit = from; bit < to; ) {
+            int word = bit >>> 6;
+            int last = Math.min(to, (word + 1) << 6);
+            words[word] |= mask(bit, last);
+            bit = last;
+        }
+    }
+
+    /**
+     * Clear the bits from <code>from</code> (inclusive) to <code>to</code> (exclusive).
+     */
+    static void clearRange(long[] words, int from, int to) {
+        for (int bit = from; bit < to; ) {
+            int word = bit >>> 6;
+            int last = Math.min(to, (word + 1) << 6);
+            words[word] &= ~mask(bit, last);
+            bit = last;
+        }
+    }
+
+    /**
+     * @return the mask of the bits from <code>from</code> to <code>to</code>, within the same word.
+     */
+    private static long mask(int from, int to) {
+        int length = to - from;
+        return (length == 64 ? -1L : (1L << length) - 1) << from;
+    }
+
+    private static BinaryWriter encodeArray(long[] words, int cardinality) {
+        BinaryWriter out = new BinaryWriter(16 + cardinality * 2).writeByte(ARRAY).writeVarLong(cardinality);
+        int previous = -1;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int position = (w << 6) + Long.numberOfTrailingZeros(word);
+                out.writeVarLong(position - previous - 1);
+                previous = position;
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    private static BinaryWriter encodeRuns(long[] words, int runs) {
+        BinaryWriter out = new BinaryWriter(16 + runs * 4).writeByte(RUNS).writeVarLong(runs);
+        int end = 0;
+        int bit = nextSetBit(words, 0);
+        while (bit >= 0) {
+            int runEnd = nextClearBit(words, bit);
+            out.writeVarLong(bit - end).writeVarLong(runEnd - bit - 1);
+            end = runEnd;
+            bit = nextSetBit(words, runEnd);
+        }
+        return out;
+    }
+
+    /**
+     * @return the position of the first set bit at or after <code>from</code>, or -1 if there is none.
+     */
+    static int nextSetBit(long[] words, int from) {
+        if (from >= CHUNK_BITS) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the position of the first clear bit at or after <code>from</code>, or {@link #CHUNK_BITS}.
+     */
+    static int nextClearBit(long[] words, int from) {
+        if (from >= CHUNK_BITS) {
+            return CHUNK_BITS;
+        }
+        int w = from >>> 6;
+        long word = ~words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == words.length) {
+                return CHUNK_BITS;
+            }
+            word = ~words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the position of the last set bit, or -1 if there is none.
+     */
+    static int lastSetBit(long[] words) {
+        for (int w = words.length - 1; w >= 0; w--) {
+            if (words[w] != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(words[w]);
+            }
+        }
+        return -1;
+    }
+
+    static int cardinality(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    private static void checkPosition(String id, int position) {
+        if (position < 0 || position >= CHUNK_BITS) {
+            throw new TranscodingException("Document " + id + " has an invalid bit position " + position);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.couchbase.client.commons;
+
+import rx.Observable;
+
+/**
+ * A stream of the changes of documents, that keeps a {@link LiveView} up to date without fetching the document
+ * again. Implementations typically sit on top of the database change protocol (DCP) of the cluster, or of any
+ * other feed of mutations; {@link LocalChangeSource} is an in-memory stand-in, eg. for tests.
+ */
+public interface ChangeSource {
+
+    /**
+     * Stream the changes of a document that happen after the subscription. For a given document, the changes
+     * must be emitted in the order in which they were applied, and none of them must be skipped (although
+     * successive changes can be conflated into the latest one, as each change carries the whole document).
+     *
+     * @param id the id of the document.
+     * @return the changes of the document, which can be emitted on any thread.
+     */
+    Observable<DocumentChange> changes(String id);
+}
@@ -0,0 +1,468 @@
+package com.couchbase.client.commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.java.document.json.JsonValue;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * A CollectionBatch queues reads and writes against any number of {@link CouchbaseMap} and
+ * {@link CouchbaseArrayList}, and {@link #execute() executes} them all at once.
+ *
+ * Operations that target the same document are grouped into as few multi-mutations and multi-lookups
+ * as possible, and the operations for different documents are all dispatched concurrently through
+ * the asynchronous API. Executing the batch blocks until every operation has completed, so it takes
+ * roughly as long as the slowest document rather than the sum of all the round trips.
+ *
+ * For a given document, the writes are applied (in the order they were queued) before the reads, so
+ * reads observe the writes of the same batch. If a write fails, the remaining operations on the same
+ * document fail with the same error, while other documents are not affected.
+ *
+ * If the collections have {@link CollectionOptions#durability() durability requirements}, all the writes to a
+ * document share a single durability wait (group commit), instead of waiting for each write in turn. They only
+ * succeed once that wait does.
+ *
+ * The batch waits for its operations according to the {@link CollectionOptions} of the collection of its first
+ * operation (eg. {@link CollectionOptions#parkingCalls() parking}, or the
+ * {@link CollectionOptions#operationTimeoutNanos() operation timeout}). Reads are always served by the active
+ * node, even if the collections have {@link CollectionOptions#replicaReads() replica reads} enabled, so that they
+ * observe the writes of the same batch.
+ *
+ * Each queued operation counts as one operation on its key (or list document) for
+ * {@link CollectionOptions#hotKeyCapacity() hot key tracking}, like the single calls. Batched writes are blind
+ * mutations without CAS, like {@link CouchbaseMap#upsert(String, Object)}, so they never record conflicts.
+ *
+ * Note that since they don't read the previous state of the document, batched writes don't return
+ * previous values. A CollectionBatch can only be executed once and is not thread-safe.
+ */
+public class CollectionBatch {
+
+    private final Map<String, DocumentOperations> documents = new LinkedHashMap<String, DocumentOperations>();
+    private boolean executed = false;
+
+    /**
+     * Queue a {@link CouchbaseMap#get(Object)}. The value is null if the key is absent.
+     *
+     * @param map the map to read from.
+     * @param key the key to get.
+     * @param <V> the type of values in the map.
+     * @return the {@link Result} that will hold the value once the batch is executed.
+     */
+    public <V> Result<V> get(CouchbaseMap<V> map, String key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        Result<V> result = new Result<V>();
+        String path = SubdocPaths.key(key);
+        map.collections().recordOperation(map.id(), key);
+        operations(map.collections(), map.id()).reads.add(new Read<V>(path, Lookup.GET, result) {
+            @Override
+            V interpret(DocumentFragment<Lookup> fragment, int index) {
+                if (fragment.status(index) == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                    return null;
+                }
+                return (V) fragment.content(index);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Queue a {@link CouchbaseMap#containsKey(Object)}.
+     *
+     * @param map the map to read from.
+     * @param key the key to check.
+     * @return the {@link Result} that will tell if the key is present once the batch is executed.
+     */
+    public Result<Boolean> containsKey(CouchbaseMap<?> map, String key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        Result<Boolean> result = new Result<Boolean>();
+        String path = SubdocPaths.key(key);
+        map.collections().recordOperation(map.id(), key);
+        operations(map.collections(), map.id()).reads.add(new Read<Boolean>(path, Lookup.EXIST, result) {
+            @Override
+            Boolean interpret(DocumentFragment<Lookup> fragment, int index) {
+                return fragment.exists(index);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Queue a {@link CouchbaseArrayList#get(int)}. The {@link Result} fails with an
+     * {@link IndexOutOfBoundsException} if the index is out of range.
+     *
+     * @param list the list to read from.
+     * @param index the index of the element to get.
+     * @param <E> the type of values in the list.
+     * @return the {@link Result} that will hold the element once the batch is executed.
+     */
+    public <E> Result<E> get(final CouchbaseArrayList<E> list, final int index) {
+        //fail fast on negative values, as they are interpreted as "starting from the back of the array" otherwise
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        Result<E> result = new Result<E>();
+        list.collections().recordOperation(list.id(), null);
+        operations(list.collections(), list.id()).reads.add(new Read<E>(SubdocPaths.index(index), Lookup.GET, result) {
+            @Override
+            E interpret(DocumentFragment<Lookup> fragment, int i) {
+                if (fragment.status(i) == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                return list.decode(fragment.content(i));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Queue a {@link CouchbaseMap#put(String, Object)}. Unlike the map's own method, the previous value
+     * is not fetched.
+     *
+     * @param map the map to write to.
+     * @param key the key to put.
+     * @param value the value to associate with the key.
+     * @param <V> the type of values in the map.
+     * @return the {@link Result} that will tell if the write succeeded once the batch is executed.
+     */
+    public <V> Result<Void> put(CouchbaseMap<V> map, final String key, final V value) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        if (!JsonValue.checkType(value)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+        Result<Void> result = new Result<Void>();
+        map.collections().recordOperation(map.id(), key);
+        DocumentOperations operations = operations(map.collections(), map.id());
+        //the writes keep the expiry of the map's document, which the server would otherwise reset
+        operations.expiry = map.expiry();
+        operations.requireDurability(map.collections().options().durability());
+        operations.writes.add(new Write(result) {
+            @Override
+            void addTo(AsyncMutateInBuilder builder) {
+                builder.upsert(SubdocPaths.key(key), value, false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Queue a {@link CouchbaseArrayList#add(Object)}.
+     *
+     * @param list the list to write to.
+     * @param element the element to append to the list.
+     * @param <E> the type of values in the list.
+     * @return the {@link Result} that will tell if the write succeeded once the batch is executed.
+     */
+    public <E> Result<Void> add(CouchbaseArrayList<E> list, final E element) {
+        if (!JsonValue.checkType(element)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+        Result<Void> result = new Result<Void>();
+        list.collections().recordOperation(list.id(), null);
+        DocumentOperations operations = operations(list.collections(), list.id());
+        operations.requireDurability(list.collections().options().durability());
+        operations.writes.add(new Write(result) {
+            @Override
+            void addTo(AsyncMutateInBuilder builder) {
+                builder.arrayAppend("", element, false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the number of distinct documents targeted by the operations queued so far.
+     */
+    public int documentCount() {
+        return documents.size();
+    }
+
+    /**
+     * Execute all the queued operations, blocking until they have all completed. Failures are reported
+     * through each operation's {@link Result} rather than thrown from this method, including running out of
+     * time: the operations still pending then fail with the timeout.
+     *
+     * @throws IllegalStateException if the batch has already been executed.
+     */
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("The batch has already been executed");
+        }
+        executed = true;
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        CouchbaseCollections collections = documents.values().iterator().next().collections;
+        List<Observable<Object>> all = new ArrayList<Observable<Object>>(documents.size());
+        long timeout = 0;
+        for (DocumentOperations operations : documents.values()) {
+            //each document needs one round trip per chunk of writes, plus one for the reads
+            long documentTimeout = operations.collections.bucket().environment().kvTimeout() * operations.rounds();
+            all.add(operations.execute(documentTimeout));
+            timeout = Math.max(timeout, documentTimeout);
+        }
+        Long outer = collections.beginOperation();
+        try {
+            collections.await(Observable.merge(all).lastOrDefault(null), TimeUnit.MILLISECONDS.toNanos(timeout));
+        } catch (RuntimeException e) {
+            for (DocumentOperations operations : documents.values()) {
+                operations.failPending(e);
+            }
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    private DocumentOperations operations(CouchbaseCollections collections, String id) {
+        if (executed) {
+            throw new IllegalStateException("The batch has already been executed");
+        }
+        String key = collections.bucket().name() + "/" + id;
+        DocumentOperations operations = documents.get(key);
+        if (operations == null) {
+            operations = new DocumentOperations(collections, id);
+            documents.put(key, operations);
+        }
+        return operations;
+    }
+
+    /**
+     * The outcome of an operation queued in a {@link CollectionBatch}, available once the batch has been
+     * executed.
+     *
+     * @param <T> the type of the operation's value.
+     */
+    public static final class Result<T> {
+
+        private volatile boolean done = false;
+        private volatile T value;
+        private volatile RuntimeException error;
+
+        private Result() { }
+
+        /**
+         * @return true if the operation has completed, successfully or not.
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return true if the operation has completed successfully.
+         */
+        public boolean isSuccess() {
+            return done && error == null;
+        }
+
+        /**
+         * @return the value of the operation.
+         * @throws IllegalStateException if the batch hasn't been executed yet.
+         * @throws RuntimeException the error with which the operation failed, if any.
+         */
+        public T value() {
+            if (!done) {
+                throw new IllegalStateException("The batch hasn't been executed");
+            }
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+
+        /**
+         * @return the error with which the operation failed, or null.
+         */
+        public RuntimeException error() {
+            return error;
+        }
+
+        synchronized void complete(T value) {
+            //a late response doesn't override the timeout of the batch
+            if (done) {
+                return;
+            }
+            this.value = value;
+            this.done = true;
+        }
+
+        synchronized void fail(Throwable error) {
+            if (done) {
+                return;
+            }
+            if (error instanceof RuntimeException) {
+                this.error = (RuntimeException) error;
+            } else {
+                this.error = new RuntimeException(error);
+            }
+            this.done = true;
+        }
+    }
+
+    private static abstract class Read<T> {
+
+        final String path;
+        final Lookup mode;
+        final Result<T> result;
+
+        Read(String path, Lookup mode, Result<T> result) {
+            this.path = path;
+            this.mode = mode;
+            this.result = result;
+        }
+
+        abstract T interpret(DocumentFragment<Lookup> fragment, int index);
+
+        void complete(DocumentFragment<Lookup> fragment, int index) {
+            try {
+                result.complete(interpret(fragment, index));
+            } catch (RuntimeException e) {
+                result.fail(e);
+            }
+        }
+    }
+
+    private static abstract class Write {
+
+        final Result<Void> result;
+
+        Write(Result<Void> result) {
+            this.result = result;
+        }
+
+        abstract void addTo(AsyncMutateInBuilder builder);
+    }
+
+    /**
+     * The operations queued for a single document.
+     */
+    private static class DocumentOperations {
+
+        final CouchbaseCollections collections;
+        final String id;
+        final List<Write> writes = new ArrayList<Write>();
+        final List<Read<?>> reads = new ArrayList<Read<?>>();
+        int expiry = 0;
+        Durability durability = Durability.NONE;
+
+        DocumentOperations(CouchbaseCollections collections, String id) {
+            this.collections = collections;
+            this.id = id;
+        }
+
+        /**
+         * Require the writes to the document to be durable. A single durability wait, on the last chunk of writes,
+         * covers all of them, as the mutations of a document are only persisted and replicated in order.
+         */
+        void requireDurability(Durability required) {
+            durability = durability.strongest(required);
+        }
+
+        int rounds() {
+            //plus one for the durability wait
+            return MultiLookup.chunkCount(writes.size()) + (reads.isEmpty() ? 0 : 1) + (durability.isNone() ? 0 : 1);
+        }
+
+        Observable<Object> execute(long timeoutMillis) {
+            //chunks of writes are applied one after the other to preserve their order
+            List<Observable<Object>> steps = new ArrayList<Observable<Object>>();
+            for (int from = 0; from < writes.size(); from += MultiLookup.MAX_SPECS) {
+                final List<Write> chunk = writes.subList(from, Math.min(from + MultiLookup.MAX_SPECS, writes.size()));
+                final boolean last = from + MultiLookup.MAX_SPECS >= writes.size();
+                //durable writes only succeed once the last chunk, whose durability covers them all, is durable
+                final List<Write> completed = durability.isNone() ? chunk
+                        : last ? writes : Collections.<Write>emptyList();
+                steps.add(Observable.defer(new Func0<Observable<Object>>() {
+                    @Override
+                    public Observable<Object> call() {
+                        AsyncMutateInBuilder builder = collections.bucket().async().mutateIn(id).withExpiry(expiry);
+                        if (last) {
+                            durability.applyTo(builder);
+                        }
+                        for (Write write : chunk) {
+                            write.addTo(builder);
+                        }
+                        return builder.execute().map(new Func1<DocumentFragment<Mutation>, Object>() {
+                            @Override
+                            public Object call(DocumentFragment<Mutation> fragment) {
+                                for (Write write : completed) {
+                                    write.result.complete(null);
+                                }
+                                return fragment;
+                            }
+                        });
+                    }
+                }));
+            }
+            if (!reads.isEmpty()) {
+                steps.add(Observable.defer(new Func0<Observable<Object>>() {
+                    @Override
+                    public Observable<Object> call() {
+                        return lookups();
+                    }
+                }));
+            }
+            return Observable.concat(Observable.from(steps))
+                    .timeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .doOnError(new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable error) {
+                            failPending(error);
+                        }
+                    })
+                    .onErrorResumeNext(Observable.empty());
+        }
+
+        private Observable<Object> lookups() {
+            List<String> paths = new ArrayList<String>(reads.size());
+            List<Lookup> modes = new ArrayList<Lookup>(reads.size());
+            for (Read<?> read : reads) {
+                paths.add(read.path);
+                modes.add(read.mode);
+            }
+            final int[] chunkIndex = new int[1];
+            return MultiLookup.lookupAsync(collections.bucket().async(), id, paths, modes)
+                    .map(new Func1<DocumentFragment<Lookup>, Object>() {
+                        @Override
+                        public Object call(DocumentFragment<Lookup> fragment) {
+                            int offset = chunkIndex[0]++ * MultiLookup.MAX_SPECS;
+                            for (int i = 0; i < fragment.size(); i++) {
+                                reads.get(offset + i).complete(fragment, i);
+                            }
+                            return fragment;
+                        }
+                    });
+        }
+
+        void failPending(Throwable error) {
+            for (Write write : writes) {
+                if (!write.result.isDone()) {
+                    write.result.fail(error);
+                }
+            }
+            for (Read<?> read : reads) {
+                if (!read.result.isDone()) {
+                    read.result.fail(error);
+                }
+            }
+        }
+    }
+}
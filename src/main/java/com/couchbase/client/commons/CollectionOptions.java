@@ -0,0 +1,392 @@
+package com.couchbase.client.commons;
+
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+
+/**
+ * Options that tune how the collections created through a {@link CouchbaseCollections} interact with
+ * Couchbase. Instances are immutable and are created through a {@link Builder}:
+ *
+ * <pre>
+ * CollectionOptions options = CollectionOptions.builder()
+ *     .coalesceReads(true)
+ *     .build();
+ * </pre>
+ */
+public class CollectionOptions {
+
+    /**
+     * The default options, used by the collections' public constructors.
+     */
+    public static final CollectionOptions DEFAULT = builder().build();
+
+    private final boolean coalesceReads;
+    private final Compression compression;
+    private final int compressionThreshold;
+    private final int maxAttempts;
+    private final boolean adaptiveWrites;
+    private final long addCombiningWindowNanos;
+    private final int hotKeyCapacity;
+    private final boolean parkingCalls;
+    private final long operationTimeoutNanos;
+    private final Durability durability;
+    private final ReplicaReads replicaReads;
+
+    private CollectionOptions(Builder builder) {
+        this.coalesceReads = builder.coalesceReads;
+        this.compression = builder.compression;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.maxAttempts = builder.maxAttempts;
+        this.adaptiveWrites = builder.adaptiveWrites;
+        this.addCombiningWindowNanos = builder.addCombiningWindowNanos;
+        this.hotKeyCapacity = builder.hotKeyCapacity;
+        this.parkingCalls = builder.parkingCalls;
+        this.operationTimeoutNanos = builder.operationTimeoutNanos;
+        this.durability = builder.durability;
+        this.replicaReads = builder.replicaReads;
+    }
+
+    /**
+     * @return a new {@link Builder}, initialized with the default values.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if concurrent identical full-document reads share a single request.
+     * @see Builder#coalesceReads(boolean)
+     */
+    public boolean coalesceReads() {
+        return coalesceReads;
+    }
+
+    /**
+     * @return the {@link Compression} applied when writing the documents of binary collections.
+     * @see Builder#compression(Compression)
+     */
+    public Compression compression() {
+        return compression;
+    }
+
+    /**
+     * @return the size in bytes under which documents are written uncompressed.
+     * @see Builder#compressionThreshold(int)
+     */
+    public int compressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @return the maximum number of attempts of the optimistic locking loops that support it.
+     * @see Builder#maxAttempts(int)
+     */
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return true if writes adapt to the contention on each document.
+     * @see Builder#adaptiveWrites(boolean)
+     */
+    public boolean adaptiveWrites() {
+        return adaptiveWrites;
+    }
+
+    /**
+     * @return how long, in nanoseconds, concurrent additions wait to be combined, 0 if they are not combined.
+     * @see Builder#addCombiningWindow(long, TimeUnit)
+     */
+    public long addCombiningWindowNanos() {
+        return addCombiningWindowNanos;
+    }
+
+    /**
+     * @return the number of documents and keys tracked by hot key tracking, 0 if it is disabled.
+     * @see Builder#trackHotKeys(int)
+     */
+    public int hotKeyCapacity() {
+        return hotKeyCapacity;
+    }
+
+    /**
+     * @return true if synchronous methods park the calling thread while waiting for the asynchronous API.
+     * @see Builder#parkingCalls(boolean)
+     */
+    public boolean parkingCalls() {
+        return parkingCalls;
+    }
+
+    /**
+     * @return the time budget, in nanoseconds, of each operation of the collections, 0 if it is only bounded by
+     *   the key/value timeout of each request.
+     * @see Builder#operationTimeout(long, TimeUnit)
+     */
+    public long operationTimeoutNanos() {
+        return operationTimeoutNanos;
+    }
+
+    /**
+     * @return the durability requirements of the writes of the collections.
+     * @see Builder#durability(PersistTo, ReplicateTo)
+     */
+    public Durability durability() {
+        return durability;
+    }
+
+    /**
+     * @return how reads of whole documents are spread over the replicas.
+     * @see Builder#replicaReads(ReplicaReads)
+     */
+    public ReplicaReads replicaReads() {
+        return replicaReads;
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionOptions{" +
+                "coalesceReads=" + coalesceReads +
+                ", compression=" + compression +
+                ", compressionThreshold=" + compressionThreshold +
+                ", maxAttempts=" + maxAttempts +
+                ", adaptiveWrites=" + adaptiveWrites +
+                ", addCombiningWindowNanos=" + addCombiningWindowNanos +
+                ", hotKeyCapacity=" + hotKeyCapacity +
+                ", parkingCalls=" + parkingCalls +
+                ", operationTimeoutNanos=" + operationTimeoutNanos +
+                ", durability=" + durability +
+                ", replicaReads=" + replicaReads +
+                '}';
+    }
+
+    public static class Builder {
+
+        private boolean coalesceReads = false;
+        private Compression compression = Compression.NONE;
+        private int compressionThreshold = 1024;
+        private int maxAttempts = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+        private boolean adaptiveWrites = false;
+        private long addCombiningWindowNanos = 0;
+        private int hotKeyCapacity = 0;
+        private boolean parkingCalls = false;
+        private long operationTimeoutNanos = 0;
+        private Durability durability = Durability.NONE;
+        private ReplicaReads replicaReads = ReplicaReads.NONE;
+
+        private Builder() { }
+
+        /**
+         * When enabled, threads that concurrently fetch the same whole document (eg. to compute a
+         * size(), iterate or check contains() on a hot collection) share a single in-flight request
+         * and its result instead of each issuing their own. Operations that need an up-to-date CAS
+         * (retries of CAS loops) never join a request that was already in flight. Defaults to false.
+         *
+         * Note that the JSON values decoded from a shared read are shared between the callers, so
+         * sub-objects and sub-arrays obtained from a collection should be treated as read-only.
+         *
+         * @param coalesceReads true to coalesce concurrent identical reads.
+         * @return this builder for chaining purposes.
+         */
+        public Builder coalesceReads(boolean coalesceReads) {
+            this.coalesceReads = coalesceReads;
+            return this;
+        }
+
+        /**
+         * The {@link Compression} to apply when writing the documents of binary collections (eg.
+         * {@link CouchbaseBinaryList}) and of {@link CouchbaseCompressedMap}. Documents are always read with the codec they were written with,
+         * so this can be changed at any time. Defaults to {@link Compression#NONE}.
+         *
+         * @param compression the compression codec.
+         * @return this builder for chaining purposes.
+         */
+        public Builder compression(Compression compression) {
+            if (compression == null) {
+                throw new NullPointerException("compression");
+            }
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * The size in bytes (before compression) under which documents are written uncompressed, as the
+         * gain on small documents doesn't make up for the CPU cost. Defaults to 1024.
+         *
+         * @param compressionThreshold the threshold, 0 to compress all documents.
+         * @return this builder for chaining purposes.
+         */
+        public Builder compressionThreshold(int compressionThreshold) {
+            if (compressionThreshold < 0) {
+                throw new IllegalArgumentException("compressionThreshold must be positive: " + compressionThreshold);
+            }
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * The maximum number of times a read-modify-write operation (eg. {@link CouchbaseMap#update(Mutator)}
+         * or {@link CouchbaseMap#compute(String, java.util.function.BiFunction)}) is attempted when the document
+         * keeps being modified concurrently, after which it fails with a
+         * {@link java.util.ConcurrentModificationException}.
+         * Defaults to {@link CouchbaseArrayList#MAX_OPTIMISTIC_LOCKING_ATTEMPTS}.
+         *
+         * @param maxAttempts the maximum number of attempts, at least 1.
+         * @return this builder for chaining purposes.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * When enabled, the rate of CAS mismatches of the optimistic locking loops (eg. in
+         * {@link CouchbaseMap#put(String, Object)}, {@link CouchbaseArrayList#set(int, Object)} or
+         * {@link CouchbaseArraySet#add(Object)}) is tracked per document. Once a document is contended,
+         * the attempts made on it through the same {@link CouchbaseCollections} take turns instead of racing
+         * each other, so that throughput degrades gracefully rather than collapsing into retries. Defaults to
+         * false.
+         *
+         * This is the only way writes adapt: a contended document is still written through the same optimistic
+         * locking loop, one attempt at a time from this JVM, and never switches to blind or combined mutations.
+         *
+         * Writers that don't need the previous value can also avoid optimistic locking altogether with
+         * {@link CouchbaseMap#upsert(String, Object)} and {@link CouchbaseArrayList#replace(int, Object)}.
+         *
+         * @param adaptiveWrites true to adapt writes to contention.
+         * @return this builder for chaining purposes.
+         */
+        public Builder adaptiveWrites(boolean adaptiveWrites) {
+            this.adaptiveWrites = adaptiveWrites;
+            return this;
+        }
+
+        /**
+         * When set, concurrent {@link CouchbaseArraySet#add(Object)} and {@link CouchbaseArrayList#add(Object)}
+         * to the same document through the same {@link CouchbaseCollections} are combined: the first one waits for
+         * <code>window</code>, and the additions that arrive meanwhile are written along with it in a single
+         * mutation. Each addition still returns its own result. This adds up to <code>window</code> of latency to
+         * each addition, but turns many concurrent CAS attempts on a hot document into a single one. Defaults to 0,
+         * which disables combining.
+         *
+         * @param window how long additions wait for others to combine with, typically in the order of 100
+         *   microseconds.
+         * @param unit the unit of <code>window</code>.
+         * @return this builder for chaining purposes.
+         */
+        public Builder addCombiningWindow(long window, TimeUnit unit) {
+            if (window < 0) {
+                throw new IllegalArgumentException("window must be positive: " + window);
+            }
+            this.addCombiningWindowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * When set, the operations and CAS conflicts of the {@link CouchbaseMap}, {@link CouchbaseArrayList} and
+         * {@link CouchbaseArraySet} created through the {@link CouchbaseCollections} are counted per document and
+         * per map key, to find out which ones are hot (see {@link CouchbaseCollections#hotKeys()}). Memory is
+         * bounded: only the approximate top <code>capacity</code> documents and keys are tracked. Defaults to 0,
+         * which disables tracking.
+         *
+         * @param capacity the number of documents, and of keys, to track.
+         * @return this builder for chaining purposes.
+         */
+        public Builder trackHotKeys(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            this.hotKeyCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * When enabled, the synchronous methods of the collections created through the {@link CouchbaseCollections}
+         * wait for the asynchronous API by parking the calling thread with
+         * {@link java.util.concurrent.locks.LockSupport}, instead of going through the blocking machinery of the
+         * synchronous API. This is meant for callers running on virtual threads (JDK 21+), which then unmount from
+         * their carrier thread for the whole wait, so that thousands of operations can be in flight on a few carrier
+         * threads. Timeouts and exceptions are the same either way. Defaults to false.
+         *
+         * @param parkingCalls true to park while waiting for calls.
+         * @return this builder for chaining purposes.
+         */
+        public Builder parkingCalls(boolean parkingCalls) {
+            this.parkingCalls = parkingCalls;
+            return this;
+        }
+
+        /**
+         * The total time budget of each operation of the collections created through the
+         * {@link CouchbaseCollections}. The budget is shared by all the attempts of an optimistic locking loop (eg.
+         * {@link CouchbaseMap#put(String, Object)}) and by all the requests they make, including the waits for
+         * contended documents and combined writes. Once it runs out, the operation fails with an
+         * {@link OperationTimeoutException}. Defaults to 0, in which case only each request is bounded, by the
+         * key/value timeout of the bucket's environment.
+         *
+         * Deadlines can also be set on a single call, or a group of calls, with
+         * {@link CouchbaseCollections#withTimeout(long, TimeUnit, rx.functions.Func0)}.
+         *
+         * @param timeout the time budget of each operation, 0 to disable.
+         * @param unit the unit of <code>timeout</code>.
+         * @return this builder for chaining purposes.
+         */
+        public Builder operationTimeout(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout must be positive: " + timeout);
+            }
+            this.operationTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * The durability requirements of the writes of the collections created through the
+         * {@link CouchbaseCollections}: each mutation only returns once it is persisted to <code>persistTo</code>
+         * nodes and replicated to <code>replicateTo</code> replicas, or fails with a
+         * {@link com.couchbase.client.java.error.DurabilityException}. Defaults to none.
+         *
+         * As the durability wait is per mutation, writes that are grouped into a single mutation share it: see
+         * {@link #addCombiningWindow(long, TimeUnit)}, {@link CouchbaseMap#update(Mutator)} and
+         * {@link CollectionBatch}, whose writes to a document share a single wait.
+         *
+         * @param persistTo the number of nodes mutations must be persisted to.
+         * @param replicateTo the number of replicas mutations must be replicated to.
+         * @return this builder for chaining purposes.
+         */
+        public Builder durability(PersistTo persistTo, ReplicateTo replicateTo) {
+            this.durability = Durability.of(persistTo, replicateTo);
+            return this;
+        }
+
+        /**
+         * Serve the reads of the {@link CouchbaseMap}, {@link CouchbaseArrayList} and {@link CouchbaseArraySet}
+         * created through the {@link CouchbaseCollections} from the replicas of their documents too, to spread
+         * the load of hot, read-mostly documents (eg. configuration) off their active node. The reads that only
+         * need a part of the document (eg. {@link CouchbaseMap#get(Object)}) then fetch the whole document, as
+         * replicas don't serve partial reads. Defaults to {@link ReplicaReads#NONE}.
+         *
+         * <b>Reads from replicas may return stale values</b>, see {@link ReplicaReads}. The collections flag it
+         * with their <code>readsMayBeStale()</code> method (eg. {@link CouchbaseMap#readsMayBeStale()}). Writes,
+         * the reads of their optimistic locking loops and snapshots always use the active node.
+         *
+         * @param replicaReads how to spread reads over the replicas.
+         * @return this builder for chaining purposes.
+         */
+        public Builder replicaReads(ReplicaReads replicaReads) {
+            if (replicaReads == null) {
+                throw new NullPointerException("replicaReads");
+            }
+            this.replicaReads = replicaReads;
+            return this;
+        }
+
+        public CollectionOptions build() {
+            return new CollectionOptions(this);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.couchbase.client.commons;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks the rate of CAS mismatches of the optimistic locking loops per document, and serializes the attempts
+ * made from this JVM on the documents that are contended.
+ *
+ * Without it, N threads that write to the same document all read it, then race to mutate it: one wins and the
+ * N-1 others fail their CAS and retry, so the number of attempts grows quadratically with the number of writers
+ * until they exhaust their maximum attempts. Once a document is detected as contended, attempts from this JVM
+ * take turns instead, so that CAS mismatches are only caused by other clients. Serializing the attempts is the
+ * only escalation: they still read the document and mutate it with its CAS, one at a time.
+ *
+ * A document is contended when its mismatch rate (an exponentially weighted moving average over its recent
+ * attempts) exceeds {@link #CONTENDED_RATE}, and stays so for {@link #HOLD_NANOS} after the last mismatch.
+ */
+final class ContentionTracker {
+
+    static final double CONTENDED_RATE = 0.25;
+    static final long HOLD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The weight of the latest attempt in the moving average.
+     */
+    private static final double WEIGHT = 0.2;
+    /**
+     * The rate under which an uncontended document stops being tracked.
+     */
+    private static final double FORGET_RATE = 0.01;
+
+    /**
+     * The permit to perform an attempt, which must be released once the attempt is done.
+     */
+    interface Permit {
+        void release();
+    }
+
+    static final Permit NO_PERMIT = new Permit() {
+        @Override
+        public void release() { }
+    };
+
+    private final ConcurrentMap<String, DocumentContention> documents =
+            new ConcurrentHashMap<String, DocumentContention>();
+
+    /**
+     * Get the permit to attempt a write on a document, waiting for the other attempts from this JVM if the
+     * document is contended.
+     */
+    Permit acquire(String id) {
+        return acquire(id, Long.MAX_VALUE);
+    }
+
+    /**
+     * Get the permit to attempt a write on a document, waiting at most <code>timeoutNanos</code> for the other
+     * attempts from this JVM if the document is contended.
+     *
+     * @return the permit, or null if the wait timed out.
+     */
+    Permit acquire(String id, long timeoutNanos) {
+        DocumentContention contention = documents.get(id);
+        if (contention == null || !contention.isContended(System.nanoTime())) {
+            return NO_PERMIT;
+        }
+        if (timeoutNanos == Long.MAX_VALUE) {
+            contention.lock.lock();
+            return contention;
+        }
+        try {
+            return contention.lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS) ? contention : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a contended document", e);
+        }
+    }
+
+    /**
+     * Record an attempt that failed with a CAS mismatch.
+     */
+    void conflict(String id) {
+        DocumentContention contention = documents.get(id);
+        if (contention == null) {
+            DocumentContention created = new DocumentContention();
+            contention = documents.putIfAbsent(id, created);
+            if (contention == null) {
+                contention = created;
+            }
+        }
+        contention.record(true, System.nanoTime());
+    }
+
+    /**
+     * Record an attempt that succeeded.
+     */
+    void success(String id) {
+        DocumentContention contention = documents.get(id);
+        if (contention == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (contention.record(false, now) < FORGET_RATE && !contention.isContended(now)) {
+            //the lock is only a way to reduce contention, losing it while held doesn't affect correctness
+            documents.remove(id, contention);
+        }
+    }
+
+    /**
+     * @return true if the document is currently contended.
+     */
+    boolean isContended(String id) {
+        DocumentContention contention = documents.get(id);
+        return contention != null && contention.isContended(System.nanoTime());
+    }
+
+    /**
+     * @return the number of documents currently tracked.
+     */
+    int trackedCount() {
+        return documents.size();
+    }
+
+    private static final class DocumentContention implements Permit {
+
+        final ReentrantLock lock = new ReentrantLock();
+        private double rate;
+        private long contendedUntil;
+        private boolean contended;
+
+        synchronized double record(boolean conflict, long now) {
+            rate = rate * (1 - WEIGHT) + (conflict ? WEIGHT : 0);
+            if (conflict && (contended || rate > CONTENDED_RATE)) {
+                contended = true;
+                contendedUntil = now + HOLD_NANOS;
+            }
+            return rate;
+        }
+
+        synchronized boolean isContended(long now) {
+            if (contended && now - contendedUntil > 0) {
+                contended = false;
+            }
+            return contended;
+        }
+
+        @Override
+        public void release() {
+            lock.unlock();
+        }
+    }
+}
@@ -5,8 +5,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import com.couchbase.client.core.message.ResponseStatus;
 import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
@@ -18,8 +20,10 @@ import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
 import com.couchbase.client.java.error.subdoc.MultiMutationException;
 import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
 
 /**
  * A CouchbaseArrayList is a {@link List} backed by a {@link Bucket Couchbase} document (more
@@ -34,8 +38,15 @@ import com.couchbase.client.java.subdoc.DocumentFragment;
 public class CouchbaseArrayList<E> extends AbstractList<E> {
 
     public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = 100;
+    /**
+     * The number of indices that {@link #getRange(int, int)} looks up in parallel before checking whether the end
+     * of the list was reached.
+     */
+    private static final int RANGE_WAVE = 4 * MultiLookup.MAX_SPECS;
     private final String id;
     private final Bucket bucket;
+    private final CouchbaseCollections collections;
+    private final WriteCombiner.Flusher addFlusher = new AddFlusher();
 
     /**
      * Create a new {@link Bucket Couchbase-backed} List, backed by the document identified by <code>id</code>
@@ -46,11 +57,16 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
      * @param bucket the {@link Bucket} through which to interact with the document.
      */
     public CouchbaseArrayList(String id, Bucket bucket) {
-        this.bucket = bucket;
+        this(id, new CouchbaseCollections(bucket));
+    }
+
+    CouchbaseArrayList(String id, CouchbaseCollections collections) {
+        this.bucket = collections.bucket();
         this.id = id;
+        this.collections = collections;
 
         try {
-            bucket.insert(JsonArrayDocument.create(id, JsonArray.empty()));
+            collections.await(collections.insert(JsonArrayDocument.create(id, JsonArray.empty())));
         } catch (DocumentAlreadyExistsException ex) {
             // Ignore concurrent creations, keep on moving.
         }
@@ -73,8 +89,9 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
     public CouchbaseArrayList(String id, Bucket bucket, E... content) {
         this.bucket = bucket;
         this.id = id;
+        this.collections = new CouchbaseCollections(bucket);
 
-        bucket.upsert(JsonArrayDocument.create(id, JsonArray.from(content)));
+        collections.await(collections.upsert(JsonArrayDocument.create(id, JsonArray.from(content))));
     }
 
     /**
@@ -87,8 +104,13 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
      * @param content collection of the elements to initially store in the List.
      */
     public CouchbaseArrayList(String id, Bucket bucket, Collection<? extends E> content) {
-        this.bucket = bucket;
+        this(id, new CouchbaseCollections(bucket), content);
+    }
+
+    CouchbaseArrayList(String id, CouchbaseCollections collections, Collection<? extends E> content) {
+        this.bucket = collections.bucket();
         this.id = id;
+        this.collections = collections;
 
         JsonArray array;
         if (content instanceof List) {
@@ -100,35 +122,184 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
             }
         }
 
-        bucket.upsert(JsonArrayDocument.create(id, array));
+        collections.await(collections.upsert(JsonArrayDocument.create(id, array)));
     }
 
     @Override
     public E get(int index) {
+        return decode(getElement(index));
+    }
+
+    /**
+     * Get the element at <code>index</code> as it was decoded from JSON.
+     */
+    Object getElement(int index) {
         //fail fast on negative values, as they are interpreted as "starting from the back of the array" otherwise
         if (index < 0) {
             throw new IndexOutOfBoundsException("Index: " + index);
         }
-        String idx = "[" + index + "]";
+        String idx = SubdocPaths.index(index);
+        collections.recordOperation(id, null);
+        if (collections.readsMayBeStale()) {
+            JsonArrayDocument current = collections.read(id, JsonArrayDocument.class);
+            if (current == null) {
+                throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+            }
+            if (index >= current.content().size()) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return current.content().get(index);
+        }
 
-        DocumentFragment<Lookup> result = bucket.lookupIn(id).get(idx).execute();
-        if (result.status(idx) == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+        DocumentFragment<Lookup> result = collections.await(bucket.async().lookupIn(id).get(idx).execute());
+        //single spec lookup: access the result by position rather than by matching the path
+        if (result.status(0) == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
             throw new IndexOutOfBoundsException("Index: " + index);
         }
 
-        return (E) result.content(idx);
+        return result.content(0);
+    }
+
+    /**
+     * Get the elements at several indices at once, using as few multi-lookups as possible (sent in parallel
+     * when the server's limit of paths per lookup is exceeded).
+     *
+     * Indices that are out of range don't fail the whole operation, they are simply absent from the result.
+     *
+     * @param indices the indices of the elements to get.
+     * @return a {@link Map} of each index that exists in the list to its element, in the order of
+     * <code>indices</code>.
+     * @throws IndexOutOfBoundsException if one of the indices is negative.
+     */
+    public Map<Integer, E> getAll(int... indices) {
+        collections.recordOperation(id, null);
+        List<String> paths = new ArrayList<String>(indices.length);
+        for (int index : indices) {
+            //fail fast on negative values, as they are interpreted as "starting from the back of the array" otherwise
+            if (index < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            paths.add(SubdocPaths.index(index));
+        }
+
+        List<DocumentFragment<Lookup>> results = MultiLookup.get(collections, id, paths);
+        Map<Integer, E> elements = new LinkedHashMap<Integer, E>(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            DocumentFragment<Lookup> chunk = results.get(i / MultiLookup.MAX_SPECS);
+            int chunkIndex = i % MultiLookup.MAX_SPECS;
+            if (chunk.status(chunkIndex) != ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                elements.put(indices[i], decode(chunk.content(chunkIndex)));
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Get the elements between <code>fromIndex</code> (inclusive) and <code>toIndex</code> (exclusive),
+     * using as few multi-lookups as possible. This is typically useful to paginate over the list.
+     *
+     * The range is looked up a few multi-lookups at a time (sent in parallel), and the lookups stop as soon as
+     * the end of the list is reached. If the list ends before <code>toIndex</code>, the returned list thus only
+     * contains the elements up to the end of the list (and is empty if <code>fromIndex</code> is already past
+     * the end).
+     *
+     * @param fromIndex the index of the first element to get.
+     * @param toIndex the index after the last element to get.
+     * @return the elements in the range, in order.
+     * @throws IndexOutOfBoundsException if <code>fromIndex</code> is negative.
+     * @throws IllegalArgumentException if <code>fromIndex</code> is greater than <code>toIndex</code>.
+     */
+    public List<E> getRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("Index: " + fromIndex);
+        }
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+        collections.recordOperation(id, null);
+        List<E> elements = new ArrayList<E>(Math.min(toIndex - fromIndex, RANGE_WAVE));
+        //the size of the list is unknown, so look the range up a bounded wave of paths at a time and stop at the
+        //end of the list, rather than building and sending paths for the whole (possibly huge) range upfront
+        int from = fromIndex;
+        while (from < toIndex) {
+            int to = from + Math.min(toIndex - from, RANGE_WAVE);
+            List<String> paths = new ArrayList<String>(to - from);
+            for (int index = from; index < to; index++) {
+                paths.add(SubdocPaths.index(index));
+            }
+
+            List<DocumentFragment<Lookup>> results = MultiLookup.get(collections, id, paths);
+            for (int i = 0; i < paths.size(); i++) {
+                DocumentFragment<Lookup> chunk = results.get(i / MultiLookup.MAX_SPECS);
+                int chunkIndex = i % MultiLookup.MAX_SPECS;
+                if (chunk.status(chunkIndex) == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                    //reached the end of the list
+                    return elements;
+                }
+                elements.add(decode(chunk.content(chunkIndex)));
+            }
+            from = to;
+        }
+        return elements;
     }
 
     @Override
     public int size() {
         //TODO in Spock, GET_COUNT should be available on subdoc
-        JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
+        JsonArrayDocument current = collections.read(id, JsonArrayDocument.class);
         return current.content().size();
     }
 
+    /**
+     * Fetch the whole list once and take an immutable, local copy of it. This is typically useful to read the
+     * list many times within a unit of work that tolerates a consistent but possibly outdated view, without a
+     * network call per read. See {@link ListSnapshot#isStale()} and {@link ListSnapshot#refresh()} to detect
+     * and catch up with later changes.
+     *
+     * @return a snapshot of the list.
+     */
+    public ListSnapshot<E> snapshot() {
+        JsonArrayDocument current = collections.fetch(id, JsonArrayDocument.class, true);
+        if (current == null) {
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return snapshotOf(current.content(), current.cas());
+    }
+
+    private ListSnapshot<E> snapshotOf(JsonArray content, long cas) {
+        List<E> elements = new ArrayList<E>(content.size());
+        for (Object value : content) {
+            elements.add(decode(value));
+        }
+        return new ListSnapshot<E>(this, elements, cas);
+    }
+
+    /**
+     * Load the list once into a {@link LiveView}, then keep it up to date with the changes of its document
+     * streamed by <code>source</code>, without fetching the document again. This replaces polling the list
+     * (eg. with {@link #snapshot()} or {@link #iterator()}) to keep a continuously fresh local view of it.
+     *
+     * @param source the source of the changes of the list's document.
+     * @return the live view of the list, to {@link LiveView#close() close} once no longer needed.
+     */
+    public LiveView<ListSnapshot<E>> liveView(ChangeSource source) {
+        return new LiveView<ListSnapshot<E>>(source, id, new LiveView.Snapshots<ListSnapshot<E>>() {
+            @Override
+            public ListSnapshot<E> load() {
+                return snapshot();
+            }
+
+            @Override
+            public ListSnapshot<E> decode(DocumentChange change) {
+                JsonArray content = change.isDeletion() ? JsonArray.empty() : JsonArray.fromJson(change.content());
+                return snapshotOf(content, change.cas());
+            }
+        });
+    }
+
     @Override
     public boolean isEmpty() {
-        DocumentFragment<Lookup> current = bucket.lookupIn(id).exists("[0]").execute();
+        DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).exists("[0]").execute());
         return current.status("[0]") == ResponseStatus.SUBDOC_PATH_NOT_FOUND;
     }
 
@@ -141,26 +312,86 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
         if (!JsonValue.checkType(element)) {
             throw new IllegalArgumentException("Unsupported value type.");
         }
-        String idx = "["+index+"]";
+        String idx = SubdocPaths.index(index);
 
-        for(int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
-            try {
-                DocumentFragment<Lookup> current = bucket.lookupIn(id).get(idx).execute();
-                long returnCas = current.cas();
-                Object result = current.content(idx);
-                bucket.mutateIn(id).replace(idx, element).withCas(returnCas).execute();
-                return (E) result;
-            } catch (CASMismatchException ex) {
-                //will need to retry get-and-set
-            } catch (MultiMutationException ex) {
-                if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND
-                        || ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_INVALID) {
-                    throw new IndexOutOfBoundsException("Index: " + index);
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).get(idx).execute());
+                    long returnCas = current.cas();
+                    Object result = current.content(0);
+                    collections.await(collections.mutateIn(id).replace(idx, element).withCas(returnCas).execute());
+                    collections.writeSucceeded(id);
+                    return decode(result);
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id);
+                    //will need to retry get-and-set
+                } catch (MultiMutationException ex) {
+                    if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND
+                            || ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_INVALID) {
+                        throw new IndexOutOfBoundsException("Index: " + index);
+                    }
+                    throw ex;
+                } finally {
+                    permit.release();
                 }
-                throw ex;
             }
+            throw new ConcurrentModificationException("Couldn't perform set in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Replace the element at <code>index</code> without reading it first. Unlike {@link #set(int, Object)},
+     * this is a single mutation that doesn't need optimistic locking, so it never fails because of concurrent
+     * writers (the last write wins), and is the cheapest way to write under heavy contention.
+     *
+     * @param index the index of the element to replace.
+     * @param element the new element.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public void replace(int index, E element) {
+        //fail fast on negative values, as they are interpreted as "starting from the back of the array" otherwise
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        if (!JsonValue.checkType(element)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+        collections.recordOperation(id, null);
+        try {
+            collections.await(collections.mutateIn(id).replace(SubdocPaths.index(index), element).execute());
+        } catch (MultiMutationException ex) {
+            if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND
+                    || ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_INVALID) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Append an element at the end of the list, in a single mutation. If
+     * {@link CollectionOptions.Builder#addCombiningWindow add combining} is enabled, the concurrent appends
+     * to the list are written together.
+     */
+    @Override
+    public boolean add(E element) {
+        if (!JsonValue.checkType(element)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            return collections.add(CouchbaseArrayList.class, id, element, addFlusher);
+        } finally {
+            collections.endOperation(outer);
         }
-        throw new ConcurrentModificationException("Couldn't perform set in less than " + MAX_OPTIMISTIC_LOCKING_ATTEMPTS + " iterations");
     }
 
     @Override
@@ -173,8 +404,9 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
             throw new IllegalArgumentException("Unsupported value type.");
         }
 
+        collections.recordOperation(id, null);
         try {
-            bucket.mutateIn(id).arrayInsert("["+index+"]", element).execute();
+            collections.await(collections.mutateIn(id).arrayInsert(SubdocPaths.index(index), element).execute());
         } catch (MultiMutationException ex) {
             if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND ||
                     ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_INVALID) {
@@ -190,24 +422,36 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
         if (index < 0) {
             throw new IndexOutOfBoundsException("Index: " + index);
         }
-        String idx = "[" + index + "]";
-        for(int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
-            try {
-                DocumentFragment<Lookup> current = bucket.lookupIn(id).get(idx).execute();
-                long returnCas = current.cas();
-                Object result = current.content(idx);
-                DocumentFragment<Mutation> updated = bucket.mutateIn(id).remove(idx).withCas(returnCas).execute();
-                return (E) result;
-            } catch (CASMismatchException ex) {
-                //will have to retry get-and-remove
-            } catch (MultiMutationException ex) {
-                if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
-                    throw new IndexOutOfBoundsException("Index: " + index);
+        String idx = SubdocPaths.index(index);
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).get(idx).execute());
+                    long returnCas = current.cas();
+                    Object result = current.content(0);
+                    DocumentFragment<Mutation> updated = collections.await(collections.mutateIn(id).remove(idx).withCas(returnCas).execute());
+                    collections.writeSucceeded(id);
+                    return decode(result);
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id);
+                    //will have to retry get-and-remove
+                } catch (MultiMutationException ex) {
+                    if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                        throw new IndexOutOfBoundsException("Index: " + index);
+                    }
+                    throw ex;
+                } finally {
+                    permit.release();
                 }
-                throw ex;
             }
+            throw new ConcurrentModificationException("Couldn't perform remove in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
         }
-        throw new ConcurrentModificationException("Couldn't perform remove in less than " + MAX_OPTIMISTIC_LOCKING_ATTEMPTS + " iterations");
     }
 
     @Override
@@ -234,7 +478,191 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
     @Override
     public void clear() {
         //optimized version over AbstractList's (which iterates on all and remove)
-        bucket.upsert(JsonArrayDocument.create(id, JsonArray.empty()));
+        collections.await(collections.upsert(JsonArrayDocument.create(id, JsonArray.empty())));
+    }
+
+    /**
+     * Apply a block of mutations atomically. The <code>mutator</code> is given a local copy of the list, and
+     * the changes it makes to it are then sent as a single multi-mutation, guarded by the CAS of the copy
+     * (or as a single replacement of the document if there are more changes than a multi-mutation can hold).
+     * If the list was concurrently modified, a fresh copy is fetched and the whole block is retried.
+     *
+     * Compound updates thus cost two round trips and are atomic, instead of costing a CAS loop per change.
+     *
+     * @param mutator the block of mutations, which can be invoked several times.
+     * @throws ConcurrentModificationException if the block couldn't be applied in less than
+     * {@link CollectionOptions#maxAttempts()} attempts.
+     */
+    public void update(Mutator<List<E>> mutator) {
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                //take the turn on a contended document before reading it, so that the read isn't outdated by the
+                //writers that held the turn before
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    //an attempt can share an in-flight read only if it is the first and doesn't hold a turn, as the
+                    //read must otherwise return a CAS at least as recent as the turn or the failure
+                    boolean fresh = i > 0 || permit != ContentionTracker.NO_PERMIT;
+                    JsonArrayDocument current = collections.fetch(id, JsonArrayDocument.class, fresh);
+                    if (current == null) {
+                        throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+                    }
+                    RecordingList view = new RecordingList(current.content());
+                    mutator.mutate(view);
+                    if (view.changes.isEmpty()) {
+                        return;
+                    }
+                    if (view.changes.size() <= MultiLookup.MAX_SPECS) {
+                        AsyncMutateInBuilder mutation = collections.mutateIn(id);
+                        for (Change change : view.changes) {
+                            change.applyTo(mutation);
+                        }
+                        collections.await(mutation.withCas(current.cas()).execute());
+                    } else {
+                        collections.await(collections.replace(JsonArrayDocument.create(id, JsonArray.from(view.elements), current.cas())));
+                    }
+                    collections.writeSucceeded(id);
+                    return;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id);
+                    //will need to retry the whole block
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform update in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * @return true if reads may be served by replicas, and thus return stale values (see
+     *   {@link CollectionOptions.Builder#replicaReads(ReplicaReads)}).
+     */
+    public boolean readsMayBeStale() {
+        return collections.readsMayBeStale();
+    }
+
+    /**
+     * @return the id of the document backing this list.
+     */
+    String id() {
+        return id;
+    }
+
+    /**
+     * @return the {@link Bucket} through which this list interacts with its document.
+     */
+    Bucket bucket() {
+        return bucket;
+    }
+
+    /**
+     * Convert an element as decoded from JSON to the type of elements in the list. Lists with a specific
+     * element type can override it, eg. to normalize the different {@link Number} types that JSON numbers
+     * are decoded to.
+     */
+    E decode(Object element) {
+        return (E) element;
+    }
+
+    /**
+     * @return the {@link CouchbaseCollections} this list was created from.
+     */
+    CouchbaseCollections collections() {
+        return collections;
+    }
+
+    /**
+     * A change made to a {@link RecordingList}, as the subdoc mutation spec that replicates it. As the specs
+     * of a multi-mutation are applied in order, replaying the changes in the order they were made keeps the
+     * indices in sync with the local copy.
+     */
+    private static final class Change {
+        private enum Type { REPLACE, INSERT, REMOVE }
+
+        final Type type;
+        final String path;
+        final Object value;
+
+        Change(Type type, int index, Object value) {
+            this.type = type;
+            this.path = SubdocPaths.index(index);
+            this.value = value;
+        }
+
+        void applyTo(AsyncMutateInBuilder mutation) {
+            switch (type) {
+                case REPLACE:
+                    mutation.replace(path, value);
+                    break;
+                case INSERT:
+                    mutation.arrayInsert(path, value);
+                    break;
+                default:
+                    mutation.remove(path);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A local copy of the list, which records the changes made to it.
+     */
+    private class RecordingList extends AbstractList<E> {
+
+        private final List<Object> elements;
+        private final List<Change> changes = new ArrayList<Change>();
+
+        RecordingList(JsonArray content) {
+            //Care not to use toList, as it will convert internal JsonObject/JsonArray to Map/List
+            this.elements = new ArrayList<Object>(content.size());
+            for (Object value : content) {
+                elements.add(value);
+            }
+        }
+
+        @Override
+        public E get(int index) {
+            return decode(elements.get(index));
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public E set(int index, E element) {
+            if (!JsonValue.checkType(element)) {
+                throw new IllegalArgumentException("Unsupported value type.");
+            }
+            Object previous = elements.set(index, element);
+            changes.add(new Change(Change.Type.REPLACE, index, element));
+            return decode(previous);
+        }
+
+        @Override
+        public void add(int index, E element) {
+            if (!JsonValue.checkType(element)) {
+                throw new IllegalArgumentException("Unsupported value type.");
+            }
+            elements.add(index, element);
+            changes.add(new Change(Change.Type.INSERT, index, element));
+            modCount++;
+        }
+
+        @Override
+        public E remove(int index) {
+            Object removed = elements.remove(index);
+            changes.add(new Change(Change.Type.REMOVE, index, null));
+            modCount++;
+            return decode(removed);
+        }
     }
 
     private class CouchbaseListIterator implements ListIterator<E> {
@@ -246,11 +674,11 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
         private int lastVisited;
 
         public CouchbaseListIterator(int index) {
-            JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
+            JsonArrayDocument current = collections.read(id, JsonArrayDocument.class);
             //Care not to use toList, as it will convert internal JsonObject/JsonArray to Map/List
             List<E> list = new ArrayList<E>(current.content().size());
-            for (E value : (Iterable<E>) current.content()) {
-                list.add(value);
+            for (Object value : current.content()) {
+                list.add(decode(value));
             }
             this.cas = current.cas();
             this.delegate = list.listIterator(index);
@@ -300,9 +728,9 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
                 throw new IllegalStateException();
             }
             int index = lastVisited;
-            String idx = "[" + index + "]";
+            String idx = SubdocPaths.index(index);
             try {
-                DocumentFragment<Mutation> updated = bucket.mutateIn(id).remove(idx).withCas(this.cas).execute();
+                DocumentFragment<Mutation> updated = collections.await(collections.mutateIn(id).remove(idx).withCas(this.cas).execute());
                 //update the cas so that several removes in a row can work
                 this.cas = updated.cas();
                 //also correctly reset the state:
@@ -326,9 +754,9 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
                 throw new IllegalStateException();
             }
             int index = lastVisited;
-            String idx = "[" + index + "]";
+            String idx = SubdocPaths.index(index);
             try {
-                DocumentFragment<Mutation> updated = bucket.mutateIn(id).replace(idx, e).withCas(this.cas).execute();
+                DocumentFragment<Mutation> updated = collections.await(collections.mutateIn(id).replace(idx, e).withCas(this.cas).execute());
                 //update the cas so that several mutations in a row can work
                 this.cas = updated.cas();
                 //also correctly reset the state:
@@ -347,9 +775,9 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
         @Override
         public void add(E e) {
             int index = this.cursor;
-            String idx = "[" + index + "]";
+            String idx = SubdocPaths.index(index);
             try {
-                DocumentFragment<Mutation> updated = bucket.mutateIn(id).arrayInsert(idx, e).withCas(this.cas).execute();
+                DocumentFragment<Mutation> updated = collections.await(collections.mutateIn(id).arrayInsert(idx, e).withCas(this.cas).execute());
                 //update the cas so that several mutations in a row can work
                 this.cas = updated.cas();
                 //also correctly reset the state:
@@ -367,4 +795,22 @@ public class CouchbaseArrayList<E> extends AbstractList<E> {
             }
         }
     }
+
+    /**
+     * Append a batch of elements in a single mutation, in the order of the batch.
+     */
+    private class AddFlusher implements WriteCombiner.Flusher {
+
+        @Override
+        public void flush(List<WriteCombiner.Pending> batch) {
+            List<Object> values = new ArrayList<Object>(batch.size());
+            for (WriteCombiner.Pending pending : batch) {
+                values.add(pending.value);
+            }
+            collections.await(collections.mutateIn(id).arrayAppendAll("", values, false).execute());
+            for (WriteCombiner.Pending pending : batch) {
+                pending.complete(true);
+            }
+        }
+    }
 }
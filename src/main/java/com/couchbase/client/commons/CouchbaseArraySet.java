@@ -1,8 +1,11 @@
 package com.couchbase.client.commons;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import com.couchbase.client.commons.iterators.JsonArrayDocumentIterator;
@@ -16,6 +19,7 @@ import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
 import com.couchbase.client.java.error.subdoc.MultiMutationException;
 import com.couchbase.client.java.subdoc.DocumentFragment;
 
@@ -34,6 +38,8 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
 
     private final String id;
     private final Bucket bucket;
+    private final CouchbaseCollections collections;
+    private final WriteCombiner.Flusher addFlusher = new AddFlusher();
 
     /**
      * Create a new {@link CouchbaseArraySet}, backed by the document identified by <code>id</code>
@@ -44,11 +50,16 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
      * @param bucket the {@link Bucket} through which to interact with the document.
      */
     public CouchbaseArraySet(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket));
+    }
+
+    CouchbaseArraySet(String id, CouchbaseCollections collections) {
         this.id = id;
-        this.bucket = bucket;
+        this.bucket = collections.bucket();
+        this.collections = collections;
 
         try {
-            this.bucket.insert(JsonArrayDocument.create(id, JsonArray.empty()));
+            collections.await(collections.insert(JsonArrayDocument.create(id, JsonArray.empty())));
         } catch (DocumentAlreadyExistsException e) {
             //use a pre-existing document
         }
@@ -66,8 +77,13 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
      * @param initialData Set of the elements to initially store in the CouchbaseArraySet.
      */
     public CouchbaseArraySet(String id, Bucket bucket, Set<? extends T> initialData) {
+        this(id, new CouchbaseCollections(bucket), initialData);
+    }
+
+    CouchbaseArraySet(String id, CouchbaseCollections collections, Set<? extends T> initialData) {
         this.id = id;
-        this.bucket = bucket;
+        this.bucket = collections.bucket();
+        this.collections = collections;
 
         JsonArray data = JsonArray.create();
         if (initialData != null && !initialData.isEmpty()) {
@@ -76,19 +92,19 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
                 data.add(o);
             }
         }
-        bucket.upsert(JsonArrayDocument.create(id, data));
+        collections.await(collections.upsert(JsonArrayDocument.create(id, data)));
     }
 
     @Override
     public int size() {
         //TODO use subdoc GET_COUNT when available
-        JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
+        JsonArrayDocument current = collections.read(id, JsonArrayDocument.class);
         return current.content().size();
     }
 
     @Override
     public boolean isEmpty() {
-        DocumentFragment<Lookup> current = bucket.lookupIn(id).exists("[0]").execute();
+        DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).exists("[0]").execute());
         return current.status(0) == ResponseStatus.SUBDOC_PATH_NOT_FOUND;
     }
 
@@ -96,7 +112,8 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
     public boolean contains(Object t) {
         //TODO subpar implementation for a Set, use ARRAY_CONTAINS when available
         enforcePrimitive(t);
-        JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
+        collections.recordOperation(id, null);
+        JsonArrayDocument current = collections.read(id, JsonArrayDocument.class);
         for (Object in : current.content()) {
             if (safeEquals(in, t)) {
                 return true;
@@ -107,80 +124,124 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
 
     @Override
     public Iterator<T> iterator() {
-        return new JsonArrayDocumentIterator<T>(bucket, id);
+        return new JsonArrayDocumentIterator<T>(bucket, collections.read(id, JsonArrayDocument.class));
+    }
+
+    /**
+     * Fetch the whole set once and take an immutable, local copy of it. This is typically useful to read the
+     * set many times within a unit of work that tolerates a consistent but possibly outdated view, without a
+     * network call per read. See {@link SetSnapshot#isStale()} and {@link SetSnapshot#refresh()} to detect
+     * and catch up with later changes.
+     *
+     * @return a snapshot of the set.
+     */
+    public SetSnapshot<T> snapshot() {
+        JsonArrayDocument current = collections.fetch(id, JsonArrayDocument.class, true);
+        if (current == null) {
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        Set<T> elements = new LinkedHashSet<T>(current.content().size());
+        for (Object value : current.content()) {
+            elements.add((T) value);
+        }
+        return new SetSnapshot<T>(this, elements, current.cas());
     }
 
     @Override
     public boolean add(T t) {
         enforcePrimitive(t);
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            return collections.add(CouchbaseArraySet.class, id, t, addFlusher);
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
 
-        for (int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
-            try {
-                JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
-                long cas = current.cas();
-                //Care not to use toList, as it will convert internal JsonObject/JsonArray to Map/List
-                boolean absent = true;
-                for (Object in : current.content()) {
-                    if (safeEquals(in, t)) {
-                        absent = false;
-                        break;
-                    }
-                }
-
-                if (absent) {
-                    DocumentFragment<Mutation> result = bucket.mutateIn(id)
-                            .arrayAppend("", t, true) //append at the root array
-                            .withCas(cas)
-                            .execute();
-                    return true;
-                } else {
-                    return false;
-                }
-            } catch (CASMismatchException e) {
-                //retry
+    private boolean contains(JsonArray array, Object value) {
+        for (Object in : array) {
+            if (safeEquals(in, value)) {
+                return true;
             }
         }
-        throw new ConcurrentModificationException("Couldn't perform add in less than " + MAX_OPTIMISTIC_LOCKING_ATTEMPTS + " iterations");
+        return false;
     }
 
     @Override
     public boolean remove(Object t) {
         enforcePrimitive(t);
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    //an attempt can share an in-flight read only if it is the first and doesn't hold a turn, as the
+                    //read must otherwise return a CAS at least as recent as the turn or the failure
+                    boolean fresh = i > 0 || permit != ContentionTracker.NO_PERMIT;
+                    JsonArrayDocument current = collections.fetch(id, JsonArrayDocument.class, fresh);
+                    long cas = current.cas();
+                    int index = 0;
+                    boolean found = false;
+                    Iterator<Object> it = current.content().iterator();
+                    while (it.hasNext()) {
+                        Object next = it.next();
+                        if (safeEquals(next, t)) {
+                            found = true;
+                            break;
+                        }
+                        index++;
+                    }
+                    String path = SubdocPaths.index(index);
 
-        for (int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
-            try {
-                JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
-                long cas = current.cas();
-                int index = 0;
-                boolean found = false;
-                Iterator<Object> it = current.content().iterator();
-                while (it.hasNext()) {
-                    Object next = it.next();
-                    if (safeEquals(next, t)) {
-                        found = true;
-                        break;
+                    if (!found) {
+                        return false;
+                    } else {
+                        DocumentFragment<Mutation> result = collections.await(collections.mutateIn(id)
+                                .remove(path).withCas(cas).execute());
+                        collections.writeSucceeded(id);
+                        return true;
                     }
-                    index++;
-                }
-                String path = "[" + index + "]";
-
-                if (!found) {
-                    return false;
-                } else {
-                    DocumentFragment<Mutation> result = bucket
-                            .mutateIn(id).remove(path).withCas(cas).execute();
-                    return true;
+                } catch (CASMismatchException e) {
+                    collections.writeConflicted(id);
+                    //retry
+                } finally {
+                    permit.release();
                 }
-            } catch (CASMismatchException e) {
-                //retry
             }
+            throw new ConcurrentModificationException("Couldn't perform remove in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
         }
-        throw new ConcurrentModificationException("Couldn't perform remove in less than " + MAX_OPTIMISTIC_LOCKING_ATTEMPTS + " iterations");
     }
 
     @Override
     public void clear() {
-        bucket.upsert(JsonArrayDocument.create(id, JsonArray.empty()));
+        collections.await(collections.upsert(JsonArrayDocument.create(id, JsonArray.empty())));
+    }
+
+    /**
+     * @return true if reads may be served by replicas, and thus return stale values (see
+     *   {@link CollectionOptions.Builder#replicaReads(ReplicaReads)}).
+     */
+    public boolean readsMayBeStale() {
+        return collections.readsMayBeStale();
+    }
+
+    /**
+     * @return the id of the document backing this set.
+     */
+    String id() {
+        return id;
+    }
+
+    /**
+     * @return the {@link CouchbaseCollections} this set was created from.
+     */
+    CouchbaseCollections collections() {
+        return collections;
     }
 
     /**
@@ -202,4 +263,50 @@ public class CouchbaseArraySet<T> extends AbstractSet<T> {
         }
         return expected.equals(tested);
     }
+
+    /**
+     * Perform a batch of additions in a single mutation, skipping the values that are already in the set (or
+     * earlier in the batch).
+     */
+    private class AddFlusher implements WriteCombiner.Flusher {
+
+        @Override
+        public void flush(List<WriteCombiner.Pending> batch) {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    //an attempt can share an in-flight read only if it is the first and doesn't hold a turn, as the
+                    //read must otherwise return a CAS at least as recent as the turn or the failure
+                    boolean fresh = i > 0 || permit != ContentionTracker.NO_PERMIT;
+                    JsonArrayDocument current = collections.fetch(id, JsonArrayDocument.class, fresh);
+                    long cas = current.cas();
+                    //Care not to use toList, as it will convert internal JsonObject/JsonArray to Map/List
+                    List<Object> absent = new ArrayList<Object>(batch.size());
+                    for (WriteCombiner.Pending pending : batch) {
+                        boolean added = !contains(current.content(), pending.value) && !absent.contains(pending.value);
+                        if (added) {
+                            absent.add(pending.value);
+                        }
+                        pending.complete(added);
+                    }
+
+                    if (!absent.isEmpty()) {
+                        collections.await(collections.mutateIn(id)
+                                .arrayAppendAll("", absent, false) //append at the root array
+                                .withCas(cas)
+                                .execute());
+                        collections.writeSucceeded(id);
+                    }
+                    return;
+                } catch (CASMismatchException e) {
+                    collections.writeConflicted(id);
+                    //retry
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform add in less than " + maxAttempts + " iterations");
+        }
+    }
 }
@@ -0,0 +1,440 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import com.couchbase.client.commons.binary.BinaryReader;
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.commons.binary.ElementCodec;
+import com.couchbase.client.commons.binary.ElementCodecs;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * A CouchbaseBinaryList is a {@link List} backed by a {@link Bucket Couchbase} {@link BinaryDocument}, in
+ * which the elements are stored in a compact binary encoding (as defined by an {@link ElementCodec})
+ * rather than as a JSON array. The document can additionally be
+ * {@link CollectionOptions.Builder#compression(Compression) compressed}.
+ *
+ * This is suited to large lists of numbers or strings that are mostly read as a whole (size, iteration,
+ * contains): the document is smaller on the wire and faster to decode than the equivalent JSON. On the other
+ * hand, the server can't look into a binary document, so every operation reads the whole document and every
+ * mutation rewrites it (using CAS to detect concurrent modifications). For lists that are mostly accessed
+ * element by element, or that need to be readable by other applications, prefer the JSON
+ * {@link CouchbaseArrayList}.
+ *
+ * The document starts with the number of elements, so {@link #size()} doesn't need to decode them.
+ *
+ * @param <E> the type of values in the list.
+ */
+public class CouchbaseBinaryList<E> extends AbstractList<E> {
+
+    public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+    private final String id;
+    private final CouchbaseCollections collections;
+    private final ElementCodec<E> codec;
+
+    /**
+     * Create a new {@link Bucket Couchbase-backed} binary List of strings, backed by the document identified
+     * by <code>id</code> in <code>bucket</code>. Note that if the document already exists, its content will be
+     * used as initial content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @return the list.
+     */
+    public static CouchbaseBinaryList<String> ofStrings(String id, Bucket bucket) {
+        return new CouchbaseBinaryList<String>(id, bucket, ElementCodecs.STRING);
+    }
+
+    /**
+     * Create a new {@link Bucket Couchbase-backed} binary List of longs, backed by the document identified
+     * by <code>id</code> in <code>bucket</code>. Note that if the document already exists, its content will be
+     * used as initial content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @return the list.
+     */
+    public static CouchbaseBinaryList<Long> ofLongs(String id, Bucket bucket) {
+        return new CouchbaseBinaryList<Long>(id, bucket, ElementCodecs.LONG);
+    }
+
+    /**
+     * Create a new {@link Bucket Couchbase-backed} binary List, backed by the document identified by
+     * <code>id</code> in <code>bucket</code>. Note that if the document already exists, its content will be
+     * used as initial content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param codec the {@link ElementCodec} used to encode the elements.
+     */
+    public CouchbaseBinaryList(String id, Bucket bucket, ElementCodec<E> codec) {
+        this(id, new CouchbaseCollections(bucket), codec);
+    }
+
+    /**
+     * Create a new {@link Bucket Couchbase-backed} binary List, backed by the document identified by
+     * <code>id</code> in <code>bucket</code>. Note that if the document already exists, its content is reset
+     * to the values provided in the <code>content</code> Collection.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param codec the {@link ElementCodec} used to encode the elements.
+     * @param content collection of the elements to initially store in the List.
+     */
+    public CouchbaseBinaryList(String id, Bucket bucket, ElementCodec<E> codec, Collection<? extends E> content) {
+        this(id, new CouchbaseCollections(bucket), codec, content);
+    }
+
+    CouchbaseBinaryList(String id, CouchbaseCollections collections, ElementCodec<E> codec) {
+        this.id = id;
+        this.collections = collections;
+        this.codec = codec;
+
+        BinaryDocuments.createIfAbsent(collections, id, encode(new ArrayList<E>(0)));
+    }
+
+    CouchbaseBinaryList(String id, CouchbaseCollections collections, ElementCodec<E> codec,
+            Collection<? extends E> content) {
+        this.id = id;
+        this.collections = collections;
+        this.codec = codec;
+
+        BinaryDocuments.reset(collections, id, encode(content));
+    }
+
+    @Override
+    public E get(int index) {
+        List<E> elements = load().elements;
+        if (index < 0 || index >= elements.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        BinaryDocuments.Content content = read();
+        return decodeSize(new BinaryReader(content.bytes));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot<E> current = load();
+                if (index < 0 || index >= current.elements.size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                E previous = current.elements.set(index, element);
+                if (tryWrite(current)) {
+                    return previous;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform set in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public boolean add(E element) {
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot<E> current = load();
+                current.elements.add(element);
+                if (tryWrite(current)) {
+                    return true;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform add in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public void add(int index, E element) {
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot<E> current = load();
+                if (index < 0 || index > current.elements.size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                current.elements.add(index, element);
+                if (tryWrite(current)) {
+                    return;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform add in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Append all the elements of a collection, rewriting the document only once.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c.isEmpty()) {
+            return false;
+        }
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot<E> current = load();
+                current.elements.addAll(c);
+                if (tryWrite(current)) {
+                    return true;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform addAll in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot<E> current = load();
+                if (index < 0 || index >= current.elements.size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                E removed = current.elements.remove(index);
+                if (tryWrite(current)) {
+                    return removed;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform remove in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return load().elements.contains(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return load().elements.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return load().elements.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return load().elements.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return load().elements.toArray(a);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new CouchbaseBinaryListIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return new CouchbaseBinaryListIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return new CouchbaseBinaryListIterator(index);
+    }
+
+    @Override
+    public void clear() {
+        //optimized version over AbstractList's (which iterates on all and remove)
+        BinaryDocuments.reset(collections, id, encode(new ArrayList<E>(0)));
+    }
+
+    private BinaryDocuments.Content read() {
+        BinaryDocuments.Content content = BinaryDocuments.read(collections, id);
+        if (content == null) {
+            //behave like the JSON collections, which expect their document to exist
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return content;
+    }
+
+    private Snapshot<E> load() {
+        BinaryDocuments.Content content = read();
+        BinaryReader in = new BinaryReader(content.bytes);
+        int size = decodeSize(in);
+        List<E> elements = new ArrayList<E>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(codec.read(in));
+        }
+        return new Snapshot<E>(elements, content.cas);
+    }
+
+    /**
+     * Write the elements of a snapshot if the document wasn't modified since it was read.
+     *
+     * @return true if written, false if the document was concurrently modified.
+     */
+    private boolean tryWrite(Snapshot<E> snapshot) {
+        try {
+            snapshot.cas = BinaryDocuments.write(collections, id, encode(snapshot.elements), snapshot.cas);
+            return true;
+        } catch (CASMismatchException ex) {
+            return false;
+        } catch (DocumentAlreadyExistsException ex) {
+            return false;
+        }
+    }
+
+    private int decodeSize(BinaryReader in) {
+        long size = in.readVarLong();
+        if (size > Integer.MAX_VALUE) {
+            throw new TranscodingException("Document " + id + " has an invalid size: " + size);
+        }
+        return (int) size;
+    }
+
+    private BinaryWriter encode(Collection<? extends E> elements) {
+        BinaryWriter out = new BinaryWriter(16 + elements.size() * 4);
+        out.writeVarLong(elements.size());
+        for (E element : elements) {
+            codec.write(element, out);
+        }
+        return out;
+    }
+
+    /**
+     * The decoded elements of the list, along with the CAS of the document they were decoded from.
+     */
+    private static final class Snapshot<E> {
+        final List<E> elements;
+        long cas;
+
+        Snapshot(List<E> elements, long cas) {
+            this.elements = elements;
+            this.cas = cas;
+        }
+    }
+
+    private class CouchbaseBinaryListIterator implements ListIterator<E> {
+
+        private final Snapshot<E> snapshot;
+        private final ListIterator<E> delegate;
+
+        private int cursor;
+        private int lastVisited;
+
+        public CouchbaseBinaryListIterator(int index) {
+            this.snapshot = load();
+            this.delegate = snapshot.elements.listIterator(index);
+            this.lastVisited = -1;
+            this.cursor = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public E next() {
+            E next = delegate.next();
+            lastVisited = cursor;
+            cursor++;
+            return next;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return delegate.hasPrevious();
+        }
+
+        @Override
+        public E previous() {
+            E previous = delegate.previous();
+            cursor--;
+            lastVisited = cursor;
+            return previous;
+        }
+
+        @Override
+        public int nextIndex() {
+            return delegate.nextIndex();
+        }
+
+        @Override
+        public int previousIndex() {
+            return delegate.previousIndex();
+        }
+
+        @Override
+        public void remove() {
+            if (lastVisited < 0) {
+                throw new IllegalStateException();
+            }
+            delegate.remove();
+            writeOrFail();
+            this.cursor = lastVisited;
+            this.lastVisited = -1;
+        }
+
+        @Override
+        public void set(E e) {
+            if (lastVisited < 0) {
+                throw new IllegalStateException();
+            }
+            delegate.set(e);
+            writeOrFail();
+        }
+
+        @Override
+        public void add(E e) {
+            delegate.add(e);
+            writeOrFail();
+            this.cursor++;
+            this.lastVisited = -1;
+        }
+
+        private void writeOrFail() {
+            //the snapshot's CAS is updated on success, so that several mutations in a row can work
+            if (!tryWrite(snapshot)) {
+                throw new ConcurrentModificationException("List was modified since iterator creation");
+            }
+        }
+    }
+}
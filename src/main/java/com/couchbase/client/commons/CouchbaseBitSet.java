@@ -0,0 +1,464 @@
+package com.couchbase.client.commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.subdoc.MultiMutationException;
+
+/**
+ * A CouchbaseBitSet is a bit set backed by {@link Bucket Couchbase} documents, whose operations mirror the ones
+ * of {@link BitSet}.
+ *
+ * The bits are split in chunks of 65536 bits, each stored in its own binary document identified by
+ * <code>id::chunk</code> (created on first write), in the smallest of an array, run or bitmap container, much like
+ * a roaring bitmap. A chunk thus takes from a few bytes when sparse to 8KB when dense, and a single bit update
+ * only reads and rewrites its chunk (using CAS to detect concurrent modifications). The document identified by
+ * <code>id</code> is a JSON array of the chunks in use, which the operations on the whole set ({@link #cardinality()},
+ * {@link #nextSetBit(int)}, {@link #or(BitSet)}...) go through, so memory and I/O are proportional to the number
+ * of chunks that hold set bits rather than to the highest bit.
+ *
+ * A chunk is listed before it is first written and is never unlisted, even by {@link #clear()}, as the chunk
+ * document and the list can't be updated atomically: unlisting a chunk could otherwise race with a concurrent
+ * write to it, and hide its bits from the operations on the whole set.
+ */
+public class CouchbaseBitSet {
+
+    public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+
+    private final String id;
+    private final Bucket bucket;
+    private final CouchbaseCollections collections;
+
+    /**
+     * Create a new {@link CouchbaseBitSet}, backed by documents whose ids start with <code>id</code> in the given
+     * Couchbase <code>bucket</code>. Note that if the bit set already exists, its bits will be used as initial
+     * content. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document holding the chunks in use, and prefix of the chunks.
+     * @param bucket the {@link Bucket} through which to interact with the documents.
+     */
+    public CouchbaseBitSet(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket));
+    }
+
+    CouchbaseBitSet(String id, CouchbaseCollections collections) {
+        this.id = id;
+        this.bucket = collections.bucket();
+        this.collections = collections;
+
+        try {
+            collections.await(collections.insert(JsonArrayDocument.create(id, JsonArray.empty())));
+        } catch (DocumentAlreadyExistsException e) {
+            //use a pre-existing document
+        }
+    }
+
+    /**
+     * @param index the index of the bit.
+     * @return the value of the bit.
+     */
+    public boolean get(int index) {
+        checkIndex(index);
+        long[] words = read(index >>> 16);
+        return words != null && (words[(index & 0xFFFF) >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Set a bit to true.
+     *
+     * @param index the index of the bit.
+     * @return true if the bit changed.
+     */
+    public boolean set(int index) {
+        checkIndex(index);
+        final int bit = index & 0xFFFF;
+        return update(index >>> 16, true, new ChunkUpdate() {
+            @Override
+            public boolean apply(long[] words) {
+                long before = words[bit >>> 6];
+                words[bit >>> 6] |= 1L << bit;
+                return words[bit >>> 6] != before;
+            }
+        });
+    }
+
+    /**
+     * Set a bit to the given value.
+     *
+     * @param index the index of the bit.
+     * @param value the value of the bit.
+     * @return true if the bit changed.
+     */
+    public boolean set(int index, boolean value) {
+        return value ? set(index) : clear(index);
+    }
+
+    /**
+     * Set the bits from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) to true, rewriting
+     * each chunk of the range once.
+     *
+     * @param fromIndex the index of the first bit to set.
+     * @param toIndex the index after the last bit to set.
+     */
+    public void set(int fromIndex, int toIndex) {
+        updateRange(fromIndex, toIndex, true);
+    }
+
+    /**
+     * Set a bit to false.
+     *
+     * @param index the index of the bit.
+     * @return true if the bit changed.
+     */
+    public boolean clear(int index) {
+        checkIndex(index);
+        final int bit = index & 0xFFFF;
+        return update(index >>> 16, false, new ChunkUpdate() {
+            @Override
+            public boolean apply(long[] words) {
+                long before = words[bit >>> 6];
+                words[bit >>> 6] &= ~(1L << bit);
+                return words[bit >>> 6] != before;
+            }
+        });
+    }
+
+    /**
+     * Set the bits from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) to false, rewriting
+     * each chunk of the range once.
+     *
+     * @param fromIndex the index of the first bit to clear.
+     * @param toIndex the index after the last bit to clear.
+     */
+    public void clear(int fromIndex, int toIndex) {
+        updateRange(fromIndex, toIndex, false);
+    }
+
+    /**
+     * Set all the bits to false, by removing all the chunks. The chunks stay listed (see {@link CouchbaseBitSet}),
+     * so that a bit set concurrently is never lost, and are simply skipped while they don't exist.
+     */
+    public void clear() {
+        for (int chunk : chunks()) {
+            try {
+                collections.await(collections.remove(chunkId(chunk)));
+            } catch (DocumentDoesNotExistException e) {
+                //registered but never written, or already removed
+            }
+        }
+    }
+
+    /**
+     * @return the number of bits set to true.
+     */
+    public long cardinality() {
+        long cardinality = 0;
+        for (int chunk : chunks()) {
+            long[] words = read(chunk);
+            if (words != null) {
+                cardinality += BitSetContainers.cardinality(words);
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return true if no bit is set to true.
+     */
+    public boolean isEmpty() {
+        return nextSetBit(0) < 0;
+    }
+
+    /**
+     * @param fromIndex the index to start from (inclusive).
+     * @return the index of the first bit set to true at or after <code>fromIndex</code>, or -1 if there is none.
+     */
+    public int nextSetBit(int fromIndex) {
+        checkIndex(fromIndex);
+        int first = fromIndex >>> 16;
+        for (int chunk : chunks()) {
+            if (chunk < first) {
+                continue;
+            }
+            long[] words = read(chunk);
+            if (words != null) {
+                int bit = BitSetContainers.nextSetBit(words, chunk == first ? fromIndex & 0xFFFF : 0);
+                if (bit >= 0) {
+                    return (chunk << 16) + bit;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the highest bit set to true, plus one.
+     */
+    public int length() {
+        List<Integer> chunks = chunks();
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            long[] words = read(chunks.get(i));
+            if (words != null) {
+                int last = BitSetContainers.lastSetBit(words);
+                if (last >= 0) {
+                    return (chunks.get(i) << 16) + last + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Set to true the bits that are true in <code>other</code>, rewriting only the chunks that change.
+     *
+     * @param other the bits to set.
+     */
+    public void or(final BitSet other) {
+        Long outer = collections.beginOperation();
+        try {
+            for (int index = other.nextSetBit(0); index >= 0; index = nextSetBit(other, (index | 0xFFFF))) {
+                final int chunk = index >>> 16;
+                update(chunk, true, new ChunkUpdate() {
+                    @Override
+                    public boolean apply(long[] words) {
+                        boolean changed = false;
+                        long end = (long) (chunk + 1) << 16;
+                        for (int i = other.nextSetBit(chunk << 16); i >= 0 && i < end; i = nextSetBit(other, i)) {
+                            long before = words[(i & 0xFFFF) >>> 6];
+                            words[(i & 0xFFFF) >>> 6] |= 1L << i;
+                            changed |= words[(i & 0xFFFF) >>> 6] != before;
+                        }
+                        return changed;
+                    }
+                });
+            }
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Set to true the bits that are true in another {@link CouchbaseBitSet}.
+     *
+     * @param other the bits to set.
+     */
+    public void or(CouchbaseBitSet other) {
+        or(other.toBitSet());
+    }
+
+    /**
+     * Set to false the bits that are false in <code>other</code>, rewriting only the chunks that change.
+     *
+     * @param other the bits to keep.
+     */
+    public void and(final BitSet other) {
+        Long outer = collections.beginOperation();
+        try {
+            for (final int chunk : chunks()) {
+                update(chunk, false, new ChunkUpdate() {
+                    @Override
+                    public boolean apply(long[] words) {
+                        boolean changed = false;
+                        for (int bit = BitSetContainers.nextSetBit(words, 0); bit >= 0;
+                                bit = BitSetContainers.nextSetBit(words, bit + 1)) {
+                            if (!other.get((chunk << 16) + bit)) {
+                                words[bit >>> 6] &= ~(1L << bit);
+                                changed = true;
+                            }
+                        }
+                        return changed;
+                    }
+                });
+            }
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Set to false the bits that are false in another {@link CouchbaseBitSet}.
+     *
+     * @param other the bits to keep.
+     */
+    public void and(CouchbaseBitSet other) {
+        and(other.toBitSet());
+    }
+
+    /**
+     * Fetch all the chunks into a local {@link BitSet}.
+     *
+     * @return a copy of the bit set.
+     */
+    public BitSet toBitSet() {
+        BitSet bits = new BitSet();
+        for (int chunk : chunks()) {
+            long[] words = read(chunk);
+            if (words == null) {
+                continue;
+            }
+            for (int bit = BitSetContainers.nextSetBit(words, 0); bit >= 0; ) {
+                int end = BitSetContainers.nextClearBit(words, bit);
+                bits.set((chunk << 16) + bit, (chunk << 16) + end);
+                bit = BitSetContainers.nextSetBit(words, end);
+            }
+        }
+        return bits;
+    }
+
+    private void updateRange(int fromIndex, int toIndex, final boolean value) {
+        checkIndex(fromIndex);
+        if (toIndex < fromIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+        }
+        //the chunks of the range share the time budget of the operation
+        Long outer = collections.beginOperation();
+        try {
+            int chunk = fromIndex >>> 16;
+            int from = fromIndex;
+            while (from < toIndex) {
+                final int first = from & 0xFFFF;
+                //the end of the chunk, or of the range if it ends within the chunk
+                final int last = toIndex - (chunk << 16) < BitSetContainers.CHUNK_BITS
+                        ? toIndex - (chunk << 16) : BitSetContainers.CHUNK_BITS;
+                update(chunk, value, new ChunkUpdate() {
+                    @Override
+                    public boolean apply(long[] words) {
+                        long[] before = words.clone();
+                        if (value) {
+                            BitSetContainers.setRange(words, first, last);
+                        } else {
+                            BitSetContainers.clearRange(words, first, last);
+                        }
+                        return !Arrays.equals(before, words);
+                    }
+                });
+                if (last < BitSetContainers.CHUNK_BITS) {
+                    break;
+                }
+                chunk++;
+                from = chunk << 16;
+            }
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Apply an update to a chunk, retrying on concurrent modifications.
+     *
+     * @param chunk the chunk to update.
+     * @param create true to create the chunk if it doesn't exist, false if the update can't change an empty chunk.
+     * @param update the update.
+     * @return true if the chunk changed.
+     */
+    private boolean update(int chunk, boolean create, ChunkUpdate update) {
+        String chunkId = chunkId(chunk);
+        collections.recordOperation(chunkId, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                BinaryDocuments.Content current = BinaryDocuments.read(collections, chunkId);
+                if (current == null && !create) {
+                    return false;
+                }
+                long[] words = current == null ? new long[BitSetContainers.WORDS]
+                        : BitSetContainers.decode(chunkId, current.bytes);
+                if (!update.apply(words)) {
+                    return false;
+                }
+                if (current == null) {
+                    //register the chunk first, so that it is never written without being listed
+                    register(chunk);
+                }
+                try {
+                    BinaryDocuments.write(collections, chunkId, BitSetContainers.encode(words),
+                            current == null ? 0L : current.cas);
+                    collections.writeSucceeded(chunkId);
+                    return true;
+                } catch (CASMismatchException e) {
+                    collections.writeConflicted(chunkId);
+                    //retry on the fresh chunk
+                } catch (DocumentAlreadyExistsException e) {
+                    //concurrently created, retry on it
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't update chunk " + chunk + " in less than "
+                    + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    private void register(int chunk) {
+        try {
+            collections.await(collections.mutateIn(id).arrayAddUnique("", chunk, false).execute());
+        } catch (MultiMutationException e) {
+            if (e.firstFailureStatus() != ResponseStatus.SUBDOC_PATH_EXISTS) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the chunks in use, in ascending order.
+     */
+    private List<Integer> chunks() {
+        JsonArrayDocument index = collections.await(bucket.async().get(id, JsonArrayDocument.class));
+        if (index == null) {
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        List<Integer> chunks = new ArrayList<Integer>(index.content().size());
+        for (Object chunk : index.content()) {
+            chunks.add(((Number) chunk).intValue());
+        }
+        Collections.sort(chunks);
+        return chunks;
+    }
+
+    private long[] read(int chunk) {
+        String chunkId = chunkId(chunk);
+        collections.recordOperation(chunkId, null);
+        BinaryDocuments.Content content = BinaryDocuments.read(collections, chunkId);
+        return content == null ? null : BitSetContainers.decode(chunkId, content.bytes);
+    }
+
+    private String chunkId(int chunk) {
+        return id + "::" + chunk;
+    }
+
+    /**
+     * @return the first bit of <code>bits</code> set after <code>index</code>, or -1 if there is none.
+     */
+    private static int nextSetBit(BitSet bits, int index) {
+        return index == Integer.MAX_VALUE ? -1 : bits.nextSetBit(index + 1);
+    }
+
+    private static void checkIndex(int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("index < 0: " + index);
+        }
+    }
+
+    /**
+     * An update of the bits of a chunk.
+     */
+    private interface ChunkUpdate {
+        /**
+         * @param words the bits of the chunk, to update in place.
+         * @return true if the bits changed.
+         */
+        boolean apply(long[] words);
+    }
+}
@@ -0,0 +1,335 @@
+package com.couchbase.client.commons;
+
+import java.util.ConcurrentModificationException;
+
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.subdoc.AsyncLookupInBuilder;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+
+/**
+ * A CouchbaseBloomFilter is a probabilistic set of {@link String} backed by {@link Bucket Couchbase} documents:
+ * {@link #mightContain(String)} never gives a false negative, and gives a false positive with a probability that
+ * is chosen, along with the expected number of elements, when creating the filter. It answers "has this element
+ * been seen?" with a few bytes of I/O, whatever the number of elements.
+ *
+ * The bit array of the filter is split in blocks of {@link #BLOCK_BITS} bits, and all the bits of an element are
+ * in a single block (a "blocked" Bloom filter). The blocks are stored as JSON arrays of 64 bits words, in
+ * chunk documents of {@link #BLOCKS_PER_DOCUMENT} blocks identified by <code>id::0</code>, <code>id::1</code>,
+ * etc. (created on first write), while the document identified by <code>id</code> holds the sizing of the filter.
+ * Thus:
+ * <ul>
+ *     <li>{@link #mightContain(String)} is a single lookup of at most 8 words of a chunk document,</li>
+ *     <li>{@link #put(String)} is that lookup, then a mutation of the changed words (using CAS to detect
+ *     concurrent modifications of the same block).</li>
+ * </ul>
+ *
+ * Elements are hashed with MurmurHash3, so that clients sharing a filter agree on the bits of each element.
+ * Blocking makes the false positive rate slightly higher than the one of a classic Bloom filter of the same size,
+ * which the sizing compensates for by rounding the number of bits up.
+ */
+public class CouchbaseBloomFilter {
+
+    /**
+     * The number of bits of a block, which hold all the bits of an element.
+     */
+    public static final int BLOCK_BITS = 512;
+
+    /**
+     * The number of blocks per chunk document.
+     */
+    public static final int BLOCKS_PER_DOCUMENT = 1024;
+
+    static final int WORDS_PER_BLOCK = BLOCK_BITS / 64;
+
+    private final String id;
+    private final Bucket bucket;
+    private final CouchbaseCollections collections;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final int blocks;
+    private final int hashes;
+
+    /**
+     * Create a new {@link CouchbaseBloomFilter}, sized for <code>expectedInsertions</code> elements with a
+     * false positive probability of <code>fpp</code>, backed by documents whose ids start with <code>id</code>
+     * in the given Couchbase <code>bucket</code>. Note that if the filter already exists, it is used as is, with
+     * the sizing it was created with.
+     *
+     * @param id the id of the Couchbase document holding the sizing of the filter, and prefix of its chunks.
+     * @param bucket the {@link Bucket} through which to interact with the documents.
+     * @param expectedInsertions the number of distinct elements the filter is expected to hold.
+     * @param fpp the desired false positive probability once it holds <code>expectedInsertions</code> elements,
+     *   strictly between 0 and 1.
+     */
+    public CouchbaseBloomFilter(String id, Bucket bucket, long expectedInsertions, double fpp) {
+        this(id, new CouchbaseCollections(bucket), expectedInsertions, fpp);
+    }
+
+    /**
+     * Open an existing {@link CouchbaseBloomFilter}, backed by documents whose ids start with <code>id</code>
+     * in the given Couchbase <code>bucket</code>.
+     *
+     * @param id the id of the Couchbase document holding the sizing of the filter, and prefix of its chunks.
+     * @param bucket the {@link Bucket} through which to interact with the documents.
+     * @throws DocumentDoesNotExistException if the filter doesn't exist.
+     */
+    public CouchbaseBloomFilter(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket));
+    }
+
+    CouchbaseBloomFilter(String id, CouchbaseCollections collections, long expectedInsertions, double fpp) {
+        this(id, collections, create(id, collections, expectedInsertions, fpp));
+    }
+
+    CouchbaseBloomFilter(String id, CouchbaseCollections collections) {
+        this(id, collections, open(id, collections));
+    }
+
+    private CouchbaseBloomFilter(String id, CouchbaseCollections collections, JsonObject sizing) {
+        this.id = id;
+        this.bucket = collections.bucket();
+        this.collections = collections;
+        //small numbers are decoded as Integer
+        this.expectedInsertions = ((Number) sizing.get("expectedInsertions")).longValue();
+        this.fpp = ((Number) sizing.get("fpp")).doubleValue();
+        this.blocks = ((Number) sizing.get("blocks")).intValue();
+        this.hashes = ((Number) sizing.get("hashes")).intValue();
+    }
+
+    /**
+     * Add an element to the filter.
+     *
+     * @param element the element to add.
+     * @return true if the bits of the filter changed, false if the element was already (or might already have
+     *   been) added.
+     */
+    public boolean put(String element) {
+        long[] masks = new long[WORDS_PER_BLOCK];
+        int block = block(Murmur3.hash128(element), blocks, hashes, masks);
+        String chunk = chunkId(block / BLOCKS_PER_DOCUMENT);
+        int firstWord = (block % BLOCKS_PER_DOCUMENT) * WORDS_PER_BLOCK;
+        collections.recordOperation(chunk, null);
+
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(chunk);
+                try {
+                    DocumentFragment<Lookup> current = lookup(chunk, firstWord, masks);
+                    AsyncMutateInBuilder mutation = collections.mutateIn(chunk);
+                    boolean changed = false;
+                    int spec = 0;
+                    for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+                        if (masks[w] != 0) {
+                            long word = ((Number) current.content(spec++)).longValue();
+                            if ((word & masks[w]) != masks[w]) {
+                                mutation.replace(SubdocPaths.index(firstWord + w), word | masks[w]);
+                                changed = true;
+                            }
+                        }
+                    }
+                    if (!changed) {
+                        return false;
+                    }
+                    collections.await(mutation.withCas(current.cas()).execute());
+                    collections.writeSucceeded(chunk);
+                    return true;
+                } catch (DocumentDoesNotExistException e) {
+                    createChunk(block / BLOCKS_PER_DOCUMENT);
+                } catch (CASMismatchException e) {
+                    collections.writeConflicted(chunk);
+                    //another element of the block was concurrently added, retry
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform put in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * @param element the element to check.
+     * @return true if the element might have been added to the filter, false if it definitely wasn't.
+     */
+    public boolean mightContain(String element) {
+        long[] masks = new long[WORDS_PER_BLOCK];
+        int block = block(Murmur3.hash128(element), blocks, hashes, masks);
+        String chunk = chunkId(block / BLOCKS_PER_DOCUMENT);
+        int firstWord = (block % BLOCKS_PER_DOCUMENT) * WORDS_PER_BLOCK;
+        collections.recordOperation(chunk, null);
+
+        DocumentFragment<Lookup> current;
+        try {
+            current = lookup(chunk, firstWord, masks);
+        } catch (DocumentDoesNotExistException e) {
+            //nothing was ever added to this chunk
+            return false;
+        }
+        int spec = 0;
+        for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+            if (masks[w] != 0 && (((Number) current.content(spec++)).longValue() & masks[w]) != masks[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove all the elements of the filter, by removing its chunk documents.
+     */
+    public void clear() {
+        for (int chunk = 0; chunk < chunkCount(); chunk++) {
+            try {
+                collections.await(collections.remove(chunkId(chunk)));
+            } catch (DocumentDoesNotExistException e) {
+                //never written to
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct elements the filter was sized for.
+     */
+    public long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    /**
+     * @return the false positive probability the filter was sized for.
+     */
+    public double fpp() {
+        return fpp;
+    }
+
+    /**
+     * @return the number of bits of the filter.
+     */
+    public long bitSize() {
+        return (long) blocks * BLOCK_BITS;
+    }
+
+    /**
+     * @return the number of bits set per element.
+     */
+    public int hashCount() {
+        return hashes;
+    }
+
+    private DocumentFragment<Lookup> lookup(String chunk, int firstWord, long[] masks) {
+        AsyncLookupInBuilder lookup = bucket.async().lookupIn(chunk);
+        for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+            if (masks[w] != 0) {
+                lookup.get(SubdocPaths.index(firstWord + w));
+            }
+        }
+        return collections.await(lookup.execute());
+    }
+
+    private void createChunk(int chunk) {
+        int chunkBlocks = Math.min(BLOCKS_PER_DOCUMENT, blocks - chunk * BLOCKS_PER_DOCUMENT);
+        JsonArray words = JsonArray.create();
+        for (int i = 0; i < chunkBlocks * WORDS_PER_BLOCK; i++) {
+            words.add(0L);
+        }
+        try {
+            collections.await(collections.insert(JsonArrayDocument.create(chunkId(chunk), words)));
+        } catch (DocumentAlreadyExistsException e) {
+            //concurrently created
+        }
+    }
+
+    private int chunkCount() {
+        return (blocks + BLOCKS_PER_DOCUMENT - 1) / BLOCKS_PER_DOCUMENT;
+    }
+
+    private String chunkId(int chunk) {
+        return id + "::" + chunk;
+    }
+
+    /**
+     * Find the block of an element, and the bits it sets in each word of that block. The block is chosen by the
+     * first half of the hash, and the bits by double hashing of the second half.
+     *
+     * @param hash the 128 bits hash of the element.
+     * @param blocks the number of blocks of the filter.
+     * @param hashes the number of bits per element.
+     * @param masks filled with the bits of the element in each word of its block.
+     * @return the index of the block.
+     */
+    static int block(long[] hash, int blocks, int hashes, long[] masks) {
+        int block = (int) ((hash[0] >>> 1) % blocks);
+        long step = Long.rotateLeft(hash[0], 32) | 1;
+        long combined = hash[1];
+        for (int i = 0; i < hashes; i++) {
+            //the top 9 bits give the position in the 512 bits block
+            int bit = (int) (combined >>> (64 - 9));
+            masks[bit >>> 6] |= 1L << (bit & 63);
+            combined += step;
+        }
+        return block;
+    }
+
+    /**
+     * @return the number of blocks of a filter sized for <code>expectedInsertions</code> elements and
+     *   a false positive probability of <code>fpp</code>.
+     */
+    static int blocks(long expectedInsertions, double fpp) {
+        //the optimal size of a classic Bloom filter, plus 10% to make up for the blocking
+        double bits = 1.1 * -expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2));
+        long blocks = Math.max(1, (long) Math.ceil(bits / BLOCK_BITS));
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filter too large: " + expectedInsertions + " elements at " + fpp);
+        }
+        return (int) blocks;
+    }
+
+    /**
+     * @return the optimal number of bits per element, for the given number of bits per expected element.
+     */
+    static int hashes(long expectedInsertions, long bits) {
+        //more than a handful of bits per element only adds collisions within the block
+        return (int) Math.max(1, Math.min(16, Math.round((double) bits / expectedInsertions * Math.log(2))));
+    }
+
+    private static JsonObject create(String id, CouchbaseCollections collections, long expectedInsertions,
+            double fpp) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("expectedInsertions must be at least 1: " + expectedInsertions);
+        }
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("fpp must be strictly between 0 and 1: " + fpp);
+        }
+        int blocks = blocks(expectedInsertions, fpp);
+        JsonObject sizing = JsonObject.create()
+                .put("expectedInsertions", expectedInsertions)
+                .put("fpp", fpp)
+                .put("blocks", blocks)
+                .put("hashes", hashes(expectedInsertions, (long) blocks * BLOCK_BITS));
+        try {
+            collections.await(collections.insert(JsonDocument.create(id, sizing)));
+            return sizing;
+        } catch (DocumentAlreadyExistsException e) {
+            return open(id, collections);
+        }
+    }
+
+    private static JsonObject open(String id, CouchbaseCollections collections) {
+        JsonDocument sizing = collections.await(collections.bucket().async().get(id));
+        if (sizing == null) {
+            throw new DocumentDoesNotExistException("Bloom filter " + id + " doesn't exist");
+        }
+        return sizing.content();
+    }
+}
@@ -0,0 +1,705 @@
+package com.couchbase.client.commons;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonProcessingException;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.error.subdoc.MultiMutationException;
+import com.couchbase.client.java.error.subdoc.PathNotFoundException;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+
+/**
+ * A CouchbaseCacheMap is a {@link Map} backed by a {@link Bucket Couchbase} document, whose entries can expire
+ * individually, for use as a shared cache.
+ *
+ * The document holds two JSON objects: <code>entries</code>, the keys and values of the map, and
+ * <code>expiries</code>, the time (in milliseconds since the epoch) at which each key put with a time-to-live
+ * expires. Expired entries are invisible to reads right away, and are removed from the document lazily: each
+ * write also removes a few expired entries, in the same CAS-guarded multi-mutation, so the document stays
+ * bounded by the live entries as long as it is written to. {@link #purgeExpired()} removes all of them at once.
+ * Expiries are computed from the clock of the clients, which should thus be synchronized.
+ *
+ * The document itself can also expire, see {@link #CouchbaseCacheMap(String, Bucket, int)}.
+ *
+ * The map can also be bounded by an {@link EvictionPolicy}, to keep the document (and thus the cost of reading it
+ * as a whole) under a budget. The document then also holds <code>usage</code>, the time each entry was last used
+ * and its size, and a write that takes the map over the budget evicts the least recently used entries in the same
+ * mutation. Entries written by a map created without bound have no usage and are never evicted, so all the maps
+ * opened on a document should share the same policy.
+ *
+ * Null keys are NOT permitted, and keys are restricted to {@link String}. Values are restricted to the types that
+ * a {@link JsonObject JSON object} can contain.
+ *
+ * @param <V> the type of values in the map.
+ */
+public class CouchbaseCacheMap<V> extends AbstractMap<String, V> {
+
+    public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final String ENTRIES = "entries";
+    static final String EXPIRIES = "expiries";
+    static final String USAGE = "usage";
+
+    /**
+     * The maximum number of expired entries removed along with each write: a write takes up to 2 of the
+     * {@link MultiLookup#MAX_SPECS} paths of a multi-mutation (3 when bounded), and each removal takes 2 more (3
+     * when bounded).
+     */
+    static final int SWEEP_BATCH = (MultiLookup.MAX_SPECS - 2) / 2;
+
+    private final String id;
+    private final Bucket bucket;
+    private final CouchbaseCollections collections;
+    private final int expiry;
+    private final EvictionPolicy eviction;
+
+    /**
+     * Create a new {@link CouchbaseCacheMap}, backed by the document identified by <code>id</code> in the given
+     * Couchbase <code>bucket</code>. Note that if the document already exists, its content will be used as initial
+     * content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the map.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     */
+    public CouchbaseCacheMap(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket), 0, EvictionPolicy.NONE);
+    }
+
+    /**
+     * Create a new {@link CouchbaseCacheMap} whose document expires, backed by the document identified by
+     * <code>id</code> in the given Couchbase <code>bucket</code>. Note that if the document already exists, its
+     * content will be used as initial content for this collection. Otherwise it is created empty.
+     *
+     * The document expires <code>expiry</code> seconds after it was last written through this map, or after it
+     * was last {@link #touch() touched}, see {@link CouchbaseMap#CouchbaseMap(String, Bucket, int)}.
+     *
+     * @param id the id of the Couchbase document to back the map.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param expiry the expiry of the document, in seconds, 0 for no expiry.
+     */
+    public CouchbaseCacheMap(String id, Bucket bucket, int expiry) {
+        this(id, new CouchbaseCollections(bucket), expiry, EvictionPolicy.NONE);
+    }
+
+    /**
+     * Create a new bounded {@link CouchbaseCacheMap}, backed by the document identified by <code>id</code> in the
+     * given Couchbase <code>bucket</code>. Note that if the document already exists, its content will be used as
+     * initial content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the map.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param expiry the expiry of the document, in seconds, 0 for no expiry.
+     * @param eviction the {@link EvictionPolicy} bounding the map.
+     */
+    public CouchbaseCacheMap(String id, Bucket bucket, int expiry, EvictionPolicy eviction) {
+        this(id, new CouchbaseCollections(bucket), expiry, eviction);
+    }
+
+    CouchbaseCacheMap(String id, CouchbaseCollections collections, int expiry, EvictionPolicy eviction) {
+        if (expiry < 0) {
+            throw new IllegalArgumentException("expiry must be positive: " + expiry);
+        }
+        if (eviction == null) {
+            throw new NullPointerException("eviction");
+        }
+        this.id = id;
+        this.bucket = collections.bucket();
+        this.collections = collections;
+        this.expiry = expiry;
+        this.eviction = eviction;
+
+        try {
+            collections.await(collections.insert(JsonDocument.create(id, expiry, emptyContent())));
+        } catch (DocumentAlreadyExistsException ex) {
+            // Ignore concurrent creations, keep on moving.
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        collections.recordOperation(id, String.valueOf(key));
+        DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id)
+                .get(SubdocPaths.member(ENTRIES, key))
+                .get(SubdocPaths.member(EXPIRIES, key))
+                .execute());
+        long now = now();
+        if (!current.exists(0) || (current.exists(1) && isExpired(current.content(1), now))) {
+            return null;
+        }
+        if (eviction.isBounded() && eviction.accessOrder()) {
+            markUsed(String.valueOf(key), now);
+        }
+        return (V) current.content(0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        collections.recordOperation(id, String.valueOf(key));
+        DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id)
+                .exists(SubdocPaths.member(ENTRIES, key))
+                .get(SubdocPaths.member(EXPIRIES, key))
+                .execute());
+        return current.exists(0) && !(current.exists(1) && isExpired(current.content(1), now()));
+    }
+
+    /**
+     * Associate <code>value</code> with <code>key</code>, without expiry (any previous expiry of the key is
+     * cancelled).
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return the previous value, or null if the key was absent or expired.
+     */
+    @Override
+    public V put(String key, V value) {
+        checkKeyAndValue(key, value);
+        return write("put", key, value, 0L);
+    }
+
+    /**
+     * Associate <code>value</code> with <code>key</code> for a limited time, after which the key is considered
+     * absent.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @param ttl how long the entry lives.
+     * @param unit the unit of <code>ttl</code>.
+     * @return the previous value, or null if the key was absent or expired.
+     */
+    public V put(String key, V value, long ttl, TimeUnit unit) {
+        checkKeyAndValue(key, value);
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be strictly positive: " + ttl);
+        }
+        return write("put", key, value, now() + unit.toMillis(ttl));
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        return write("remove", String.valueOf(key), null, 0L);
+    }
+
+    /**
+     * Remove all the expired entries from the document at once, in a single CAS-guarded write.
+     *
+     * @return the number of entries removed.
+     */
+    public int purgeExpired() {
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                //take the turn on a contended document before reading it, so that the read isn't outdated by the
+                //writers that held the turn before
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    //an attempt can share an in-flight read only if it is the first and doesn't hold a turn, as the
+                    //read must otherwise return a CAS at least as recent as the turn or the failure
+                    boolean fresh = i > 0 || permit != ContentionTracker.NO_PERMIT;
+                    JsonDocument current = collections.fetch(id, JsonDocument.class, fresh);
+                    if (current == null) {
+                        throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+                    }
+                    JsonObject content = current.content();
+                    JsonObject usage = usage(content.getObject(USAGE));
+                    List<String> expired = expiredKeys(content.getObject(EXPIRIES), now(), null, Integer.MAX_VALUE);
+                    if (expired.isEmpty()) {
+                        return 0;
+                    }
+                    Changes changes = new Changes();
+                    for (String key : expired) {
+                        changes.removeEntry(key, true, usage.containsKey(key));
+                    }
+                    commit(changes, current.cas(), null);
+                    collections.writeSucceeded(id);
+                    return expired.size();
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id);
+                    //will need to retry on a fresh copy
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform purgeExpired in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public void clear() {
+        collections.await(collections.upsert(JsonDocument.create(id, expiry, emptyContent())));
+    }
+
+    /**
+     * Refresh the expiry of the document, see {@link CouchbaseMap#touch()}.
+     *
+     * @return true if the document exists, false if it already expired.
+     */
+    public boolean touch() {
+        try {
+            return collections.await(bucket.async().touch(id, expiry));
+        } catch (DocumentDoesNotExistException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the expiry of the document in seconds, 0 if it never expires.
+     */
+    public int expiry() {
+        return expiry;
+    }
+
+    /**
+     * @return the {@link EvictionPolicy} bounding the map.
+     */
+    public EvictionPolicy eviction() {
+        return eviction;
+    }
+
+    @Override
+    public int size() {
+        return liveEntries().size();
+    }
+
+    /**
+     * A view over the live entries of the map. Each operation fetches the document anew, and removals write
+     * through to the document.
+     */
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                final Iterator<Entry<String, V>> entries = liveEntries().entrySet().iterator();
+                return new Iterator<Entry<String, V>>() {
+                    private String lastKey = null;
+
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        Entry<String, V> next = entries.next();
+                        lastKey = next.getKey();
+                        return new SimpleImmutableEntry<String, V>(next);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (lastKey == null)
+                            throw new IllegalStateException("next() hasn't been called before remove()");
+                        CouchbaseCacheMap.this.remove(lastKey);
+                        lastKey = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CouchbaseCacheMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                CouchbaseCacheMap.this.clear();
+            }
+        };
+    }
+
+    /**
+     * The CAS loop shared by put and remove: look up the key, the expiries and the usage, then write or remove the
+     * key along with the evictions it requires and a batch of expired entries, in a single mutation guarded by the
+     * CAS of the lookup.
+     *
+     * @param value the value to put, null to remove the key.
+     * @param expiresAt when the entry expires, 0 for never.
+     */
+    private V write(String operation, String key, Object value, long expiresAt) {
+        String entryPath = SubdocPaths.member(ENTRIES, key);
+        boolean bounded = eviction.isBounded();
+        long size = value != null && bounded ? entrySize(key, value) : 0L;
+        if (eviction.maxBytes() > 0 && size > eviction.maxBytes()) {
+            throw new IllegalArgumentException("Entry of " + size + " bytes exceeds maxBytes " + eviction.maxBytes());
+        }
+        collections.recordOperation(id, key);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id)
+                            .get(entryPath).get(EXPIRIES).get(USAGE).execute());
+                    JsonObject expiries = (JsonObject) current.content(1);
+                    JsonObject usage = usage(current.exists(2) ? (JsonObject) current.content(2) : null);
+                    long now = now();
+                    boolean exists = current.exists(0);
+                    boolean hasExpiry = expiries.containsKey(key);
+                    Object previous = exists && !(hasExpiry && isExpired(expiries.get(key), now))
+                            ? current.content(0) : null;
+
+                    Changes changes = new Changes();
+                    Set<String> removed = new HashSet<String>();
+                    removed.add(key);
+                    if (value != null) {
+                        changes.put(ENTRIES, key, value);
+                        if (expiresAt > 0) {
+                            changes.put(EXPIRIES, key, expiresAt);
+                        } else if (hasExpiry) {
+                            changes.remove(EXPIRIES, key);
+                        }
+                        if (bounded) {
+                            changes.put(USAGE, key, JsonArray.from(now, size));
+                            for (String victim : victims(usage, expiries, key, size, eviction, now)) {
+                                changes.removeEntry(victim, expiries.containsKey(victim), true);
+                                removed.add(victim);
+                            }
+                        }
+                    } else if (exists) {
+                        changes.removeEntry(key, hasExpiry, usage.containsKey(key));
+                    }
+                    int removalSpecs = bounded ? 3 : 2;
+                    for (String expiredKey : expiredKeys(expiries, now, key, SWEEP_BATCH)) {
+                        if (changes.size() + removalSpecs > MultiLookup.MAX_SPECS) {
+                            break;
+                        }
+                        if (removed.add(expiredKey)) {
+                            changes.removeEntry(expiredKey, true, usage.containsKey(expiredKey));
+                        }
+                    }
+                    if (changes.size() == 0) {
+                        return null;
+                    }
+
+                    commit(changes, current.cas(), null);
+                    collections.writeSucceeded(id);
+                    return (V) previous;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id, key);
+                    //will need to retry lookup-and-write
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform " + operation + " in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Apply changes to the document, as a single multi-mutation if they fit in one, else as a replacement of the
+     * whole document.
+     *
+     * @param cas the CAS of the version of the document the changes were computed from.
+     * @param content the content of that version, or null to fetch it if needed.
+     * @throws CASMismatchException if the document changed since that version.
+     */
+    private void commit(Changes changes, long cas, JsonObject content) {
+        if (changes.size() <= MultiLookup.MAX_SPECS) {
+            AsyncMutateInBuilder mutation = mutateIn();
+            changes.addTo(mutation);
+            collections.await(mutation.withCas(cas).execute());
+            return;
+        }
+        if (content == null) {
+            JsonDocument current = collections.await(bucket.async().get(id));
+            if (current == null) {
+                throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+            }
+            if (current.cas() != cas) {
+                throw new CASMismatchException();
+            }
+            content = current.content();
+        }
+        changes.applyTo(content);
+        collections.await(collections.replace(JsonDocument.create(id, expiry, content, cas)));
+    }
+
+    /**
+     * Mark an entry as used, without failing if it was concurrently removed.
+     */
+    private void markUsed(String key, long now) {
+        try {
+            //the usage exists as long as the entry does, so the replacement can't recreate a removed entry's usage
+            collections.await(mutateIn().replace(SubdocPaths.member(USAGE, key) + "[0]", now).execute());
+        } catch (MultiMutationException e) {
+            if (e.firstFailureStatus() != ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                throw e;
+            }
+        } catch (PathNotFoundException e) {
+            //removed or evicted meanwhile
+        }
+    }
+
+    /**
+     * Fetch the document and extract the entries that haven't expired.
+     */
+    private Map<String, V> liveEntries() {
+        collections.recordOperation(id, null);
+        JsonDocument current = collections.fetch(id, JsonDocument.class, false);
+        if (current == null) {
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        JsonObject entries = current.content().getObject(ENTRIES);
+        JsonObject expiries = current.content().getObject(EXPIRIES);
+        long now = now();
+        Map<String, V> live = new LinkedHashMap<String, V>(entries.size());
+        for (String name : entries.getNames()) {
+            if (!expiries.containsKey(name) || !isExpired(expiries.get(name), now)) {
+                live.put(name, (V) entries.get(name));
+            }
+        }
+        return live;
+    }
+
+    /**
+     * @return a new multi-mutation of the document, which sets its expiry.
+     */
+    private AsyncMutateInBuilder mutateIn() {
+        return collections.mutateIn(id).withExpiry(expiry);
+    }
+
+    private static void checkKeyAndValue(String key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        if (value == null) {
+            throw new NullPointerException("Unsupported null value");
+        }
+        if (!JsonValue.checkType(value)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+    }
+
+    private static JsonObject emptyContent() {
+        return JsonObject.create()
+                .put(ENTRIES, JsonObject.empty())
+                .put(EXPIRIES, JsonObject.empty())
+                .put(USAGE, JsonObject.empty());
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @param expiresAt the expiry of an entry, as stored in the document.
+     * @param now the current time, in milliseconds since the epoch.
+     * @return true if the entry has expired.
+     */
+    static boolean isExpired(Object expiresAt, long now) {
+        return ((Number) expiresAt).longValue() <= now;
+    }
+
+    /**
+     * @param expiries the expiries of the entries, as stored in the document.
+     * @param now the current time, in milliseconds since the epoch.
+     * @param except a key to leave out, or null.
+     * @param limit the maximum number of keys to return.
+     * @return the expired keys, up to <code>limit</code>.
+     */
+    static List<String> expiredKeys(JsonObject expiries, long now, String except, int limit) {
+        List<String> expired = new ArrayList<String>();
+        for (String name : expiries.getNames()) {
+            if (expired.size() == limit) {
+                break;
+            }
+            if (!name.equals(except) && isExpired(expiries.get(name), now)) {
+                expired.add(name);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the usage of the entries, empty for documents created before it existed.
+     */
+    private static JsonObject usage(JsonObject usage) {
+        return usage == null ? JsonObject.empty() : usage;
+    }
+
+    /**
+     * @return the size of an entry, as measured against {@link EvictionPolicy#maxBytes()}.
+     */
+    static long entrySize(String key, Object value) {
+        try {
+            return key.getBytes(UTF_8).length + JacksonTransformers.MAPPER.writeValueAsBytes(value).length;
+        } catch (JsonProcessingException e) {
+            throw new TranscodingException("Could not encode the value of " + key, e);
+        }
+    }
+
+    /**
+     * Select the entries to evict so that writing an entry keeps the map within the bounds of a policy: expired
+     * entries first, then the least recently used ones.
+     *
+     * @param usage the usage of the entries, as stored in the document.
+     * @param expiries the expiries of the entries, as stored in the document.
+     * @param key the key being written, which is never evicted.
+     * @param size the size of the entry being written.
+     * @param eviction the policy.
+     * @param now the current time, in milliseconds since the epoch.
+     * @return the keys to evict, in order.
+     */
+    static List<String> victims(final JsonObject usage, final JsonObject expiries, String key, long size,
+            EvictionPolicy eviction, final long now) {
+        long entries = usage.size();
+        long bytes = size;
+        List<String> candidates = new ArrayList<String>(usage.size());
+        for (String name : usage.getNames()) {
+            if (name.equals(key)) {
+                entries--;
+            } else {
+                bytes += usedBytes(usage, name);
+                candidates.add(name);
+            }
+        }
+        entries++;
+        if (!overBudget(entries, bytes, eviction)) {
+            return Collections.emptyList();
+        }
+
+        Collections.sort(candidates, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                boolean aExpired = expiries.containsKey(a) && isExpired(expiries.get(a), now);
+                boolean bExpired = expiries.containsKey(b) && isExpired(expiries.get(b), now);
+                if (aExpired != bExpired) {
+                    return aExpired ? -1 : 1;
+                }
+                long aUsed = lastUsed(usage, a);
+                long bUsed = lastUsed(usage, b);
+                return aUsed < bUsed ? -1 : (aUsed == bUsed ? 0 : 1);
+            }
+        });
+        List<String> victims = new ArrayList<String>();
+        for (String candidate : candidates) {
+            if (!overBudget(entries, bytes, eviction)) {
+                break;
+            }
+            victims.add(candidate);
+            entries--;
+            bytes -= usedBytes(usage, candidate);
+        }
+        return victims;
+    }
+
+    private static boolean overBudget(long entries, long bytes, EvictionPolicy eviction) {
+        return (eviction.maxEntries() > 0 && entries > eviction.maxEntries())
+                || (eviction.maxBytes() > 0 && bytes > eviction.maxBytes());
+    }
+
+    private static long lastUsed(JsonObject usage, String key) {
+        return ((Number) usage.getArray(key).get(0)).longValue();
+    }
+
+    private static long usedBytes(JsonObject usage, String key) {
+        return ((Number) usage.getArray(key).get(1)).longValue();
+    }
+
+    /**
+     * Changes to the members of the objects of the document, which can be applied either as a multi-mutation or
+     * to a local copy of the document.
+     */
+    private static final class Changes {
+
+        private final List<String> parents = new ArrayList<String>();
+        private final List<String> keys = new ArrayList<String>();
+        private final List<Object> values = new ArrayList<Object>();
+
+        void put(String parent, String key, Object value) {
+            parents.add(parent);
+            keys.add(key);
+            values.add(value);
+        }
+
+        void remove(String parent, String key) {
+            put(parent, key, null);
+        }
+
+        /**
+         * Remove an entry along with its metadata.
+         */
+        void removeEntry(String key, boolean hasExpiry, boolean hasUsage) {
+            remove(ENTRIES, key);
+            if (hasExpiry) {
+                remove(EXPIRIES, key);
+            }
+            if (hasUsage) {
+                remove(USAGE, key);
+            }
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        void addTo(AsyncMutateInBuilder mutation) {
+            for (int i = 0; i < keys.size(); i++) {
+                String path = SubdocPaths.member(parents.get(i), keys.get(i));
+                if (values.get(i) == null) {
+                    mutation.remove(path);
+                } else {
+                    mutation.upsert(path, values.get(i), true);
+                }
+            }
+        }
+
+        void applyTo(JsonObject content) {
+            for (int i = 0; i < keys.size(); i++) {
+                JsonObject parent = content.getObject(parents.get(i));
+                if (parent == null) {
+                    parent = JsonObject.create();
+                    content.put(parents.get(i), parent);
+                }
+                if (values.get(i) == null) {
+                    parent.removeKey(keys.get(i));
+                } else {
+                    parent.put(keys.get(i), values.get(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,693 @@
+package com.couchbase.client.commons;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.couchbase.client.commons.binary.ElementCodec;
+import com.couchbase.client.core.config.BucketConfig;
+import com.couchbase.client.core.config.CouchbaseBucketConfig;
+import com.couchbase.client.core.message.cluster.GetClusterConfigRequest;
+import com.couchbase.client.core.message.cluster.GetClusterConfigResponse;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.ReplicaMode;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * Creates Couchbase-backed collections that share a {@link Bucket} and a set of {@link CollectionOptions}.
+ *
+ * Collections created through the same CouchbaseCollections also share the facilities that the options
+ * enable (eg. read coalescing), so it is typically created once per bucket and reused:
+ *
+ * <pre>
+ * CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+ *     .coalesceReads(true)
+ *     .build());
+ * Map&lt;String, Object&gt; map = collections.map("my-map-docid");
+ * List&lt;Object&gt; list = collections.list("my-list-docid");
+ * </pre>
+ */
+public class CouchbaseCollections {
+
+    private static final ReplicaMode[] REPLICAS = { ReplicaMode.FIRST, ReplicaMode.SECOND, ReplicaMode.THIRD };
+    private static final long REPLICA_COUNT_TTL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Bucket bucket;
+    private final CollectionOptions options;
+    private final ReadCoalescer coalescer;
+    private final ContentionTracker contention;
+    private final WriteCombiner combiner;
+    private final HotKeyTracker hotKeys;
+    /**
+     * The deadline, in {@link System#nanoTime()} terms, of the operations running on each thread (if any).
+     */
+    private final ThreadLocal<Long> deadlines = new ThreadLocal<Long>();
+    /**
+     * The turn of the next {@link ReplicaReads#ROUND_ROBIN round robin} read.
+     */
+    private final AtomicLong replicaTurn = new AtomicLong();
+    private volatile int replicaCount;
+    private volatile long replicaCountExpiry = System.nanoTime();
+
+    /**
+     * Create a new {@link CouchbaseCollections} with the {@link CollectionOptions#DEFAULT default options}.
+     *
+     * @param bucket the {@link Bucket} through which the collections interact with their documents.
+     */
+    public CouchbaseCollections(Bucket bucket) {
+        this(bucket, CollectionOptions.DEFAULT);
+    }
+
+    /**
+     * Create a new {@link CouchbaseCollections}.
+     *
+     * @param bucket the {@link Bucket} through which the collections interact with their documents.
+     * @param options the {@link CollectionOptions} to apply to the collections.
+     */
+    public CouchbaseCollections(Bucket bucket, CollectionOptions options) {
+        this.bucket = bucket;
+        this.options = options;
+        this.coalescer = options.coalesceReads() ? new ReadCoalescer() : null;
+        this.contention = options.adaptiveWrites() ? new ContentionTracker() : null;
+        this.combiner = options.addCombiningWindowNanos() > 0 ? new WriteCombiner(options.addCombiningWindowNanos()) : null;
+        this.hotKeys = options.hotKeyCapacity() > 0 ? new HotKeyTracker(options.hotKeyCapacity()) : null;
+    }
+
+    /**
+     * @return the {@link Bucket} through which the collections interact with their documents.
+     */
+    public Bucket bucket() {
+        return bucket;
+    }
+
+    /**
+     * @return the {@link CollectionOptions} applied to the collections.
+     */
+    public CollectionOptions options() {
+        return options;
+    }
+
+    /**
+     * See {@link CouchbaseMap#CouchbaseMap(String, Bucket)}.
+     */
+    public <V> CouchbaseMap<V> map(String id) {
+        return new CouchbaseMap<V>(id, this, 0);
+    }
+
+    /**
+     * See {@link CouchbaseMap#CouchbaseMap(String, Bucket, int)}.
+     */
+    public <V> CouchbaseMap<V> map(String id, int expiry) {
+        return new CouchbaseMap<V>(id, this, expiry);
+    }
+
+    /**
+     * See {@link CouchbaseMap#CouchbaseMap(String, Bucket, Map)}.
+     */
+    public <V> CouchbaseMap<V> map(String id, Map<String, ? extends V> data) {
+        return new CouchbaseMap<V>(id, this, data);
+    }
+
+    /**
+     * See {@link CouchbaseCompressedMap#CouchbaseCompressedMap(String, Bucket)}. The document is compressed
+     * according to the {@link CollectionOptions#compression() compression options} of this CouchbaseCollections.
+     */
+    public <V> CouchbaseCompressedMap<V> compressedMap(String id) {
+        return new CouchbaseCompressedMap<V>(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseCompressedMap#CouchbaseCompressedMap(String, Bucket, Map)}. The document is compressed
+     * according to the {@link CollectionOptions#compression() compression options} of this CouchbaseCollections.
+     */
+    public <V> CouchbaseCompressedMap<V> compressedMap(String id, Map<String, ? extends V> data) {
+        return new CouchbaseCompressedMap<V>(id, this, data);
+    }
+
+    /**
+     * See {@link CouchbaseCacheMap#CouchbaseCacheMap(String, Bucket)}.
+     */
+    public <V> CouchbaseCacheMap<V> cacheMap(String id) {
+        return new CouchbaseCacheMap<V>(id, this, 0, EvictionPolicy.NONE);
+    }
+
+    /**
+     * See {@link CouchbaseCacheMap#CouchbaseCacheMap(String, Bucket, int)}.
+     */
+    public <V> CouchbaseCacheMap<V> cacheMap(String id, int expiry) {
+        return new CouchbaseCacheMap<V>(id, this, expiry, EvictionPolicy.NONE);
+    }
+
+    /**
+     * See {@link CouchbaseCacheMap#CouchbaseCacheMap(String, Bucket, int, EvictionPolicy)}.
+     */
+    public <V> CouchbaseCacheMap<V> cacheMap(String id, int expiry, EvictionPolicy eviction) {
+        return new CouchbaseCacheMap<V>(id, this, expiry, eviction);
+    }
+
+    /**
+     * See {@link CouchbaseArrayList#CouchbaseArrayList(String, Bucket)}.
+     */
+    public <E> CouchbaseArrayList<E> list(String id) {
+        return new CouchbaseArrayList<E>(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseArrayList#CouchbaseArrayList(String, Bucket, Collection)}.
+     */
+    public <E> CouchbaseArrayList<E> list(String id, Collection<? extends E> content) {
+        return new CouchbaseArrayList<E>(id, this, content);
+    }
+
+    /**
+     * See {@link CouchbaseLongList#CouchbaseLongList(String, Bucket)}.
+     */
+    public CouchbaseLongList longList(String id) {
+        return new CouchbaseLongList(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseLongList#CouchbaseLongList(String, Bucket, long[])}.
+     */
+    public CouchbaseLongList longList(String id, long[] content) {
+        return new CouchbaseLongList(id, this, content);
+    }
+
+    /**
+     * See {@link CouchbaseDoubleList#CouchbaseDoubleList(String, Bucket)}.
+     */
+    public CouchbaseDoubleList doubleList(String id) {
+        return new CouchbaseDoubleList(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseDoubleList#CouchbaseDoubleList(String, Bucket, double[])}.
+     */
+    public CouchbaseDoubleList doubleList(String id, double[] content) {
+        return new CouchbaseDoubleList(id, this, content);
+    }
+
+    /**
+     * See {@link CouchbaseArraySet#CouchbaseArraySet(String, Bucket)}.
+     */
+    public <T> CouchbaseArraySet<T> set(String id) {
+        return new CouchbaseArraySet<T>(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseArraySet#CouchbaseArraySet(String, Bucket, Set)}.
+     */
+    public <T> CouchbaseArraySet<T> set(String id, Set<? extends T> initialData) {
+        return new CouchbaseArraySet<T>(id, this, initialData);
+    }
+
+    /**
+     * See {@link CouchbaseBinaryList#CouchbaseBinaryList(String, Bucket, ElementCodec)}.
+     */
+    public <E> CouchbaseBinaryList<E> binaryList(String id, ElementCodec<E> codec) {
+        return new CouchbaseBinaryList<E>(id, this, codec);
+    }
+
+    /**
+     * See {@link CouchbaseBinaryList#CouchbaseBinaryList(String, Bucket, ElementCodec, Collection)}.
+     */
+    public <E> CouchbaseBinaryList<E> binaryList(String id, ElementCodec<E> codec, Collection<? extends E> content) {
+        return new CouchbaseBinaryList<E>(id, this, codec, content);
+    }
+
+    /**
+     * See {@link CouchbaseSortedLongSet#CouchbaseSortedLongSet(String, Bucket)}.
+     */
+    public CouchbaseSortedLongSet sortedLongSet(String id) {
+        return new CouchbaseSortedLongSet(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseSortedLongSet#CouchbaseSortedLongSet(String, Bucket, Collection)}.
+     */
+    public CouchbaseSortedLongSet sortedLongSet(String id, Collection<Long> initialData) {
+        return new CouchbaseSortedLongSet(id, this, initialData);
+    }
+
+    /**
+     * See {@link CouchbaseBloomFilter#CouchbaseBloomFilter(String, Bucket, long, double)}.
+     */
+    public CouchbaseBloomFilter bloomFilter(String id, long expectedInsertions, double fpp) {
+        return new CouchbaseBloomFilter(id, this, expectedInsertions, fpp);
+    }
+
+    /**
+     * See {@link CouchbaseBloomFilter#CouchbaseBloomFilter(String, Bucket)}.
+     */
+    public CouchbaseBloomFilter bloomFilter(String id) {
+        return new CouchbaseBloomFilter(id, this);
+    }
+
+    /**
+     * See {@link CouchbaseHyperLogLog#CouchbaseHyperLogLog(String, Bucket)}.
+     */
+    public CouchbaseHyperLogLog hyperLogLog(String id) {
+        return new CouchbaseHyperLogLog(id, this, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * See {@link CouchbaseHyperLogLog#CouchbaseHyperLogLog(String, Bucket, int)}.
+     */
+    public CouchbaseHyperLogLog hyperLogLog(String id, int precision) {
+        return new CouchbaseHyperLogLog(id, this, precision);
+    }
+
+    /**
+     * See {@link CouchbaseBitSet#CouchbaseBitSet(String, Bucket)}.
+     */
+    public CouchbaseBitSet bitSet(String id) {
+        return new CouchbaseBitSet(id, this);
+    }
+
+    /**
+     * Invoke operations of collections created through this CouchbaseCollections under a shared deadline: the
+     * operations <code>operations</code> performs on the calling thread, whatever their number and their attempts,
+     * fail with an {@link OperationTimeoutException} once <code>timeout</code> has elapsed. When calls are nested,
+     * or combined with the {@link CollectionOptions.Builder#operationTimeout(long, TimeUnit) operation timeout},
+     * the earliest deadline applies.
+     *
+     * <pre>
+     * Object previous = collections.withTimeout(50, TimeUnit.MILLISECONDS, new Func0&lt;Object&gt;() {
+     *     public Object call() {
+     *         return map.put("key", "value");
+     *     }
+     * });
+     * </pre>
+     *
+     * @param timeout the time budget of the operations.
+     * @param unit the unit of <code>timeout</code>.
+     * @param operations the operations to invoke.
+     * @return the value returned by <code>operations</code>.
+     */
+    public <T> T withTimeout(long timeout, TimeUnit unit, Func0<T> operations) {
+        Long outer = deadlines.get();
+        deadlines.set(earliest(outer, deadline(unit.toNanos(timeout))));
+        try {
+            return operations.call();
+        } finally {
+            endOperation(outer);
+        }
+    }
+
+    /**
+     * Get the documents and map keys with the most operations and CAS conflicts since this CouchbaseCollections
+     * was created, or since the last {@link #resetHotKeys() reset}.
+     *
+     * @return the report of the hot documents and keys.
+     * @throws IllegalStateException if {@link CollectionOptions.Builder#trackHotKeys(int) hot key tracking} is
+     *   disabled.
+     */
+    public HotKeyReport hotKeys() {
+        return hotKeyTracker().report(false);
+    }
+
+    /**
+     * Forget the operations and CAS conflicts tracked so far.
+     *
+     * @throws IllegalStateException if {@link CollectionOptions.Builder#trackHotKeys(int) hot key tracking} is
+     *   disabled.
+     */
+    public void resetHotKeys() {
+        hotKeyTracker().report(true);
+    }
+
+    /**
+     * Periodically report the hot documents and keys to a listener. Each report covers the operations since the
+     * previous one, as tracking is {@link #resetHotKeys() reset} after each report. An exception thrown by the
+     * listener stops the reports.
+     *
+     * @param listener the listener to report to.
+     * @param period the period of the reports.
+     * @param unit the unit of <code>period</code>.
+     * @return the {@link Subscription} to unsubscribe to stop reporting.
+     * @throws IllegalStateException if {@link CollectionOptions.Builder#trackHotKeys(int) hot key tracking} is
+     *   disabled.
+     */
+    public Subscription reportHotKeys(final HotKeyListener listener, long period, TimeUnit unit) {
+        final HotKeyTracker tracker = hotKeyTracker();
+        return Observable.interval(period, period, unit).subscribe(new Action1<Long>() {
+            @Override
+            public void call(Long tick) {
+                listener.onReport(tracker.report(true));
+            }
+        });
+    }
+
+    private HotKeyTracker hotKeyTracker() {
+        if (hotKeys == null) {
+            throw new IllegalStateException("Hot key tracking is disabled, see CollectionOptions.Builder#trackHotKeys");
+        }
+        return hotKeys;
+    }
+
+    /**
+     * Record an operation on a document for {@link CollectionOptions#hotKeyCapacity() hot key tracking}.
+     *
+     * @param id the id of the document.
+     * @param key the map key the operation is about, or null if it is about the whole document.
+     */
+    void recordOperation(String id, String key) {
+        if (hotKeys != null) {
+            hotKeys.operation(id, key);
+        }
+    }
+
+    /**
+     * Start an operation whose requests share the {@link CollectionOptions#operationTimeoutNanos() operation
+     * timeout}, unless an earlier deadline already applies. This must be paired with {@link #endOperation(Long)}
+     * once the operation is done.
+     *
+     * @return the deadline to restore once the operation is done.
+     */
+    Long beginOperation() {
+        Long outer = deadlines.get();
+        long budget = options.operationTimeoutNanos();
+        if (budget > 0) {
+            deadlines.set(earliest(outer, deadline(budget)));
+        }
+        return outer;
+    }
+
+    /**
+     * End an operation started with {@link #beginOperation()}.
+     *
+     * @param outer the deadline returned by {@link #beginOperation()}.
+     */
+    void endOperation(Long outer) {
+        if (outer == null) {
+            deadlines.remove();
+        } else {
+            deadlines.set(outer);
+        }
+    }
+
+    /**
+     * @return the time left to the current operation, {@link Long#MAX_VALUE} if it has no deadline.
+     * @throws OperationTimeoutException if the deadline of the operation has passed.
+     */
+    long remainingNanos() {
+        Long deadline = deadlines.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new OperationTimeoutException("The operation ran out of its time budget");
+        }
+        return remaining;
+    }
+
+    private static long deadline(long budgetNanos) {
+        //keep the deadline comparable with System.nanoTime() values
+        return System.nanoTime() + Math.min(budgetNanos, Long.MAX_VALUE / 2);
+    }
+
+    private static Long earliest(Long outer, long deadline) {
+        return outer != null && outer - deadline < 0 ? outer : deadline;
+    }
+
+    /**
+     * Fetch a whole document, sharing the request with concurrent identical fetches if
+     * {@link CollectionOptions#coalesceReads() read coalescing} is enabled.
+     *
+     * @param id the id of the document.
+     * @param target the type of document to fetch.
+     * @param fresh true if the caller needs a CAS at least as recent as this call.
+     * @return the document, or null if it doesn't exist.
+     */
+    <D extends Document<?>> D fetch(final String id, final Class<D> target, boolean fresh) {
+        if (coalescer == null) {
+            return await(bucket.async().get(id, target));
+        }
+        return coalescer.read(target.getName() + "/" + id, new Callable<D>() {
+            @Override
+            public D call() {
+                return await(bucket.async().get(id, target));
+            }
+        }, fresh, remainingNanos());
+    }
+
+    /**
+     * Fetch a whole document for a read that doesn't modify it, from its replicas if
+     * {@link CollectionOptions#replicaReads() replica reads} are enabled (in which case it may be stale), else
+     * like {@link #fetch(String, Class, boolean)}.
+     *
+     * @param id the id of the document.
+     * @param target the type of document to fetch.
+     * @return the document, or null if it doesn't exist.
+     */
+    <D extends Document<?>> D read(final String id, final Class<D> target) {
+        if (!readsMayBeStale()) {
+            return fetch(id, target, false);
+        }
+        if (coalescer == null) {
+            return await(readFromReplicas(id, target));
+        }
+        return coalescer.read("replica/" + target.getName() + "/" + id, new Callable<D>() {
+            @Override
+            public D call() {
+                return await(readFromReplicas(id, target));
+            }
+        }, false, remainingNanos());
+    }
+
+    /**
+     * @return true if the reads of the collections may be served by replicas, and thus be stale.
+     */
+    boolean readsMayBeStale() {
+        return options.replicaReads() != ReplicaReads.NONE;
+    }
+
+    private <D extends Document<?>> Observable<D> readFromReplicas(String id, Class<D> target) {
+        if (options.replicaReads() == ReplicaReads.FIRST_RESPONDER) {
+            //the ALL mode reads the active node along with the replicas
+            return bucket.async().getFromReplica(id, ReplicaMode.ALL, target).take(1);
+        }
+        int copies = replicaCount() + 1;
+        int turn = (int) (replicaTurn.getAndIncrement() % copies);
+        Observable<D> active = bucket.async().get(id, target);
+        if (turn == 0) {
+            return active;
+        }
+        //a replica that doesn't have the document (yet) or fails defers to the active node
+        return bucket.async().getFromReplica(id, REPLICAS[turn - 1], target).take(1)
+                .switchIfEmpty(active)
+                .onErrorResumeNext(active);
+    }
+
+    /**
+     * @return the number of replicas of the bucket, according to the configuration known to the client, as
+     *   checked at most every {@link #REPLICA_COUNT_TTL_NANOS}.
+     */
+    private int replicaCount() {
+        long now = System.nanoTime();
+        if (now - replicaCountExpiry >= 0) {
+            replicaCount = fetchReplicaCount();
+            replicaCountExpiry = now + REPLICA_COUNT_TTL_NANOS;
+        }
+        return replicaCount;
+    }
+
+    private int fetchReplicaCount() {
+        GetClusterConfigResponse response = await(bucket.core().<GetClusterConfigResponse>send(
+                new GetClusterConfigRequest()));
+        BucketConfig config = response.config().bucketConfig(bucket.name());
+        if (!(config instanceof CouchbaseBucketConfig)) {
+            return 0;
+        }
+        return Math.min(((CouchbaseBucketConfig) config).numberOfReplicas(), REPLICAS.length);
+    }
+
+    /**
+     * Wait for the result of an asynchronous call, with the key/value timeout of the bucket's environment or
+     * the time left to the current operation if it is shorter, parking the calling thread if
+     * {@link CollectionOptions#parkingCalls()} is enabled.
+     *
+     * @param call the call.
+     * @return the value emitted by the call, null if none.
+     * @throws OperationTimeoutException if the current operation runs out of time.
+     */
+    <T> T await(Observable<? extends T> call) {
+        return await(call, TimeUnit.MILLISECONDS.toNanos(bucket.environment().kvTimeout()));
+    }
+
+    /**
+     * Like {@link #await(Observable)}, with a timeout other than the key/value timeout, for calls made of several
+     * requests.
+     *
+     * @param call the call.
+     * @param timeoutNanos how long to wait for the call, unless the current operation runs out of time first.
+     * @return the value emitted by the call, null if none.
+     * @throws OperationTimeoutException if the current operation runs out of time.
+     */
+    <T> T await(Observable<? extends T> call, long timeoutNanos) {
+        long timeout = timeoutNanos;
+        long budget = remainingNanos();
+        if (budget >= timeout) {
+            return AsyncCalls.await(call, timeout, TimeUnit.NANOSECONDS, options.parkingCalls());
+        }
+        try {
+            return AsyncCalls.await(call, budget, TimeUnit.NANOSECONDS, options.parkingCalls());
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new OperationTimeoutException("The operation ran out of its time budget", e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start a mutation of a document, with the {@link CollectionOptions#durability() durability requirements}
+     * of the collections.
+     *
+     * @param id the id of the document.
+     * @return the mutation builder.
+     */
+    AsyncMutateInBuilder mutateIn(String id) {
+        return options.durability().applyTo(bucket.async().mutateIn(id));
+    }
+
+    /**
+     * Insert a document, with the {@link CollectionOptions#durability() durability requirements} of the
+     * collections.
+     */
+    <D extends Document<?>> Observable<D> insert(D document) {
+        Durability durability = options.durability();
+        return durability.isNone() ? bucket.async().insert(document)
+                : bucket.async().insert(document, durability.persistTo(), durability.replicateTo());
+    }
+
+    /**
+     * Upsert a document, with the {@link CollectionOptions#durability() durability requirements} of the
+     * collections.
+     */
+    <D extends Document<?>> Observable<D> upsert(D document) {
+        Durability durability = options.durability();
+        return durability.isNone() ? bucket.async().upsert(document)
+                : bucket.async().upsert(document, durability.persistTo(), durability.replicateTo());
+    }
+
+    /**
+     * Replace a document, with the {@link CollectionOptions#durability() durability requirements} of the
+     * collections.
+     */
+    <D extends Document<?>> Observable<D> replace(D document) {
+        Durability durability = options.durability();
+        return durability.isNone() ? bucket.async().replace(document)
+                : bucket.async().replace(document, durability.persistTo(), durability.replicateTo());
+    }
+
+    /**
+     * Remove a document, with the {@link CollectionOptions#durability() durability requirements} of the
+     * collections.
+     */
+    Observable<JsonDocument> remove(String id) {
+        Durability durability = options.durability();
+        return durability.isNone() ? bucket.async().remove(id)
+                : bucket.async().remove(id, durability.persistTo(), durability.replicateTo());
+    }
+
+    /**
+     * Add a value to a document, combining the addition with the concurrent ones to the same document if
+     * {@link CollectionOptions#addCombiningWindowNanos() add combining} is enabled. Otherwise the flusher
+     * is invoked with the single addition.
+     *
+     * @param kind the type of collection, as only additions of the same type can be combined.
+     * @param id the id of the document.
+     * @param value the value to add.
+     * @param flusher performs a batch of additions.
+     * @return the result of the addition.
+     */
+    boolean add(Class<?> kind, String id, Object value, WriteCombiner.Flusher flusher) {
+        if (combiner != null) {
+            return combiner.add(kind.getName() + "/" + id, value, flusher, remainingNanos());
+        }
+        WriteCombiner.Pending pending = new WriteCombiner.Pending(value);
+        flusher.flush(Collections.singletonList(pending));
+        return pending.added();
+    }
+
+    /**
+     * Start an attempt of an optimistic locking loop on a document. If {@link CollectionOptions#adaptiveWrites()
+     * adaptive writes} are enabled and the document is contended, this waits for the other attempts on it from
+     * collections of this CouchbaseCollections.
+     *
+     * @param id the id of the document.
+     * @return the permit to release once the attempt is done.
+     * @throws OperationTimeoutException if the current operation runs out of time before the attempt starts.
+     */
+    ContentionTracker.Permit beginWrite(String id) {
+        long remaining = remainingNanos();
+        if (contention == null) {
+            return ContentionTracker.NO_PERMIT;
+        }
+        ContentionTracker.Permit permit = contention.acquire(id, remaining);
+        if (permit == null) {
+            throw new OperationTimeoutException("The operation ran out of its time budget waiting for contended "
+                    + "document " + id);
+        }
+        return permit;
+    }
+
+    /**
+     * Record that an attempt on a document failed because of a CAS mismatch.
+     */
+    void writeConflicted(String id) {
+        writeConflicted(id, null);
+    }
+
+    /**
+     * Record that an attempt on a key of a map document failed because of a CAS mismatch.
+     */
+    void writeConflicted(String id, String key) {
+        if (contention != null) {
+            contention.conflict(id);
+        }
+        if (hotKeys != null) {
+            hotKeys.conflict(id, key);
+        }
+    }
+
+    /**
+     * Record that an attempt on a document succeeded.
+     */
+    void writeSucceeded(String id) {
+        if (contention != null) {
+            contention.success(id);
+        }
+    }
+
+    /**
+     * Get the current CAS of a JSON document without fetching its content, through a lookup whose results are
+     * discarded (whether the paths exist or not, the lookup returns the document's CAS). The lookup checks both
+     * an array and an object path so that it is a multi-lookup, which reports the mismatch of the path that
+     * doesn't fit the root of the document in its result instead of failing.
+     *
+     * @param id the id of the document.
+     * @return the CAS of the document, or 0 if it doesn't exist.
+     */
+    long currentCas(String id) {
+        try {
+            return await(bucket.async().lookupIn(id).exists("[0]").exists("__probe").execute()).cas();
+        } catch (DocumentDoesNotExistException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.couchbase.client.commons;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.document.json.JsonValue;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * A CouchbaseCompressedMap is a {@link Map} backed by a {@link Bucket Couchbase} {@link BinaryDocument} that
+ * holds the JSON object of the map, {@link CollectionOptions.Builder#compression(Compression) compressed} once
+ * it is larger than the {@link CollectionOptions.Builder#compressionThreshold(int) compression threshold}.
+ *
+ * This is suited to large maps that are mostly read and written as a whole (iteration, {@link #entrySet()},
+ * {@link #putAll(Map)}, {@link #getAll(Collection)}, {@link #clear()}): JSON typically compresses 3 to 10 times,
+ * which saves as much bandwidth and time on the wire. On the other hand, the server can't look into a compressed
+ * document, so every operation reads the whole document and every mutation rewrites it (using CAS to detect
+ * concurrent modifications). For maps that are mostly accessed key by key, prefer {@link CouchbaseMap}.
+ *
+ * Null keys are NOT permitted, and keys are restricted to {@link String}. Values are restricted to the types that
+ * a {@link JsonObject JSON object} can contain.
+ *
+ * @param <V> the type of values in the map.
+ */
+public class CouchbaseCompressedMap<V> extends AbstractMap<String, V> {
+
+    public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String id;
+    private final CouchbaseCollections collections;
+
+    /**
+     * Create a new {@link CouchbaseCompressedMap}, compressed with {@link Compression#SNAPPY}, backed by the
+     * document identified by <code>id</code> in the given Couchbase <code>bucket</code>. Note that if the
+     * document already exists, its content will be used as initial content for this collection. Otherwise it is
+     * created empty.
+     *
+     * To use another codec or threshold, create the map through a {@link CouchbaseCollections}.
+     *
+     * @param id the id of the Couchbase document to back the map.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     */
+    public CouchbaseCompressedMap(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket, defaultOptions()));
+    }
+
+    /**
+     * Create a new {@link CouchbaseCompressedMap}, compressed with {@link Compression#SNAPPY}, backed by the
+     * document identified by <code>id</code> in the given Couchbase <code>bucket</code>. Note that if the
+     * document already exists, its content is reset to the values copied from the given <code>data</code> Map.
+     *
+     * @param id the id of the Couchbase document to back the map.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param data Map of the elements to initially store in the map.
+     */
+    public CouchbaseCompressedMap(String id, Bucket bucket, Map<String, ? extends V> data) {
+        this(id, new CouchbaseCollections(bucket, defaultOptions()), data);
+    }
+
+    CouchbaseCompressedMap(String id, CouchbaseCollections collections) {
+        this.id = id;
+        this.collections = collections;
+
+        BinaryDocuments.createIfAbsent(collections, id, encode(JsonObject.empty()));
+    }
+
+    CouchbaseCompressedMap(String id, CouchbaseCollections collections, Map<String, ? extends V> data) {
+        this.id = id;
+        this.collections = collections;
+
+        JsonObject content = JsonObject.create();
+        if (data != null) {
+            putAll(content, data);
+        }
+        BinaryDocuments.reset(collections, id, encode(content));
+    }
+
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        return (V) load().content.get(String.valueOf(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        return load().content.containsKey(String.valueOf(key));
+    }
+
+    /**
+     * Get the values of several keys, reading the document only once.
+     *
+     * @param keys the keys to get.
+     * @return a {@link Map} of each key that exists in the map to its value, in the order of <code>keys</code>.
+     */
+    public Map<String, V> getAll(Collection<String> keys) {
+        JsonObject content = load().content;
+        Map<String, V> values = new LinkedHashMap<String, V>(keys.size());
+        for (String key : keys) {
+            if (content.containsKey(key)) {
+                values.put(key, (V) content.get(key));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public V put(String key, V value) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        if (!JsonValue.checkType(value)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                Object previous = current.content.get(key);
+                current.content.put(key, value);
+                if (tryWrite(current)) {
+                    return (V) previous;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform put in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Put all the entries of a map, rewriting the document only once.
+     */
+    @Override
+    public void putAll(Map<? extends String, ? extends V> m) {
+        if (m.isEmpty()) {
+            return;
+        }
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                putAll(current.content, m);
+                if (tryWrite(current)) {
+                    return;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform putAll in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        String name = String.valueOf(key);
+
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                if (!current.content.containsKey(name)) {
+                    return null;
+                }
+                Object removed = current.content.get(name);
+                current.content.removeKey(name);
+                if (tryWrite(current)) {
+                    return (V) removed;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform remove in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public int size() {
+        return load().content.size();
+    }
+
+    @Override
+    public void clear() {
+        //optimized version over AbstractMap's (which iterates on all and remove)
+        BinaryDocuments.reset(collections, id, encode(JsonObject.empty()));
+    }
+
+    /**
+     * A view of the entries of the map as of the time this method is called. Removing an entry (through the
+     * set or its iterator) removes its key from the map, and {@link Entry#setValue(Object) setting} the value of
+     * an entry puts it in the map.
+     */
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        final JsonObject content = load().content;
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                final Iterator<String> names = content.getNames().iterator();
+                return new Iterator<Entry<String, V>>() {
+                    private String lastKey;
+
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (!names.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        lastKey = names.next();
+                        return new CompressedEntry(lastKey, (V) content.get(lastKey));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (lastKey == null) {
+                            throw new IllegalStateException();
+                        }
+                        CouchbaseCompressedMap.this.remove(lastKey);
+                        lastKey = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return content.size();
+            }
+        };
+    }
+
+    private Snapshot load() {
+        BinaryDocuments.Content stored = BinaryDocuments.read(collections, id);
+        if (stored == null) {
+            //behave like the JSON collections, which expect their document to exist
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return new Snapshot(decode(id, stored.bytes), stored.cas);
+    }
+
+    private boolean tryWrite(Snapshot snapshot) {
+        try {
+            BinaryDocuments.write(collections, id, encode(snapshot.content), snapshot.cas);
+            return true;
+        } catch (CASMismatchException ex) {
+            return false;
+        } catch (DocumentAlreadyExistsException ex) {
+            return false;
+        }
+    }
+
+    private void putAll(JsonObject content, Map<? extends String, ? extends V> data) {
+        for (Entry<? extends String, ? extends V> entry : data.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new NullPointerException("Unsupported null key");
+            }
+            if (!JsonValue.checkType(entry.getValue())) {
+                throw new IllegalArgumentException("Unsupported value type.");
+            }
+            content.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    static BinaryWriter encode(JsonObject content) {
+        byte[] json = content.toString().getBytes(UTF_8);
+        return new BinaryWriter(json.length).writeBytes(json, 0, json.length);
+    }
+
+    static JsonObject decode(String id, byte[] json) {
+        try {
+            return JsonObject.fromJson(new String(json, UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new TranscodingException("Document " + id + " doesn't have a JSON object root", e);
+        }
+    }
+
+    private static CollectionOptions defaultOptions() {
+        return CollectionOptions.builder().compression(Compression.SNAPPY).build();
+    }
+
+    /**
+     * The decoded content of the map, along with the CAS of the document it was decoded from.
+     */
+    private static final class Snapshot {
+        final JsonObject content;
+        final long cas;
+
+        Snapshot(JsonObject content, long cas) {
+            this.content = content;
+            this.cas = cas;
+        }
+    }
+
+    private class CompressedEntry extends SimpleEntry<String, V> {
+
+        CompressedEntry(String key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
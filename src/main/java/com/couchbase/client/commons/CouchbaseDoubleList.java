@@ -0,0 +1,138 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractList;
+import java.util.NoSuchElementException;
+
+import com.couchbase.client.commons.iterators.DoubleIterator;
+import com.couchbase.client.java.Bucket;
+import rx.functions.Func1;
+
+/**
+ * A CouchbaseDoubleList is a {@link CouchbaseArrayList} of {@link Double}, which additionally offers primitive
+ * accessors that avoid boxing each element.
+ *
+ * The bulk read operations ({@link #toDoubleArray()}, {@link #doubleIterator()} and {@link #size()}) stream
+ * over the raw JSON of the document and decode the numbers straight into a <code>double[]</code>.
+ *
+ * The backing document is a regular JSON array, so it stays interoperable with a
+ * {@link CouchbaseArrayList}. Note that null elements are not supported by the primitive accessors.
+ */
+public class CouchbaseDoubleList extends CouchbaseNumberList<Double> {
+
+    private static final Func1<Number, Double> TO_DOUBLE = new Func1<Number, Double>() {
+        @Override
+        public Double call(Number number) {
+            return number.doubleValue();
+        }
+    };
+
+    /**
+     * Create a new {@link CouchbaseDoubleList}, backed by the document identified by <code>id</code>
+     * in <code>bucket</code>. Note that if the document already exists, its content will be used as initial
+     * content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     */
+    public CouchbaseDoubleList(String id, Bucket bucket) {
+        super(id, bucket, Double.class, TO_DOUBLE);
+    }
+
+    /**
+     * Create a new {@link CouchbaseDoubleList}, backed by the document identified by <code>id</code>
+     * in <code>bucket</code>. Note that if the document already exists, its content is reset to the values
+     * provided.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param content the elements to initially store in the list.
+     */
+    public CouchbaseDoubleList(String id, Bucket bucket, double[] content) {
+        super(id, bucket, new DoubleArrayView(content), Double.class, TO_DOUBLE);
+    }
+
+    CouchbaseDoubleList(String id, CouchbaseCollections collections) {
+        super(id, collections, Double.class, TO_DOUBLE);
+    }
+
+    CouchbaseDoubleList(String id, CouchbaseCollections collections, double[] content) {
+        super(id, collections, new DoubleArrayView(content), Double.class, TO_DOUBLE);
+    }
+
+    /**
+     * Get the element at <code>index</code>.
+     *
+     * @param index the index of the element.
+     * @return the element.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public double getDouble(int index) {
+        return getNumber(index).doubleValue();
+    }
+
+    /**
+     * Append an element to the end of the list, like {@link #add(Object)}.
+     *
+     * @param value the element to append.
+     */
+    public void addDouble(double value) {
+        add(value);
+    }
+
+    /**
+     * Fetch the whole list and decode it into a <code>double[]</code>.
+     *
+     * @return the elements of the list, in order.
+     */
+    public double[] toDoubleArray() {
+        return JsonNumberArrays.decodeDoubles(id(), fetchRaw());
+    }
+
+    /**
+     * Fetch the whole list and iterate over its elements without boxing them. The iterator reflects the
+     * state of the list at the time of this call.
+     *
+     * @return a {@link DoubleIterator} over the elements of the list.
+     */
+    public DoubleIterator doubleIterator() {
+        final double[] values = toDoubleArray();
+        return new DoubleIterator() {
+            private int cursor = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < values.length;
+            }
+
+            @Override
+            public double nextDouble() {
+                if (cursor >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                return values[cursor++];
+            }
+        };
+    }
+
+    /**
+     * A read-only {@link java.util.List} view of a <code>double[]</code>, used to initialize the document.
+     */
+    private static class DoubleArrayView extends AbstractList<Double> {
+
+        private final double[] values;
+
+        DoubleArrayView(double[] values) {
+            this.values = values == null ? new double[0] : values;
+        }
+
+        @Override
+        public Double get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.couchbase.client.commons;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+
+/**
+ * A CouchbaseHyperLogLog estimates the number of distinct elements added to it, with a {@link HyperLogLog}
+ * sketch stored in a {@link Bucket Couchbase} {@link BinaryDocument}. The document has a fixed size (2^precision
+ * bytes, 16KB with the {@link HyperLogLog#DEFAULT_PRECISION default precision}) whatever the number of elements,
+ * and {@link #estimate()} has a standard error of about <code>1.04 / sqrt(2^precision)</code>.
+ *
+ * Each {@link #add(String)} reads the sketch, and rewrites it (using CAS to detect concurrent modifications) only
+ * if the element changes it, which becomes rare as the cardinality grows. To ingest many elements, add them to a
+ * local {@link #newBuffer() buffer} instead, and periodically {@link #merge(HyperLogLog...) merge} it into the
+ * stored sketch: millions of elements then cost a handful of writes. Sketches are merged register by register,
+ * so buffers from any number of clients can be merged, in any order and even more than once.
+ */
+public class CouchbaseHyperLogLog {
+
+    public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+
+    private final String id;
+    private final CouchbaseCollections collections;
+    private final int precision;
+
+    /**
+     * Create a new {@link CouchbaseHyperLogLog} with the {@link HyperLogLog#DEFAULT_PRECISION default precision},
+     * backed by the document identified by <code>id</code> in the given Couchbase <code>bucket</code>. Note that if
+     * the document already exists, its content (and precision) will be used as initial content for this sketch.
+     * Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the sketch.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     */
+    public CouchbaseHyperLogLog(String id, Bucket bucket) {
+        this(id, bucket, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Create a new {@link CouchbaseHyperLogLog}, backed by the document identified by <code>id</code> in the given
+     * Couchbase <code>bucket</code>. Note that if the document already exists, its content (and precision) will be
+     * used as initial content for this sketch. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the sketch.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param precision the precision of the sketch, see {@link HyperLogLog#HyperLogLog(int)}.
+     */
+    public CouchbaseHyperLogLog(String id, Bucket bucket, int precision) {
+        this(id, new CouchbaseCollections(bucket), precision);
+    }
+
+    CouchbaseHyperLogLog(String id, CouchbaseCollections collections, int precision) {
+        this.id = id;
+        this.collections = collections;
+
+        BinaryDocuments.createIfAbsent(collections, id, new HyperLogLog(precision).encode());
+        this.precision = load().sketch.precision();
+    }
+
+    /**
+     * Add an element to the sketch.
+     *
+     * @param element the element to add.
+     * @return true if the stored sketch changed.
+     */
+    public boolean add(String element) {
+        HyperLogLog buffer = newBuffer();
+        buffer.add(element);
+        return merge(buffer);
+    }
+
+    /**
+     * Add several elements to the sketch, writing it at most once.
+     *
+     * @param elements the elements to add.
+     * @return true if the stored sketch changed.
+     */
+    public boolean addAll(Collection<String> elements) {
+        HyperLogLog buffer = newBuffer();
+        for (String element : elements) {
+            buffer.add(element);
+        }
+        return merge(buffer);
+    }
+
+    /**
+     * @return the estimated number of distinct elements added to the sketch.
+     */
+    public long estimate() {
+        return load().sketch.estimate();
+    }
+
+    /**
+     * @return a new empty local sketch, with the precision of this one, to buffer elements before
+     *   {@link #merge(HyperLogLog...) merging} them.
+     */
+    public HyperLogLog newBuffer() {
+        return new HyperLogLog(precision);
+    }
+
+    /**
+     * Fetch a local copy of the stored sketch, eg. to compute estimates of unions with other sketches without
+     * modifying any of them.
+     *
+     * @return a copy of the stored sketch.
+     */
+    public HyperLogLog sketch() {
+        return load().sketch;
+    }
+
+    /**
+     * Merge local sketches into the stored one, in a single write.
+     *
+     * @param sketches the sketches to merge, which must have the precision of this one.
+     * @return true if the stored sketch changed.
+     */
+    public boolean merge(HyperLogLog... sketches) {
+        HyperLogLog merged = newBuffer();
+        for (HyperLogLog sketch : sketches) {
+            merged.merge(sketch);
+        }
+        if (merged.isEmpty()) {
+            return false;
+        }
+
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                if (!current.sketch.merge(merged)) {
+                    return false;
+                }
+                try {
+                    BinaryDocuments.write(collections, id, current.sketch.encode(), current.cas);
+                    collections.writeSucceeded(id);
+                    return true;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id);
+                    //merge into the fresh content
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform merge in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Merge other stored sketches into this one, in a single write. The other sketches are left unchanged.
+     *
+     * @param others the sketches to merge, which must have the precision of this one.
+     * @return true if the stored sketch changed.
+     */
+    public boolean merge(CouchbaseHyperLogLog... others) {
+        HyperLogLog[] sketches = new HyperLogLog[others.length];
+        for (int i = 0; i < others.length; i++) {
+            sketches[i] = others[i].sketch();
+        }
+        return merge(sketches);
+    }
+
+    /**
+     * Reset the sketch to empty.
+     */
+    public void clear() {
+        BinaryDocuments.reset(collections, id, newBuffer().encode());
+    }
+
+    /**
+     * @return the precision of the sketch.
+     */
+    public int precision() {
+        return precision;
+    }
+
+    private Snapshot load() {
+        BinaryDocuments.Content content = BinaryDocuments.read(collections, id);
+        if (content == null) {
+            //behave like the JSON collections, which expect their document to exist
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return new Snapshot(HyperLogLog.decode(id, content.bytes), content.cas);
+    }
+
+    /**
+     * The decoded sketch, along with the CAS of the document it was decoded from.
+     */
+    private static final class Snapshot {
+        final HyperLogLog sketch;
+        final long cas;
+
+        Snapshot(HyperLogLog sketch, long cas) {
+            this.sketch = sketch;
+            this.cas = cas;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.couchbase.client.commons;
+
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.NoSuchElementException;
+
+import com.couchbase.client.commons.iterators.LongIterator;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.error.TranscodingException;
+import rx.functions.Func1;
+
+/**
+ * A CouchbaseLongList is a {@link CouchbaseArrayList} of {@link Long}, which additionally offers primitive
+ * accessors that avoid boxing each element.
+ *
+ * The bulk read operations ({@link #toLongArray()}, {@link #longIterator()} and {@link #size()}) stream
+ * over the raw JSON of the document and decode the numbers straight into a <code>long[]</code>.
+ *
+ * The backing document is a regular JSON array, so it stays interoperable with a
+ * {@link CouchbaseArrayList}. Note that null elements are not supported by the primitive accessors, and that
+ * reading a non integral element fails with a {@link TranscodingException} rather than truncating it.
+ */
+public class CouchbaseLongList extends CouchbaseNumberList<Long> {
+
+    private static final Func1<Number, Long> TO_LONG = new Func1<Number, Long>() {
+        @Override
+        public Long call(Number number) {
+            return toLong(number);
+        }
+    };
+
+    /**
+     * Create a new {@link CouchbaseLongList}, backed by the document identified by <code>id</code>
+     * in <code>bucket</code>. Note that if the document already exists, its content will be used as initial
+     * content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     */
+    public CouchbaseLongList(String id, Bucket bucket) {
+        super(id, bucket, Long.class, TO_LONG);
+    }
+
+    /**
+     * Create a new {@link CouchbaseLongList}, backed by the document identified by <code>id</code>
+     * in <code>bucket</code>. Note that if the document already exists, its content is reset to the values
+     * provided.
+     *
+     * @param id the id of the Couchbase document to back the list.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param content the elements to initially store in the list.
+     */
+    public CouchbaseLongList(String id, Bucket bucket, long[] content) {
+        super(id, bucket, new LongArrayView(content), Long.class, TO_LONG);
+    }
+
+    CouchbaseLongList(String id, CouchbaseCollections collections) {
+        super(id, collections, Long.class, TO_LONG);
+    }
+
+    CouchbaseLongList(String id, CouchbaseCollections collections, long[] content) {
+        super(id, collections, new LongArrayView(content), Long.class, TO_LONG);
+    }
+
+    /**
+     * Get the element at <code>index</code>.
+     *
+     * @param index the index of the element.
+     * @return the element.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     * @throws TranscodingException if the element isn't an integral number.
+     */
+    public long getLong(int index) {
+        return toLong(getNumber(index));
+    }
+
+    /**
+     * Convert an element as decoded from JSON to a <code>long</code>.
+     *
+     * @throws TranscodingException if the element isn't an integral number within the range of a long.
+     */
+    private static long toLong(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte) {
+            return number.longValue();
+        }
+        if (number instanceof BigInteger && ((BigInteger) number).bitLength() < Long.SIZE) {
+            return number.longValue();
+        }
+        throw new TranscodingException("Element " + number
+                + " is not an integral number within the range of a long");
+    }
+
+    /**
+     * Append an element to the end of the list, like {@link #add(Object)}.
+     *
+     * @param value the element to append.
+     */
+    public void addLong(long value) {
+        add(value);
+    }
+
+    /**
+     * Fetch the whole list and decode it into a <code>long[]</code>.
+     *
+     * @return the elements of the list, in order.
+     */
+    public long[] toLongArray() {
+        return JsonNumberArrays.decodeLongs(id(), fetchRaw());
+    }
+
+    /**
+     * Fetch the whole list and iterate over its elements without boxing them. The iterator reflects the
+     * state of the list at the time of this call.
+     *
+     * @return a {@link LongIterator} over the elements of the list.
+     */
+    public LongIterator longIterator() {
+        final long[] values = toLongArray();
+        return new LongIterator() {
+            private int cursor = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < values.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (cursor >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                return values[cursor++];
+            }
+        };
+    }
+
+    /**
+     * A read-only {@link java.util.List} view of a <code>long[]</code>, used to initialize the document.
+     */
+    private static class LongArrayView extends AbstractList<Long> {
+
+        private final long[] values;
+
+        LongArrayView(long[] values) {
+            this.values = values == null ? new long[0] : values;
+        }
+
+        @Override
+        public Long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
@@ -1,25 +1,41 @@
 package com.couchbase.client.commons;
 
+import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import com.couchbase.client.core.message.ResponseStatus;
 import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
 import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonParser;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonToken;
 import com.couchbase.client.java.Bucket;
 import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.RawJsonDocument;
 import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.document.json.JsonValue;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
 import com.couchbase.client.java.error.subdoc.MultiMutationException;
 import com.couchbase.client.java.error.subdoc.PathNotFoundException;
 import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
 
 /**
  * A CouchbaseMap is a {@link Map} backed by a {@link Bucket Couchbase} document (more specifically a
@@ -37,8 +53,12 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
 
     public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
 
+    private static final Object UNCHANGED = new Object();
+
     private final String id;
     private final Bucket bucket;
+    private final CouchbaseCollections collections;
+    private final int expiry;
 
     /**
      * Create a new {@link CouchbaseMap}, backed by the document identified by <code>id</code>
@@ -49,11 +69,39 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
      * @param bucket the {@link Bucket} through which to interact with the document.
      */
     public CouchbaseMap(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket), 0);
+    }
+
+    /**
+     * Create a new {@link CouchbaseMap} whose document expires, backed by the document identified by
+     * <code>id</code> in the given Couchbase <code>bucket</code>. Note that if the document already exists, its
+     * content will be used as initial content for this collection. Otherwise it is created empty.
+     *
+     * The document expires <code>expiry</code> seconds after it was last written through this map (every write
+     * sets the expiry again, as the server would otherwise reset it), or after it was last {@link #touch() touched}.
+     * This suits maps used as shared caches, which disappear once unused instead of piling up. Note that writes
+     * through a map created without expiry make the document persistent again.
+     *
+     * @param id the id of the Couchbase document to back the map.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param expiry the expiry of the document, in seconds (or as a unix timestamp if greater than 30 days, as
+     *   interpreted by the server), 0 for no expiry.
+     */
+    public CouchbaseMap(String id, Bucket bucket, int expiry) {
+        this(id, new CouchbaseCollections(bucket), expiry);
+    }
+
+    CouchbaseMap(String id, CouchbaseCollections collections, int expiry) {
+        if (expiry < 0) {
+            throw new IllegalArgumentException("expiry must be positive: " + expiry);
+        }
         this.id = id;
-        this.bucket = bucket;
+        this.bucket = collections.bucket();
+        this.collections = collections;
+        this.expiry = expiry;
 
         try {
-            bucket.insert(JsonDocument.create(id, JsonObject.empty()));
+            collections.await(collections.insert(JsonDocument.create(id, expiry, JsonObject.empty())));
         } catch (DocumentAlreadyExistsException ex) {
             // Ignore concurrent creations, keep on moving.
         }
@@ -71,8 +119,14 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
      * @param data Map of the elements to initially store in the CouchbaseMap.
      */
     public CouchbaseMap(String id, Bucket bucket, Map<String, ? extends V> data) {
+        this(id, new CouchbaseCollections(bucket), data);
+    }
+
+    CouchbaseMap(String id, CouchbaseCollections collections, Map<String, ? extends V> data) {
         this.id = id;
-        this.bucket = bucket;
+        this.bucket = collections.bucket();
+        this.collections = collections;
+        this.expiry = 0;
 
         JsonObject content = JsonObject.create();
         if (data != null && !data.isEmpty()) {
@@ -83,8 +137,8 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
                 content.put(entry.getKey(), entry.getValue());
             }
         }
-        JsonDocument initial = JsonDocument.create(id, content);
-        bucket.upsert(initial);
+        JsonDocument initial = JsonDocument.create(id, expiry, content);
+        collections.await(collections.upsert(initial));
     }
 
     @Override
@@ -96,21 +150,54 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
             throw new IllegalArgumentException("Unsupported value type.");
         }
 
-        for(int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
-            try {
-                DocumentFragment<Lookup> current = bucket.lookupIn(id).get(key).execute();
-                long returnCas = current.cas();
-                Object result = null;
-                if (current.exists(key)) {
-                    result = current.content(key);
+        String path = SubdocPaths.key(key);
+        collections.recordOperation(id, key);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).get(path).execute());
+                    long returnCas = current.cas();
+                    Object result = null;
+                    if (current.exists(0)) {
+                        result = current.content(0);
+                    }
+                    collections.await(mutateIn().upsert(path, value, false).withCas(returnCas).execute());
+                    collections.writeSucceeded(id);
+                    return (V) result;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id, key);
+                    //will need to retry get-and-set
+                } finally {
+                    permit.release();
                 }
-                bucket.mutateIn(id).upsert(key, value, false).withCas(returnCas).execute();
-                return (V) result;
-            } catch (CASMismatchException ex) {
-                //will need to retry get-and-set
             }
+            throw new ConcurrentModificationException("Couldn't perform put in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
         }
-        throw new ConcurrentModificationException("Couldn't perform put in less than " + MAX_OPTIMISTIC_LOCKING_ATTEMPTS + " iterations");
+    }
+
+    /**
+     * Associate <code>value</code> with <code>key</code> without reading the previous value first. Unlike
+     * {@link #put(String, Object)}, this is a single mutation that doesn't need optimistic locking, so it never
+     * fails because of concurrent writers (the last write wins), and is the cheapest way to write under heavy
+     * contention.
+     *
+     * @param key the key.
+     * @param value the value.
+     */
+    public void upsert(String key, V value) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        if (!JsonValue.checkType(value)) {
+            throw new IllegalArgumentException("Unsupported value type.");
+        }
+        collections.recordOperation(id, key);
+        collections.await(mutateIn().upsert(SubdocPaths.key(key), value, false).execute());
     }
 
     @Override
@@ -118,10 +205,14 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
         if (key == null) {
             throw new NullPointerException("Unsupported null key");
         }
+        collections.recordOperation(id, String.valueOf(key));
+        if (collections.readsMayBeStale()) {
+            return (V) readContent().get(String.valueOf(key));
+        }
         try {
-            return (V) bucket.lookupIn(id)
-                    .get(String.valueOf(key))
-                    .execute()
+            return (V) collections.await(bucket.async().lookupIn(id)
+                    .get(SubdocPaths.key(key))
+                    .execute())
                     .content(0);
         } catch (PathNotFoundException e) {
             return null;
@@ -135,45 +226,394 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
         if (key == null) {
             throw new NullPointerException("Unsupported null key");
         }
-        String idx = String.valueOf(key);
-        for(int i = 0; i < MAX_OPTIMISTIC_LOCKING_ATTEMPTS; i++) {
-            try {
-                DocumentFragment<Lookup> current = bucket.lookupIn(id).get(idx).execute();
-                long returnCas = current.cas();
-                Object result = current.content(idx);
-                DocumentFragment<Mutation> updated = bucket.mutateIn(id).remove(idx).withCas(returnCas).execute();
-                return (V) result;
-            } catch (CASMismatchException ex) {
-                //will have to retry get-and-remove
-            } catch (MultiMutationException ex) {
-                if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
-                    return null;
+        String idx = SubdocPaths.key(key);
+        collections.recordOperation(id, String.valueOf(key));
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).get(idx).execute());
+                    long returnCas = current.cas();
+                    Object result = current.content(0);
+                    DocumentFragment<Mutation> updated = collections.await(mutateIn().remove(idx).withCas(returnCas).execute());
+                    collections.writeSucceeded(id);
+                    return (V) result;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id, String.valueOf(key));
+                    //will have to retry get-and-remove
+                } catch (MultiMutationException ex) {
+                    if (ex.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                        return null;
+                    }
+                    throw ex;
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform remove in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Compute a new value for a key from its current value (null if absent), atomically. The key is removed if
+     * the new value is null.
+     *
+     * Each attempt costs a single lookup of the key and a single CAS-guarded mutation, and is retried (up to
+     * {@link CollectionOptions#maxAttempts()} times) if the map was concurrently modified in between. The
+     * function can thus be invoked several times, and should have no side effect.
+     *
+     * @param key the key.
+     * @param remapping the function computing the new value from the key and its current value.
+     * @return the new value, or null if the key was removed.
+     * @throws ConcurrentModificationException if the value couldn't be computed in less than
+     * {@link CollectionOptions#maxAttempts()} attempts.
+     */
+    @Override
+    public V compute(final String key, final BiFunction<? super String, ? super V, ? extends V> remapping) {
+        if (remapping == null) {
+            throw new NullPointerException("remapping");
+        }
+        return remap("compute", key, new Remapping<V>() {
+            @Override
+            public Object remap(V current) {
+                return remapping.apply(key, current);
+            }
+        });
+    }
+
+    /**
+     * Compute a value for a key if it is absent (or mapped to null), atomically. Nothing is stored if the
+     * computed value is null.
+     *
+     * Each attempt costs a single lookup of the key and, if the key is absent, a single CAS-guarded mutation.
+     * See {@link #compute(String, BiFunction)} for the retry behavior.
+     *
+     * @param key the key.
+     * @param mapping the function computing the value from the key.
+     * @return the current value if present, else the computed value.
+     */
+    @Override
+    public V computeIfAbsent(final String key, final Function<? super String, ? extends V> mapping) {
+        if (mapping == null) {
+            throw new NullPointerException("mapping");
+        }
+        return remap("computeIfAbsent", key, new Remapping<V>() {
+            @Override
+            public Object remap(V current) {
+                if (current != null) {
+                    return UNCHANGED;
+                }
+                V computed = mapping.apply(key);
+                return computed == null ? UNCHANGED : computed;
+            }
+        });
+    }
+
+    /**
+     * Compute a new value for a key if it is present (and not mapped to null), atomically. The key is removed
+     * if the new value is null.
+     *
+     * Each attempt costs a single lookup of the key and, if the key is present, a single CAS-guarded mutation.
+     * See {@link #compute(String, BiFunction)} for the retry behavior.
+     *
+     * @param key the key.
+     * @param remapping the function computing the new value from the key and its current value.
+     * @return the new value, or null if the key is absent or was removed.
+     */
+    @Override
+    public V computeIfPresent(final String key, final BiFunction<? super String, ? super V, ? extends V> remapping) {
+        if (remapping == null) {
+            throw new NullPointerException("remapping");
+        }
+        return remap("computeIfPresent", key, new Remapping<V>() {
+            @Override
+            public Object remap(V current) {
+                if (current == null) {
+                    return UNCHANGED;
+                }
+                return remapping.apply(key, current);
+            }
+        });
+    }
+
+    /**
+     * Associate a key with <code>value</code> if it is absent (or mapped to null), or else with the result of
+     * merging its current value with <code>value</code>, atomically. The key is removed if the result of the
+     * merge is null.
+     *
+     * Each attempt costs a single lookup of the key and a single CAS-guarded mutation. See
+     * {@link #compute(String, BiFunction)} for the retry behavior.
+     *
+     * @param key the key.
+     * @param value the value to store or to merge with the current value.
+     * @param remapping the function merging the current value with <code>value</code>.
+     * @return the new value, or null if the key was removed.
+     */
+    @Override
+    public V merge(String key, final V value, final BiFunction<? super V, ? super V, ? extends V> remapping) {
+        if (value == null) {
+            throw new NullPointerException("Unsupported null value");
+        }
+        if (remapping == null) {
+            throw new NullPointerException("remapping");
+        }
+        return remap("merge", key, new Remapping<V>() {
+            @Override
+            public Object remap(V current) {
+                return current == null ? value : remapping.apply(current, value);
+            }
+        });
+    }
+
+    /**
+     * The CAS loop shared by the compute and merge operations: look the key up, remap its value, then store
+     * or remove the result with a single mutation guarded by the CAS of the lookup.
+     */
+    private V remap(String operation, String key, Remapping<V> remapping) {
+        if (key == null) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        String path = SubdocPaths.key(key);
+        collections.recordOperation(id, key);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    DocumentFragment<Lookup> current = collections.await(bucket.async().lookupIn(id).get(path).execute());
+                    boolean exists = current.exists(0);
+                    V currentValue = exists ? (V) current.content(0) : null;
+
+                    Object remapped = remapping.remap(currentValue);
+                    if (remapped == UNCHANGED) {
+                        return currentValue;
+                    }
+                    if (remapped != null && !JsonValue.checkType(remapped)) {
+                        throw new IllegalArgumentException("Unsupported value type.");
+                    }
+                    if (remapped == null && !exists) {
+                        return null;
+                    }
+                    if (remapped == null) {
+                        collections.await(mutateIn().remove(path).withCas(current.cas()).execute());
+                    } else {
+                        collections.await(mutateIn().upsert(path, remapped, false).withCas(current.cas()).execute());
+                    }
+                    collections.writeSucceeded(id);
+                    return (V) remapped;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id, key);
+                    //will need to retry lookup-and-remap
+                } finally {
+                    permit.release();
                 }
-                throw ex;
             }
+            throw new ConcurrentModificationException("Couldn't perform " + operation + " in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Apply a block of mutations atomically. The <code>mutator</code> is given a local copy of the map, and
+     * the net changes it makes to it are then sent as a single multi-mutation, guarded by the CAS of the copy
+     * (or as a single replacement of the document if more keys changed than a multi-mutation can hold).
+     * If the map was concurrently modified, a fresh copy is fetched and the whole block is retried.
+     *
+     * Compound updates thus cost two round trips and are atomic, instead of costing a CAS loop per change.
+     *
+     * @param mutator the block of mutations, which can be invoked several times.
+     * @throws ConcurrentModificationException if the block couldn't be applied in less than
+     * {@link CollectionOptions#maxAttempts()} attempts.
+     */
+    public void update(Mutator<Map<String, V>> mutator) {
+        collections.recordOperation(id, null);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                //take the turn on a contended document before reading it, so that the read isn't outdated by the
+                //writers that held the turn before
+                ContentionTracker.Permit permit = collections.beginWrite(id);
+                try {
+                    //an attempt can share an in-flight read only if it is the first and doesn't hold a turn, as the
+                    //read must otherwise return a CAS at least as recent as the turn or the failure
+                    boolean fresh = i > 0 || permit != ContentionTracker.NO_PERMIT;
+                    JsonDocument current = collections.fetch(id, JsonDocument.class, fresh);
+                    if (current == null) {
+                        throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+                    }
+                    RecordingMap view = new RecordingMap(current.content());
+                    mutator.mutate(view);
+                    List<String> changed = view.changedKeys();
+                    if (changed.isEmpty()) {
+                        return;
+                    }
+                    if (changed.size() <= MultiLookup.MAX_SPECS) {
+                        AsyncMutateInBuilder mutation = mutateIn();
+                        for (String key : changed) {
+                            if (view.local.containsKey(key)) {
+                                mutation.upsert(SubdocPaths.key(key), view.local.get(key), false);
+                            } else {
+                                mutation.remove(SubdocPaths.key(key));
+                            }
+                        }
+                        collections.await(mutation.withCas(current.cas()).execute());
+                    } else {
+                        JsonObject content = JsonObject.create();
+                        for (Entry<String, Object> entry : view.local.entrySet()) {
+                            content.put(entry.getKey(), entry.getValue());
+                        }
+                        collections.await(collections.replace(JsonDocument.create(id, expiry, content, current.cas())));
+                    }
+                    collections.writeSucceeded(id);
+                    return;
+                } catch (CASMismatchException ex) {
+                    collections.writeConflicted(id);
+                    //will need to retry the whole block
+                } finally {
+                    permit.release();
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform update in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
         }
-        throw new ConcurrentModificationException("Couldn't perform remove in less than " + MAX_OPTIMISTIC_LOCKING_ATTEMPTS + " iterations");
     }
 
     @Override
     public void clear() {
         //optimized version over AbstractMap's (which uses the entry set)
-        bucket.upsert(JsonDocument.create(id, JsonObject.empty()));
+        collections.await(collections.upsert(JsonDocument.create(id, expiry, JsonObject.empty())));
+    }
+
+    /**
+     * Refresh the expiry of the document, so that it expires {@link #expiry()} seconds from now (or never
+     * expires if the map has no expiry).
+     *
+     * @return true if the document exists, false if it already expired.
+     */
+    public boolean touch() {
+        try {
+            return collections.await(bucket.async().touch(id, expiry));
+        } catch (DocumentDoesNotExistException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if reads may be served by replicas, and thus return stale values (see
+     *   {@link CollectionOptions.Builder#replicaReads(ReplicaReads)}).
+     */
+    public boolean readsMayBeStale() {
+        return collections.readsMayBeStale();
+    }
+
+    /**
+     * @return the expiry of the document in seconds (see {@link #CouchbaseMap(String, Bucket, int)}), 0 if it
+     *   never expires.
+     */
+    public int expiry() {
+        return expiry;
     }
 
     @Override
     public Set<Entry<String, V>> entrySet() {
-        return new CouchbaseEntrySet((Map<String, V>) bucket.get(id).content().toMap());
+        return new CouchbaseEntrySet();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new CouchbaseKeySet();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return (Boolean) bucket
-                .lookupIn(id).exists(String.valueOf(key))
-                .execute()
+        collections.recordOperation(id, String.valueOf(key));
+        if (collections.readsMayBeStale()) {
+            return readContent().containsKey(String.valueOf(key));
+        }
+        return (Boolean) collections.await(bucket.async()
+                .lookupIn(id).exists(SubdocPaths.key(key))
+                .execute())
                 .content(0);
     }
 
+    /**
+     * Get the values associated with several keys at once. The keys are fetched with as few
+     * multi-lookups as possible, sent in parallel when the server's limit of paths per lookup
+     * is exceeded. When {@link #readsMayBeStale() reads may be served by replicas}, the whole document is
+     * read instead, since replicas don't serve partial reads.
+     *
+     * @param keys the keys to look up (null keys are not permitted).
+     * @return a {@link Map} of the keys that exist in the map to their values (keys that are absent
+     * from the map are absent from the result).
+     */
+    public Map<String, V> getAll(Collection<String> keys) {
+        List<String> distinct = distinctKeys(keys);
+        collections.recordOperation(id, null);
+        Map<String, V> values = new LinkedHashMap<String, V>(distinct.size());
+        if (collections.readsMayBeStale()) {
+            JsonObject content = readContent();
+            for (String key : distinct) {
+                if (content.containsKey(key)) {
+                    values.put(key, (V) content.get(key));
+                }
+            }
+            return values;
+        }
+        List<DocumentFragment<Lookup>> results = MultiLookup.get(collections, id, paths(distinct));
+        for (int i = 0; i < distinct.size(); i++) {
+            DocumentFragment<Lookup> chunk = results.get(i / MultiLookup.MAX_SPECS);
+            int index = i % MultiLookup.MAX_SPECS;
+            if (chunk.status(index) != ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+                values.put(distinct.get(i), (V) chunk.content(index));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Check the presence of several keys at once, using as few multi-lookups as possible (or a read of the
+     * whole document when {@link #readsMayBeStale() reads may be served by replicas}).
+     *
+     * @param keys the keys to check (null keys are not permitted).
+     * @return a {@link Map} telling for each key if it is present in the map.
+     */
+    public Map<String, Boolean> containsKeys(Collection<String> keys) {
+        List<String> distinct = distinctKeys(keys);
+        collections.recordOperation(id, null);
+        Map<String, Boolean> present = new LinkedHashMap<String, Boolean>(distinct.size());
+        if (collections.readsMayBeStale()) {
+            JsonObject content = readContent();
+            for (String key : distinct) {
+                present.put(key, content.containsKey(key));
+            }
+            return present;
+        }
+        List<DocumentFragment<Lookup>> results = MultiLookup.exists(collections, id, paths(distinct));
+        for (int i = 0; i < distinct.size(); i++) {
+            DocumentFragment<Lookup> chunk = results.get(i / MultiLookup.MAX_SPECS);
+            present.put(distinct.get(i), chunk.exists(i % MultiLookup.MAX_SPECS));
+        }
+        return present;
+    }
+
+    /**
+     * Check that all of the given keys are present in the map, using as few multi-lookups as possible.
+     *
+     * @param keys the keys to check (null keys are not permitted).
+     * @return true if every key is present in the map.
+     */
+    public boolean containsAllKeys(Collection<String> keys) {
+        return !containsKeys(keys).containsValue(Boolean.FALSE);
+    }
+
     @Override
     public boolean containsValue(Object value) {
         return super.containsValue(value); //TODO use ARRAY_CONTAINS subdoc operator when available
@@ -181,133 +621,440 @@ public class CouchbaseMap<V> extends AbstractMap<String, V> {
 
     @Override
     public int size() {
-        return super.size(); //TODO use COUNT subdoc operator when available
+        //TODO use COUNT subdoc operator when available
+        return fetchKeys().size();
+    }
+
+    /**
+     * Fetch the whole map once and take an immutable, local copy of it. This is typically useful to read the
+     * map many times within a unit of work that tolerates a consistent but possibly outdated view, without a
+     * network call per read. See {@link MapSnapshot#isStale()} and {@link MapSnapshot#refresh()} to detect
+     * and catch up with later changes.
+     *
+     * @return a snapshot of the map.
+     */
+    public MapSnapshot<V> snapshot() {
+        JsonDocument current = collections.fetch(id, JsonDocument.class, true);
+        if (current == null) {
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return snapshotOf(current.content(), current.cas());
+    }
+
+    private MapSnapshot<V> snapshotOf(JsonObject content, long cas) {
+        Map<String, V> entries = new LinkedHashMap<String, V>(content.size());
+        for (String name : content.getNames()) {
+            entries.put(name, (V) content.get(name));
+        }
+        return new MapSnapshot<V>(this, entries, cas);
     }
 
-    private class CouchbaseEntrySet implements Set<Map.Entry<String, V>> {
+    /**
+     * Load the map once into a {@link LiveView}, then keep it up to date with the changes of its document
+     * streamed by <code>source</code>, without fetching the document again. This replaces polling the map
+     * (eg. with {@link #snapshot()} or {@link #entrySet()}) to keep a continuously fresh local view of it.
+     *
+     * @param source the source of the changes of the map's document.
+     * @return the live view of the map, to {@link LiveView#close() close} once no longer needed.
+     */
+    public LiveView<MapSnapshot<V>> liveView(ChangeSource source) {
+        return new LiveView<MapSnapshot<V>>(source, id, new LiveView.Snapshots<MapSnapshot<V>>() {
+            @Override
+            public MapSnapshot<V> load() {
+                return snapshot();
+            }
+
+            @Override
+            public MapSnapshot<V> decode(DocumentChange change) {
+                JsonObject content = change.isDeletion() ? JsonObject.empty() : JsonObject.fromJson(change.content());
+                return snapshotOf(content, change.cas());
+            }
+        });
+    }
+
+    /**
+     * @return the id of the document backing this map.
+     */
+    String id() {
+        return id;
+    }
 
-        private final Set<Map.Entry<String, V>> delegate;
+    /**
+     * @return the {@link Bucket} through which this map interacts with its document.
+     */
+    Bucket bucket() {
+        return bucket;
+    }
+
+    /**
+     * @return a new multi-mutation of the document, which sets its expiry.
+     */
+    private AsyncMutateInBuilder mutateIn() {
+        return collections.mutateIn(id).withExpiry(expiry);
+    }
 
-        private CouchbaseEntrySet(Map<String, V> data) {
-            this.delegate = data.entrySet();
+    /**
+     * @return the {@link CouchbaseCollections} this map was created from.
+     */
+    CouchbaseCollections collections() {
+        return collections;
+    }
+
+    /**
+     * Fetch the backing document and decode it as a {@link JsonObject}, without converting nested
+     * {@link JsonObject}/{@link JsonArray} values to {@link Map}/{@link java.util.List} like
+     * {@link JsonObject#toMap()} would.
+     */
+    private JsonObject fetchContent() {
+        return collections.read(id, JsonDocument.class).content();
+    }
+
+    /**
+     * Read the whole backing document from the replicas, for the reads that only need a part of it otherwise.
+     */
+    private JsonObject readContent() {
+        JsonDocument current = collections.read(id, JsonDocument.class);
+        if (current == null) {
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return current.content();
+    }
+
+    /**
+     * Fetch the backing document and only extract its top-level keys, skipping over the values
+     * without decoding them.
+     */
+    private List<String> fetchKeys() {
+        RawJsonDocument raw = collections.read(id, RawJsonDocument.class);
+        JsonParser parser = null;
+        try {
+            parser = JacksonTransformers.MAPPER.getFactory().createParser(raw.content());
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new TranscodingException("Document " + id + " doesn't have a JSON object root");
+            }
+            List<String> keys = new ArrayList<String>();
+            String name;
+            while ((name = parser.nextFieldName()) != null) {
+                keys.add(name);
+                parser.nextToken();
+                parser.skipChildren();
+            }
+            return keys;
+        } catch (IOException e) {
+            throw new TranscodingException("Could not decode the keys of document " + id, e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    //ignore
+                }
+            }
         }
+    }
+
+    /**
+     * A live view over the entries of the map. Each operation fetches the document anew, but values
+     * are left as they were decoded (nested {@link JsonObject}/{@link JsonArray} are not converted).
+     */
+    private class CouchbaseEntrySet extends AbstractSet<Entry<String, V>> {
 
         @Override
         public int size() {
-            return delegate.size();
+            return CouchbaseMap.this.size();
         }
 
         @Override
         public boolean isEmpty() {
-            return delegate.isEmpty();
+            return CouchbaseMap.this.isEmpty();
         }
 
         @Override
         public boolean contains(Object o) {
-            return delegate.contains(o);
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            if (!(entry.getKey() instanceof String)) {
+                return false;
+            }
+            JsonObject content = fetchContent();
+            String key = (String) entry.getKey();
+            return content.containsKey(key) && safeEquals(content.get(key), entry.getValue());
         }
 
         @Override
         public Iterator<Entry<String, V>> iterator() {
-            return new CouchbaseEntrySetIterator(delegate.iterator());
+            return new CouchbaseEntrySetIterator(fetchContent());
         }
 
         @Override
-        public Object[] toArray() {
-            return delegate.toArray();
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                CouchbaseMap.this.remove(((Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
         }
 
         @Override
-        public <T> T[] toArray(T[] a) {
-            return delegate.toArray(a);
+        public void clear() {
+            CouchbaseMap.this.clear();
+        }
+    }
+
+    private class CouchbaseEntrySetIterator implements Iterator<Entry<String, V>> {
+
+        private final JsonObject content;
+        private final Iterator<String> keys;
+        private String lastKey = null;
+
+        public CouchbaseEntrySetIterator(JsonObject content) {
+            this.content = content;
+            this.keys = content.getNames().iterator();
         }
 
         @Override
-        public boolean add(Entry<String, V> stringVEntry) {
-            return delegate.add(stringVEntry);
+        public boolean hasNext() {
+            return keys.hasNext();
         }
 
         @Override
-        public boolean remove(Object o) {
-            if (delegate.remove(o)) {
-                if (o instanceof Map.Entry) {
-                    Entry<String, V> entry = (Entry<String, V>) o;
-                    CouchbaseMap.this.remove(entry.getKey());
-                } else {
-                    throw new IllegalStateException("Expected entrySet remove() to remove an entry");
-                }
-                return true;
-            } else {
-                return false;
-            }
+        public Entry<String, V> next() {
+            this.lastKey = keys.next();
+            return new CouchbaseEntry(lastKey, (V) content.get(lastKey));
         }
 
         @Override
-        public boolean containsAll(Collection<?> c) {
-            return delegate.containsAll(c);
+        public void remove() {
+            if (lastKey == null)
+                throw new IllegalStateException("next() hasn't been called before remove()");
+            CouchbaseMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    /**
+     * An entry of the map, for which {@link #setValue(Object)} writes through to the document.
+     */
+    private class CouchbaseEntry extends AbstractMap.SimpleEntry<String, V> {
+
+        public CouchbaseEntry(String key, V value) {
+            super(key, value);
         }
 
         @Override
-        public boolean addAll(Collection<? extends Entry<String, V>> c) {
-            return delegate.addAll(c);
+        public V setValue(V value) {
+            CouchbaseMap.this.put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Computes the new value of a key for {@link #remap(String, String, Remapping)}.
+     */
+    private interface Remapping<V> {
+
+        /**
+         * @param current the current value, null if absent.
+         * @return the new value, null to remove the key or {@link CouchbaseMap#UNCHANGED} to leave the map unchanged.
+         */
+        Object remap(V current);
+    }
+
+    /**
+     * A local copy of the map, which records the keys that are put or removed.
+     */
+    private class RecordingMap extends AbstractMap<String, V> {
+
+        private final Map<String, Object> local;
+        private final Set<String> original;
+        private final Set<String> touched = new LinkedHashSet<String>();
+
+        RecordingMap(JsonObject content) {
+            this.local = new LinkedHashMap<String, Object>(content.size());
+            for (String name : content.getNames()) {
+                local.put(name, content.get(name));
+            }
+            this.original = new HashSet<String>(local.keySet());
+        }
+
+        /**
+         * @return the keys whose value changed or that need to be removed from the document.
+         */
+        List<String> changedKeys() {
+            List<String> changed = new ArrayList<String>(touched.size());
+            for (String key : touched) {
+                //keys that were both added and removed don't exist in the document
+                if (local.containsKey(key) || original.contains(key)) {
+                    changed.add(key);
+                }
+            }
+            return changed;
         }
 
         @Override
-        public boolean retainAll(Collection<?> c) {
-            return delegate.retainAll(c);
+        public V get(Object key) {
+            return (V) local.get(key);
         }
 
         @Override
-        public boolean removeAll(Collection<?> c) {
-            return delegate.removeAll(c);
+        public boolean containsKey(Object key) {
+            return local.containsKey(key);
         }
 
         @Override
-        public void clear() {
-            delegate.clear();
-            CouchbaseMap.this.clear();
+        public int size() {
+            return local.size();
         }
 
         @Override
-        public String toString() {
-            return delegate.toString();
+        public V put(String key, V value) {
+            if (key == null) {
+                throw new NullPointerException("Unsupported null key");
+            }
+            if (!JsonValue.checkType(value)) {
+                throw new IllegalArgumentException("Unsupported value type.");
+            }
+            touched.add(key);
+            return (V) local.put(key, value);
         }
 
-        public int hashCode() {
-            return delegate.hashCode();
+        @Override
+        public V remove(Object key) {
+            if (!local.containsKey(key)) {
+                return null;
+            }
+            touched.add((String) key);
+            return (V) local.remove(key);
         }
 
-        public boolean equals(Object obj) {
-            return delegate.equals(obj);
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return new AbstractSet<Entry<String, V>>() {
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    final Iterator<Entry<String, Object>> delegate = local.entrySet().iterator();
+                    return new Iterator<Entry<String, V>>() {
+                        private String lastKey;
+
+                        @Override
+                        public boolean hasNext() {
+                            return delegate.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, V> next() {
+                            Entry<String, Object> next = delegate.next();
+                            lastKey = next.getKey();
+                            return new SimpleEntry<String, V>(next.getKey(), (V) next.getValue()) {
+                                @Override
+                                public V setValue(V value) {
+                                    RecordingMap.this.put(getKey(), value);
+                                    return super.setValue(value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            delegate.remove();
+                            touched.add(lastKey);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return local.size();
+                }
+            };
         }
     }
 
-    private class CouchbaseEntrySetIterator implements Iterator<Entry<String, V>> {
+    /**
+     * A live view over the keys of the map. Iterating only extracts the keys from the document,
+     * values are never decoded.
+     */
+    private class CouchbaseKeySet extends AbstractSet<String> {
 
-        private final Iterator<Entry<String, V>> delegateItr;
-        private Entry<String, V> lastNext = null;
+        @Override
+        public int size() {
+            return CouchbaseMap.this.size();
+        }
 
-        public CouchbaseEntrySetIterator(Iterator<Entry<String, V>> iterator) {
-            this.delegateItr = iterator;
+        @Override
+        public boolean isEmpty() {
+            return CouchbaseMap.this.isEmpty();
         }
 
         @Override
-        public boolean hasNext() {
-            return delegateItr.hasNext();
+        public boolean contains(Object o) {
+            return CouchbaseMap.this.containsKey(o);
         }
 
         @Override
-        public Entry<String, V> next() {
-            this.lastNext = delegateItr.next();
-            return lastNext;
+        public Iterator<String> iterator() {
+            final Iterator<String> keys = fetchKeys().iterator();
+            return new Iterator<String>() {
+                private String lastKey = null;
+
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    lastKey = keys.next();
+                    return lastKey;
+                }
+
+                @Override
+                public void remove() {
+                    if (lastKey == null)
+                        throw new IllegalStateException("next() hasn't been called before remove()");
+                    CouchbaseMap.this.remove(lastKey);
+                    lastKey = null;
+                }
+            };
         }
 
         @Override
-        public void remove() {
-            if (lastNext == null)
-                throw new IllegalStateException("next() hasn't been called before remove()");
-            delegateItr.remove();
-            CouchbaseMap.this.remove(lastNext.getKey());
+        public boolean remove(Object o) {
+            if (CouchbaseMap.this.containsKey(o)) {
+                CouchbaseMap.this.remove(o);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            CouchbaseMap.this.clear();
+        }
+    }
+
+    private static List<String> distinctKeys(Collection<String> keys) {
+        Set<String> distinct = new LinkedHashSet<String>(keys);
+        if (distinct.contains(null)) {
+            throw new NullPointerException("Unsupported null key");
+        }
+        return new ArrayList<String>(distinct);
+    }
+
+    private static List<String> paths(List<String> keys) {
+        List<String> paths = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            paths.add(SubdocPaths.key(key));
+        }
+        return paths;
+    }
+
+    private static boolean safeEquals(Object expected, Object tested) {
+        if (expected == null) {
+            return tested == null;
         }
+        return expected.equals(tested);
     }
 }
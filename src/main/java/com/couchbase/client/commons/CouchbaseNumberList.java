@@ -0,0 +1,83 @@
+package com.couchbase.client.commons;
+
+import java.util.Collection;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.RawJsonDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import rx.functions.Func1;
+
+/**
+ * The base of the {@link CouchbaseArrayList} specializations for a {@link Number} type, which offer primitive
+ * accessors on top of it ({@link CouchbaseLongList} and {@link CouchbaseDoubleList}).
+ *
+ * Elements are normalized to the type of the list when read, as JSON numbers are decoded to the smallest
+ * fitting {@link Number} type (eg. an {@link Integer} for a small <code>long</code>). The bulk read operations
+ * stream over the raw JSON of the document, instead of decoding it into a
+ * {@link com.couchbase.client.java.document.json.JsonArray} of boxed values first.
+ *
+ * @param <E> the type of elements in the list.
+ */
+abstract class CouchbaseNumberList<E extends Number> extends CouchbaseArrayList<E> {
+
+    private final Class<E> type;
+    private final Func1<Number, E> decoder;
+
+    CouchbaseNumberList(String id, Bucket bucket, Class<E> type, Func1<Number, E> decoder) {
+        super(id, bucket);
+        this.type = type;
+        this.decoder = decoder;
+    }
+
+    CouchbaseNumberList(String id, Bucket bucket, Collection<E> content, Class<E> type, Func1<Number, E> decoder) {
+        super(id, bucket, content);
+        this.type = type;
+        this.decoder = decoder;
+    }
+
+    CouchbaseNumberList(String id, CouchbaseCollections collections, Class<E> type, Func1<Number, E> decoder) {
+        super(id, collections);
+        this.type = type;
+        this.decoder = decoder;
+    }
+
+    CouchbaseNumberList(String id, CouchbaseCollections collections, Collection<E> content, Class<E> type,
+            Func1<Number, E> decoder) {
+        super(id, collections, content);
+        this.type = type;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Get the element at <code>index</code>, without normalizing it to the type of the list.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    Number getNumber(int index) {
+        return (Number) getElement(index);
+    }
+
+    @Override
+    public int size() {
+        return JsonNumberArrays.count(id(), fetchRaw());
+    }
+
+    @Override
+    E decode(Object element) {
+        if (element == null || type.isInstance(element)) {
+            return type.cast(element);
+        }
+        return decoder.call((Number) element);
+    }
+
+    /**
+     * Fetch the raw JSON of the whole list.
+     */
+    String fetchRaw() {
+        RawJsonDocument current = collections().read(id(), RawJsonDocument.class);
+        if (current == null) {
+            throw new DocumentDoesNotExistException("Document " + id() + " doesn't exist");
+        }
+        return current.content();
+    }
+}
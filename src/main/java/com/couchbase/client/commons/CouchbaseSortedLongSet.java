@@ -0,0 +1,364 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.couchbase.client.commons.binary.BinaryReader;
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.commons.iterators.LongIterator;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * A CouchbaseSortedLongSet is a {@link Set} of {@link Long} backed by a {@link Bucket Couchbase}
+ * {@link BinaryDocument}. The elements are kept sorted and stored delta-encoded: each element is stored as
+ * the difference with the previous one, as a variable-length integer. Dense sets of ids or timestamps thus
+ * typically take 1 to 3 bytes per element, instead of up to 20 as a JSON array.
+ *
+ * Iteration is in ascending order and {@link #contains(Object)} is a binary search over the decoded
+ * elements. As with {@link CouchbaseBinaryList}, every operation reads the whole document and every mutation
+ * rewrites it (using CAS to detect concurrent modifications). Null elements are not supported.
+ */
+public class CouchbaseSortedLongSet extends AbstractSet<Long> {
+
+    public static final int MAX_OPTIMISTIC_LOCKING_ATTEMPTS = CouchbaseArrayList.MAX_OPTIMISTIC_LOCKING_ATTEMPTS;
+    private static final long[] EMPTY = new long[0];
+
+    private final String id;
+    private final CouchbaseCollections collections;
+
+    /**
+     * Create a new {@link CouchbaseSortedLongSet}, backed by the document identified by <code>id</code>
+     * in <code>bucket</code>. Note that if the document already exists, its content will be used as initial
+     * content for this collection. Otherwise it is created empty.
+     *
+     * @param id the id of the Couchbase document to back the set.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     */
+    public CouchbaseSortedLongSet(String id, Bucket bucket) {
+        this(id, new CouchbaseCollections(bucket));
+    }
+
+    /**
+     * Create a new {@link CouchbaseSortedLongSet}, backed by the document identified by <code>id</code>
+     * in <code>bucket</code>. Note that if the document already exists, its content is reset to the values
+     * provided in the <code>initialData</code> Collection.
+     *
+     * @param id the id of the Couchbase document to back the set.
+     * @param bucket the {@link Bucket} through which to interact with the document.
+     * @param initialData the elements to initially store in the set.
+     */
+    public CouchbaseSortedLongSet(String id, Bucket bucket, Collection<Long> initialData) {
+        this(id, new CouchbaseCollections(bucket), initialData);
+    }
+
+    CouchbaseSortedLongSet(String id, CouchbaseCollections collections) {
+        this.id = id;
+        this.collections = collections;
+
+        BinaryDocuments.createIfAbsent(collections, id, encode(EMPTY, 0));
+    }
+
+    CouchbaseSortedLongSet(String id, CouchbaseCollections collections, Collection<Long> initialData) {
+        this.id = id;
+        this.collections = collections;
+
+        long[] values = sortedDistinct(initialData);
+        BinaryDocuments.reset(collections, id, encode(values, values.length));
+    }
+
+    @Override
+    public int size() {
+        return decodeSize(id, new BinaryReader(read().bytes));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Long)) {
+            return false;
+        }
+        return Arrays.binarySearch(load().values, (Long) o) >= 0;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        long v = value;
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                int position = Arrays.binarySearch(current.values, v);
+                if (position >= 0) {
+                    return false;
+                }
+                int insertion = -position - 1;
+                long[] updated = new long[current.values.length + 1];
+                System.arraycopy(current.values, 0, updated, 0, insertion);
+                updated[insertion] = v;
+                System.arraycopy(current.values, insertion, updated, insertion + 1, current.values.length - insertion);
+                if (tryWrite(updated, updated.length, current.cas)) {
+                    return true;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform add in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    /**
+     * Add all the elements of a collection, rewriting the document at most once.
+     */
+    @Override
+    public boolean addAll(Collection<? extends Long> c) {
+        long[] added = sortedDistinct(c);
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                //merge the two sorted arrays
+                long[] merged = new long[current.values.length + added.length];
+                int size = 0;
+                int a = 0;
+                int b = 0;
+                while (a < current.values.length || b < added.length) {
+                    long next;
+                    if (b == added.length || (a < current.values.length && current.values[a] <= added[b])) {
+                        next = current.values[a++];
+                        if (b < added.length && added[b] == next) {
+                            b++;
+                        }
+                    } else {
+                        next = added[b++];
+                    }
+                    merged[size++] = next;
+                }
+                if (size == current.values.length) {
+                    return false;
+                }
+                if (tryWrite(merged, size, current.cas)) {
+                    return true;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform addAll in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Long)) {
+            return false;
+        }
+        long v = (Long) o;
+        Long outer = collections.beginOperation();
+        try {
+            int maxAttempts = collections.options().maxAttempts();
+            for (int i = 0; i < maxAttempts; i++) {
+                Snapshot current = load();
+                int position = Arrays.binarySearch(current.values, v);
+                if (position < 0) {
+                    return false;
+                }
+                long[] updated = new long[current.values.length - 1];
+                System.arraycopy(current.values, 0, updated, 0, position);
+                System.arraycopy(current.values, position + 1, updated, position, updated.length - position);
+                if (tryWrite(updated, updated.length, current.cas)) {
+                    return true;
+                }
+            }
+            throw new ConcurrentModificationException("Couldn't perform remove in less than " + maxAttempts + " iterations");
+        } finally {
+            collections.endOperation(outer);
+        }
+    }
+
+    @Override
+    public void clear() {
+        BinaryDocuments.reset(collections, id, encode(EMPTY, 0));
+    }
+
+    /**
+     * Fetch the whole set and decode it into a <code>long[]</code>.
+     *
+     * @return the elements of the set, in ascending order.
+     */
+    public long[] toLongArray() {
+        return load().values;
+    }
+
+    /**
+     * Fetch the whole set and iterate over its elements, in ascending order, without boxing them. The
+     * iterator reflects the state of the set at the time of this call.
+     *
+     * @return a {@link LongIterator} over the elements of the set.
+     */
+    public LongIterator longIterator() {
+        final long[] values = toLongArray();
+        return new LongIterator() {
+            private int cursor = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < values.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (cursor >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                return values[cursor++];
+            }
+        };
+    }
+
+    /**
+     * Iterate over the elements of the set in ascending order. The iterator reflects the state of the set
+     * at the time of this call. Its {@link Iterator#remove() remove} removes the last returned element from
+     * the set (whether or not it was concurrently removed).
+     */
+    @Override
+    public Iterator<Long> iterator() {
+        final long[] values = toLongArray();
+        return new Iterator<Long>() {
+            private int cursor = 0;
+            private boolean canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < values.length;
+            }
+
+            @Override
+            public Long next() {
+                if (cursor >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return values[cursor++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                CouchbaseSortedLongSet.this.remove(values[cursor - 1]);
+                canRemove = false;
+            }
+        };
+    }
+
+    private BinaryDocuments.Content read() {
+        BinaryDocuments.Content content = BinaryDocuments.read(collections, id);
+        if (content == null) {
+            //behave like the JSON collections, which expect their document to exist
+            throw new DocumentDoesNotExistException("Document " + id + " doesn't exist");
+        }
+        return content;
+    }
+
+    private Snapshot load() {
+        BinaryDocuments.Content content = read();
+        return new Snapshot(decode(id, content.bytes), content.cas);
+    }
+
+    private boolean tryWrite(long[] values, int size, long cas) {
+        try {
+            BinaryDocuments.write(collections, id, encode(values, size), cas);
+            return true;
+        } catch (CASMismatchException ex) {
+            return false;
+        } catch (DocumentAlreadyExistsException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Encode the first <code>size</code> values of a sorted array of distinct values.
+     */
+    static BinaryWriter encode(long[] values, int size) {
+        BinaryWriter out = new BinaryWriter(16 + size * 2);
+        out.writeVarLong(size);
+        for (int i = 0; i < size; i++) {
+            if (i == 0) {
+                out.writeZigZagVarLong(values[0]);
+            } else {
+                out.writeVarLong(values[i] - values[i - 1]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decode the content written by {@link #encode(long[], int)}.
+     */
+    static long[] decode(String id, byte[] content) {
+        BinaryReader in = new BinaryReader(content);
+        int size = decodeSize(id, in);
+        long[] values = new long[size];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            //the first element is zigzag encoded (it can be negative), the following are positive deltas
+            //which may exceed Long.MAX_VALUE, in which case the addition wraps around to the right value
+            previous = i == 0 ? in.readZigZagVarLong() : previous + in.readVarLong();
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static int decodeSize(String id, BinaryReader in) {
+        long size = in.readVarLong();
+        if (size > Integer.MAX_VALUE) {
+            throw new TranscodingException("Document " + id + " has an invalid size: " + size);
+        }
+        return (int) size;
+    }
+
+    private static long[] sortedDistinct(Collection<? extends Long> values) {
+        long[] sorted = new long[values.size()];
+        int size = 0;
+        for (Long value : values) {
+            sorted[size++] = value;
+        }
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * The decoded elements of the set, along with the CAS of the document they were decoded from.
+     */
+    private static final class Snapshot {
+        final long[] values;
+        final long cas;
+
+        Snapshot(long[] values, long cas) {
+            this.values = values;
+            this.cas = cas;
+        }
+    }
+}
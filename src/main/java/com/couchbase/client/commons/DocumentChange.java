@@ -0,0 +1,80 @@
+package com.couchbase.client.commons;
+
+/**
+ * A change of a document, as streamed by a {@link ChangeSource}: either a mutation, which carries the whole new
+ * content of the document (like DCP mutations do), or a deletion (including expiration).
+ */
+public final class DocumentChange {
+
+    private final String id;
+    private final long cas;
+    private final String content;
+
+    private DocumentChange(String id, long cas, String content) {
+        if (id == null) {
+            throw new NullPointerException("id");
+        }
+        this.id = id;
+        this.cas = cas;
+        this.content = content;
+    }
+
+    /**
+     * @param id the id of the document.
+     * @param cas the CAS of the document after the mutation.
+     * @param content the new content of the document, as JSON.
+     * @return the mutation.
+     */
+    public static DocumentChange mutation(String id, long cas, String content) {
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        return new DocumentChange(id, cas, content);
+    }
+
+    /**
+     * @param id the id of the document.
+     * @param cas the CAS of the deletion.
+     * @return the deletion.
+     */
+    public static DocumentChange deletion(String id, long cas) {
+        return new DocumentChange(id, cas, null);
+    }
+
+    /**
+     * @return the id of the document.
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the CAS of the document after the change.
+     */
+    public long cas() {
+        return cas;
+    }
+
+    /**
+     * @return the new content of the document as JSON, or null if it was deleted.
+     */
+    public String content() {
+        return content;
+    }
+
+    /**
+     * @return true if the document was deleted.
+     */
+    public boolean isDeletion() {
+        return content == null;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentChange{" +
+                "id='" + id + '\'' +
+                ", cas=" + cas +
+                (content == null ? ", deleted" : ", content=" + content) +
+                '}';
+    }
+}
@@ -0,0 +1,101 @@
+package com.couchbase.client.commons;
+
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+
+/**
+ * The durability requirements of the writes of a collection: how many nodes each mutation must be persisted to
+ * ({@link PersistTo}) and replicated to ({@link ReplicateTo}) before the write returns.
+ *
+ * When a requirement isn't met in time, the write fails with a
+ * {@link com.couchbase.client.java.error.DurabilityException}, even though the mutation itself may have been
+ * applied on the active node.
+ */
+public final class Durability {
+
+    /**
+     * No requirement, writes return as soon as the active node has applied them.
+     */
+    public static final Durability NONE = new Durability(PersistTo.NONE, ReplicateTo.NONE);
+
+    private final PersistTo persistTo;
+    private final ReplicateTo replicateTo;
+
+    private Durability(PersistTo persistTo, ReplicateTo replicateTo) {
+        this.persistTo = persistTo;
+        this.replicateTo = replicateTo;
+    }
+
+    /**
+     * @param persistTo the number of nodes mutations must be persisted to.
+     * @param replicateTo the number of replicas mutations must be replicated to.
+     * @return the corresponding durability requirements.
+     */
+    public static Durability of(PersistTo persistTo, ReplicateTo replicateTo) {
+        if (persistTo == null) {
+            throw new NullPointerException("persistTo");
+        }
+        if (replicateTo == null) {
+            throw new NullPointerException("replicateTo");
+        }
+        if (persistTo == PersistTo.NONE && replicateTo == ReplicateTo.NONE) {
+            return NONE;
+        }
+        return new Durability(persistTo, replicateTo);
+    }
+
+    /**
+     * @return the number of nodes mutations must be persisted to.
+     */
+    public PersistTo persistTo() {
+        return persistTo;
+    }
+
+    /**
+     * @return the number of replicas mutations must be replicated to.
+     */
+    public ReplicateTo replicateTo() {
+        return replicateTo;
+    }
+
+    /**
+     * @return true if writes have no durability requirement.
+     */
+    public boolean isNone() {
+        return persistTo == PersistTo.NONE && replicateTo == ReplicateTo.NONE;
+    }
+
+    /**
+     * @return the requirements that satisfy both this and <code>other</code>, used when writes with different
+     *   requirements are combined into a single mutation.
+     */
+    Durability strongest(Durability other) {
+        PersistTo persist = rank(other.persistTo) > rank(persistTo) ? other.persistTo : persistTo;
+        ReplicateTo replicate = other.replicateTo.ordinal() > replicateTo.ordinal() ? other.replicateTo : replicateTo;
+        return of(persist, replicate);
+    }
+
+    private static int rank(PersistTo persistTo) {
+        //persisting to the master counts as persisting to one node
+        return persistTo == PersistTo.MASTER ? 1 : persistTo.value().value();
+    }
+
+    /**
+     * Apply these requirements to a mutation.
+     *
+     * @param builder the mutation.
+     * @return the same builder.
+     */
+    AsyncMutateInBuilder applyTo(AsyncMutateInBuilder builder) {
+        return isNone() ? builder : builder.withDurability(persistTo, replicateTo);
+    }
+
+    @Override
+    public String toString() {
+        return "Durability{" +
+                "persistTo=" + persistTo +
+                ", replicateTo=" + replicateTo +
+                '}';
+    }
+}
@@ -0,0 +1,134 @@
+package com.couchbase.client.commons;
+
+/**
+ * Bounds the size of a {@link CouchbaseCacheMap}: once a write would take the map over the maximum number of
+ * entries or bytes, the least recently used entries are evicted in the same mutation. Instances are immutable and
+ * are created through a {@link Builder}:
+ *
+ * <pre>
+ * EvictionPolicy eviction = EvictionPolicy.builder()
+ *     .maxEntries(10000)
+ *     .maxBytes(1024 * 1024)
+ *     .build();
+ * </pre>
+ */
+public class EvictionPolicy {
+
+    /**
+     * No bound, entries are only removed explicitly or when they expire.
+     */
+    public static final EvictionPolicy NONE = builder().build();
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final boolean accessOrder;
+
+    private EvictionPolicy(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.maxBytes = builder.maxBytes;
+        this.accessOrder = builder.accessOrder;
+    }
+
+    /**
+     * @return a new {@link Builder}, initialized with the default values.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the maximum number of entries, 0 if unbounded.
+     * @see Builder#maxEntries(int)
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the maximum size of the entries in bytes, 0 if unbounded.
+     * @see Builder#maxBytes(long)
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return true if reads count as uses of an entry, false if only writes do.
+     * @see Builder#accessOrder(boolean)
+     */
+    public boolean accessOrder() {
+        return accessOrder;
+    }
+
+    /**
+     * @return true if the number of entries or their size is bounded.
+     */
+    public boolean isBounded() {
+        return maxEntries > 0 || maxBytes > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "EvictionPolicy{" +
+                "maxEntries=" + maxEntries +
+                ", maxBytes=" + maxBytes +
+                ", accessOrder=" + accessOrder +
+                '}';
+    }
+
+    public static class Builder {
+
+        private int maxEntries = 0;
+        private long maxBytes = 0;
+        private boolean accessOrder = false;
+
+        private Builder() { }
+
+        /**
+         * The maximum number of entries of the map. Defaults to 0, which doesn't bound the number of entries.
+         *
+         * @param maxEntries the maximum number of entries.
+         * @return this builder for chaining purposes.
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * The maximum size of the entries of the map, measured as the UTF-8 size of their keys and JSON values.
+         * Keep it well under the 20MB limit of documents, as the document also holds the structure of the JSON
+         * object and the metadata of each entry (about 30 bytes). Defaults to 0, which doesn't bound the size.
+         *
+         * @param maxBytes the maximum size of the entries.
+         * @return this builder for chaining purposes.
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * When enabled, {@link CouchbaseCacheMap#get(Object)} marks the entry it finds as used, so that the least
+         * recently read or written entries are evicted first, at the cost of a small write per successful read.
+         * Otherwise the least recently written entries are evicted first. Defaults to false.
+         *
+         * @param accessOrder true to evict in access order, false in write order.
+         * @return this builder for chaining purposes.
+         */
+        public Builder accessOrder(boolean accessOrder) {
+            this.accessOrder = accessOrder;
+            return this;
+        }
+
+        public EvictionPolicy build() {
+            return new EvictionPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.couchbase.client.commons;
+
+/**
+ * Receives the periodic {@link HotKeyReport reports} of a {@link CouchbaseCollections}, see
+ * {@link CouchbaseCollections#reportHotKeys(HotKeyListener, long, java.util.concurrent.TimeUnit)}.
+ */
+public interface HotKeyListener {
+
+    /**
+     * Called with the report of each period, on a computation thread.
+     *
+     * @param report the hot documents and keys of the period.
+     */
+    void onReport(HotKeyReport report);
+}
@@ -0,0 +1,137 @@
+package com.couchbase.client.commons;
+
+import java.util.List;
+
+/**
+ * A snapshot of the documents and map keys that get the most operations and the most CAS conflicts, as
+ * tracked by a {@link CouchbaseCollections} with {@link CollectionOptions.Builder#trackHotKeys(int) hot key
+ * tracking} enabled.
+ *
+ * Counts are estimates: each {@link Entry} may overestimate its actual count by at most its
+ * {@link Entry#error() error}, and an item that doesn't appear in a list had fewer occurrences than the last
+ * entry of a full list.
+ */
+public class HotKeyReport {
+
+    private final long operations;
+    private final long conflicts;
+    private final List<Entry> documentsByOperations;
+    private final List<Entry> documentsByConflicts;
+    private final List<Entry> keysByOperations;
+    private final List<Entry> keysByConflicts;
+
+    HotKeyReport(long operations, long conflicts, List<Entry> documentsByOperations,
+            List<Entry> documentsByConflicts, List<Entry> keysByOperations, List<Entry> keysByConflicts) {
+        this.operations = operations;
+        this.conflicts = conflicts;
+        this.documentsByOperations = documentsByOperations;
+        this.documentsByConflicts = documentsByConflicts;
+        this.keysByOperations = keysByOperations;
+        this.keysByConflicts = keysByConflicts;
+    }
+
+    /**
+     * @return the total number of operations tracked.
+     */
+    public long operations() {
+        return operations;
+    }
+
+    /**
+     * @return the total number of CAS conflicts tracked.
+     */
+    public long conflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the documents with the most operations, most frequent first.
+     */
+    public List<Entry> documentsByOperations() {
+        return documentsByOperations;
+    }
+
+    /**
+     * @return the documents with the most CAS conflicts, most frequent first.
+     */
+    public List<Entry> documentsByConflicts() {
+        return documentsByConflicts;
+    }
+
+    /**
+     * @return the {@link CouchbaseMap} keys with the most operations, most frequent first.
+     */
+    public List<Entry> keysByOperations() {
+        return keysByOperations;
+    }
+
+    /**
+     * @return the {@link CouchbaseMap} keys with the most CAS conflicts, most frequent first.
+     */
+    public List<Entry> keysByConflicts() {
+        return keysByConflicts;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKeyReport{" +
+                "operations=" + operations +
+                ", conflicts=" + conflicts +
+                ", documentsByOperations=" + documentsByOperations +
+                ", documentsByConflicts=" + documentsByConflicts +
+                ", keysByOperations=" + keysByOperations +
+                ", keysByConflicts=" + keysByConflicts +
+                '}';
+    }
+
+    /**
+     * The estimated count of a document, or of a key within a document.
+     */
+    public static class Entry {
+
+        private final String id;
+        private final String key;
+        private final long count;
+        private final long error;
+
+        Entry(String id, String key, long count, long error) {
+            this.id = id;
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * @return the id of the document.
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * @return the key within the document, or null for an entry about the whole document.
+         */
+        public String key() {
+            return key;
+        }
+
+        /**
+         * @return the estimated count, which is at least the actual count.
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return the maximum overestimation of the count.
+         */
+        public long error() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return (key == null ? id : id + "/" + key) + "=" + count + (error == 0 ? "" : "(+-" + error + ")");
+        }
+    }
+}
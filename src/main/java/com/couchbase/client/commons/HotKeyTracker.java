@@ -0,0 +1,91 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the approximate top documents and map keys by operations and by CAS conflicts, each in a
+ * {@link SpaceSaving} sketch of bounded size.
+ */
+final class HotKeyTracker {
+
+    private final int capacity;
+    private final SpaceSaving<String> documentOperations;
+    private final SpaceSaving<String> documentConflicts;
+    private final SpaceSaving<Map.Entry<String, String>> keyOperations;
+    private final SpaceSaving<Map.Entry<String, String>> keyConflicts;
+
+    /**
+     * @param capacity the number of documents, and of keys, tracked by operations and by conflicts.
+     */
+    HotKeyTracker(int capacity) {
+        this.capacity = capacity;
+        this.documentOperations = new SpaceSaving<String>(capacity);
+        this.documentConflicts = new SpaceSaving<String>(capacity);
+        this.keyOperations = new SpaceSaving<Map.Entry<String, String>>(capacity);
+        this.keyConflicts = new SpaceSaving<Map.Entry<String, String>>(capacity);
+    }
+
+    /**
+     * Record an operation on a document.
+     *
+     * @param id the id of the document.
+     * @param key the map key the operation is about, or null if it is about the whole document.
+     */
+    synchronized void operation(String id, String key) {
+        documentOperations.offer(id);
+        if (key != null) {
+            keyOperations.offer(new AbstractMap.SimpleImmutableEntry<String, String>(id, key));
+        }
+    }
+
+    /**
+     * Record a CAS conflict on a document.
+     *
+     * @param id the id of the document.
+     * @param key the map key the conflicting operation is about, or null if it is about the whole document.
+     */
+    synchronized void conflict(String id, String key) {
+        documentConflicts.offer(id);
+        if (key != null) {
+            keyConflicts.offer(new AbstractMap.SimpleImmutableEntry<String, String>(id, key));
+        }
+    }
+
+    /**
+     * @param reset true to start tracking from scratch once the report is made.
+     * @return the report of what was tracked since the last reset.
+     */
+    synchronized HotKeyReport report(boolean reset) {
+        HotKeyReport report = new HotKeyReport(documentOperations.total(), documentConflicts.total(),
+                documents(documentOperations), documents(documentConflicts),
+                keys(keyOperations), keys(keyConflicts));
+        if (reset) {
+            documentOperations.clear();
+            documentConflicts.clear();
+            keyOperations.clear();
+            keyConflicts.clear();
+        }
+        return report;
+    }
+
+    private List<HotKeyReport.Entry> documents(SpaceSaving<String> sketch) {
+        List<HotKeyReport.Entry> entries = new ArrayList<HotKeyReport.Entry>();
+        for (SpaceSaving.Estimate<String> estimate : sketch.top(capacity)) {
+            entries.add(new HotKeyReport.Entry(estimate.item, null, estimate.count, estimate.error));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private List<HotKeyReport.Entry> keys(SpaceSaving<Map.Entry<String, String>> sketch) {
+        List<HotKeyReport.Entry> entries = new ArrayList<HotKeyReport.Entry>();
+        for (SpaceSaving.Estimate<Map.Entry<String, String>> estimate : sketch.top(capacity)) {
+            entries.add(new HotKeyReport.Entry(estimate.item.getKey(), estimate.item.getValue(),
+                    estimate.count, estimate.error));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -0,0 +1,168 @@
+package com.couchbase.client.commons;
+
+import java.util.Arrays;
+
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * A local HyperLogLog sketch (Flajolet, Fusy, Gandouet and Meunier, "HyperLogLog: the analysis of a near-optimal
+ * cardinality estimation algorithm"), which estimates the number of distinct elements added to it with a fixed
+ * amount of memory: 2^precision registers of one byte, for a standard error of about
+ * <code>1.04 / sqrt(2^precision)</code> (0.8% with the {@link #DEFAULT_PRECISION default precision}).
+ *
+ * It is typically used as a buffer for a {@link CouchbaseHyperLogLog}: elements are added locally, then the
+ * buffer is {@link CouchbaseHyperLogLog#merge(HyperLogLog...) merged} into the stored sketch in a single write.
+ *
+ * Elements are hashed with MurmurHash3, so that sketches built by different clients can be merged. This class is
+ * not thread-safe.
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Create an empty {@link HyperLogLog}.
+     *
+     * @param precision the number of bits of the hash that select a register, between {@link #MIN_PRECISION}
+     *   and {@link #MAX_PRECISION}.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    /**
+     * Add an element to the sketch.
+     *
+     * @param element the element to add.
+     * @return true if the sketch changed.
+     */
+    public boolean add(String element) {
+        long hash = Murmur3.hash128(element)[0];
+        int index = (int) (hash >>> (64 - precision));
+        //the rank of the first set bit in the remaining bits, capped in case they are all 0
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merge another sketch into this one, which then estimates the cardinality of the union of both.
+     *
+     * @param other the sketch to merge, which must have the same precision.
+     * @return true if this sketch changed.
+     */
+    public boolean merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge a sketch of precision " + other.precision
+                    + " into a sketch of precision " + precision);
+        }
+        boolean changed = false;
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the estimated number of distinct elements added to the sketch.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            //small range correction: linear counting is more accurate while registers are empty
+            estimate = m * Math.log((double) m / zeros);
+        }
+        //the 64 bits hash makes the large range correction of the 32 bits original unnecessary
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return true if no element was added to the sketch.
+     */
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the precision of the sketch.
+     */
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * @return a copy of this sketch.
+     */
+    public HyperLogLog copy() {
+        return new HyperLogLog(precision, Arrays.copyOf(registers, registers.length));
+    }
+
+    /**
+     * Encode the sketch as its precision followed by its registers.
+     */
+    BinaryWriter encode() {
+        return new BinaryWriter(1 + registers.length)
+                .writeByte(precision)
+                .writeBytes(registers, 0, registers.length);
+    }
+
+    /**
+     * Decode the content written by {@link #encode()}.
+     */
+    static HyperLogLog decode(String id, byte[] content) {
+        int precision = content.length == 0 ? 0 : content[0];
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION || content.length != 1 + (1 << precision)) {
+            throw new TranscodingException("Document " + id + " isn't a HyperLogLog sketch");
+        }
+        return new HyperLogLog(precision, Arrays.copyOfRange(content, 1, content.length));
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
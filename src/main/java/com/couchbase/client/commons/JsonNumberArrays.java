@@ -0,0 +1,135 @@
+package com.couchbase.client.commons;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonParser;
+import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonToken;
+import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.transcoder.JacksonTransformers;
+
+/**
+ * Decodes raw JSON arrays of numbers straight into primitive arrays, streaming over the JSON
+ * without creating a boxed value per element.
+ */
+final class JsonNumberArrays {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private JsonNumberArrays() { }
+
+    /**
+     * Decode a JSON array of integral numbers.
+     *
+     * @param id the id of the document the JSON comes from, for error messages.
+     * @param json the raw JSON array.
+     * @return the numbers of the array, in order.
+     * @throws TranscodingException if the JSON isn't an array of integral numbers.
+     */
+    static long[] decodeLongs(String id, String json) {
+        JsonParser parser = openArray(id, json);
+        try {
+            long[] values = new long[INITIAL_CAPACITY];
+            int size = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NUMBER_INT) {
+                    throw new TranscodingException("Document " + id + " contains a non integral element at index "
+                            + size + ": " + token);
+                }
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = parser.getLongValue();
+            }
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        } catch (IOException e) {
+            throw new TranscodingException("Could not decode the elements of document " + id, e);
+        } finally {
+            close(parser);
+        }
+    }
+
+    /**
+     * Decode a JSON array of numbers.
+     *
+     * @param id the id of the document the JSON comes from, for error messages.
+     * @param json the raw JSON array.
+     * @return the numbers of the array, in order.
+     * @throws TranscodingException if the JSON isn't an array of numbers.
+     */
+    static double[] decodeDoubles(String id, String json) {
+        JsonParser parser = openArray(id, json);
+        try {
+            double[] values = new double[INITIAL_CAPACITY];
+            int size = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+                    throw new TranscodingException("Document " + id + " contains a non numeric element at index "
+                            + size + ": " + token);
+                }
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = parser.getDoubleValue();
+            }
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        } catch (IOException e) {
+            throw new TranscodingException("Could not decode the elements of document " + id, e);
+        } finally {
+            close(parser);
+        }
+    }
+
+    /**
+     * Count the elements of a JSON array, without decoding them.
+     *
+     * @param id the id of the document the JSON comes from, for error messages.
+     * @param json the raw JSON array.
+     * @return the number of elements in the array.
+     * @throws TranscodingException if the JSON isn't an array.
+     */
+    static int count(String id, String json) {
+        JsonParser parser = openArray(id, json);
+        try {
+            int size = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+                size++;
+            }
+            return size;
+        } catch (IOException e) {
+            throw new TranscodingException("Could not decode the elements of document " + id, e);
+        } finally {
+            close(parser);
+        }
+    }
+
+    private static JsonParser openArray(String id, String json) {
+        JsonParser parser = null;
+        try {
+            parser = JacksonTransformers.MAPPER.getFactory().createParser(json);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new TranscodingException("Document " + id + " doesn't have a JSON array root");
+            }
+            return parser;
+        } catch (IOException e) {
+            close(parser);
+            throw new TranscodingException("Could not decode document " + id, e);
+        } catch (RuntimeException e) {
+            close(parser);
+            throw e;
+        }
+    }
+
+    private static void close(JsonParser parser) {
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                //ignore
+            }
+        }
+    }
+}
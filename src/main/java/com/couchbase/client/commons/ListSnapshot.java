@@ -0,0 +1,65 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, fully local copy of a {@link CouchbaseArrayList}, as returned by
+ * {@link CouchbaseArrayList#snapshot()}. Reading it doesn't involve the network, but it doesn't reflect later
+ * changes to the list either: use {@link #isStale()} to know if the list changed since the snapshot was taken,
+ * and {@link #refresh()} to get an up-to-date snapshot.
+ *
+ * Note that JSON sub-objects and sub-arrays in the snapshot should be treated as read-only.
+ *
+ * @param <E> the type of values in the list.
+ */
+public final class ListSnapshot<E> extends AbstractList<E> implements RandomAccess {
+
+    private final CouchbaseArrayList<E> source;
+    private final List<E> elements;
+    private final long cas;
+
+    ListSnapshot(CouchbaseArrayList<E> source, List<E> elements, long cas) {
+        this.source = source;
+        this.elements = elements;
+        this.cas = cas;
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * @return the CAS of the document at the time the snapshot was taken.
+     */
+    public long cas() {
+        return cas;
+    }
+
+    /**
+     * Check whether the list changed since the snapshot was taken, by comparing the current CAS of its
+     * document (without fetching its content).
+     *
+     * @return true if the list changed (or was deleted) since the snapshot was taken.
+     */
+    public boolean isStale() {
+        return source.collections().currentCas(source.id()) != cas;
+    }
+
+    /**
+     * Get an up-to-date snapshot of the list, which is this snapshot itself unless the list changed since
+     * it was taken.
+     *
+     * @return an up-to-date snapshot.
+     */
+    public ListSnapshot<E> refresh() {
+        return isStale() ? source.snapshot() : this;
+    }
+}
@@ -0,0 +1,132 @@
+package com.couchbase.client.commons;
+
+import java.io.Closeable;
+
+import rx.Observer;
+import rx.Subscription;
+
+/**
+ * A local copy of a collection that is kept up to date by a {@link ChangeSource}, as returned by
+ * {@link CouchbaseMap#liveView(ChangeSource)} and {@link CouchbaseArrayList#liveView(ChangeSource)}.
+ *
+ * The collection is fetched once, then each change of its document streamed by the source replaces the local
+ * copy, without fetching the document again. Reading the view is thus purely local: {@link #get()} returns an
+ * immutable snapshot of the collection as of the latest change received. The view lags behind the collection
+ * by the latency of the source, and stops following it once {@link #close() closed} or if the source fails
+ * (see {@link #isLive()}).
+ *
+ * @param <T> the type of snapshot of the collection.
+ */
+public final class LiveView<T> implements Closeable {
+
+    /**
+     * Builds the snapshots of the collection.
+     */
+    interface Snapshots<T> {
+        /**
+         * @return a snapshot of the collection, fetched from the document.
+         */
+        T load();
+
+        /**
+         * @return a snapshot of the collection as of a change of its document.
+         */
+        T decode(DocumentChange change);
+    }
+
+    private final Subscription subscription;
+    private T current;
+    private long cas;
+    private boolean changed;
+    private Throwable error;
+    private boolean closed;
+
+    LiveView(ChangeSource source, String id, final Snapshots<T> snapshots) {
+        //subscribe before loading, so that no change is missed between the load and the first change
+        this.subscription = source.changes(id).subscribe(new Observer<DocumentChange>() {
+            @Override
+            public void onNext(DocumentChange change) {
+                apply(snapshots.decode(change), change.cas());
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                fail(e);
+            }
+
+            @Override
+            public void onCompleted() {
+                fail(null);
+            }
+        });
+        try {
+            T loaded = snapshots.load();
+            synchronized (this) {
+                //a change received meanwhile is at least as recent as the load, or will be followed by the one that is
+                if (!changed) {
+                    current = loaded;
+                }
+            }
+        } catch (RuntimeException e) {
+            subscription.unsubscribe();
+            throw e;
+        }
+    }
+
+    /**
+     * @return an immutable snapshot of the collection as of the latest change received, empty if its document
+     *   was deleted.
+     */
+    public synchronized T get() {
+        return current;
+    }
+
+    /**
+     * @return the CAS of the latest change received, 0 if none was received since the view was created.
+     */
+    public synchronized long cas() {
+        return cas;
+    }
+
+    /**
+     * @return true if the view still follows the changes of the collection, false if it was closed or if the
+     *   change source failed or completed.
+     */
+    public synchronized boolean isLive() {
+        return !closed;
+    }
+
+    /**
+     * @return the error with which the change source failed, null if it didn't.
+     */
+    public synchronized Throwable error() {
+        return error;
+    }
+
+    /**
+     * Stop following the changes of the collection. The view keeps returning its latest snapshot.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        subscription.unsubscribe();
+    }
+
+    private synchronized void apply(T snapshot, long changeCas) {
+        if (closed) {
+            return;
+        }
+        current = snapshot;
+        cas = changeCas;
+        changed = true;
+    }
+
+    private synchronized void fail(Throwable e) {
+        if (!closed) {
+            closed = true;
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.couchbase.client.commons;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
+
+/**
+ * An in-memory {@link ChangeSource}, to which changes are {@link #publish(DocumentChange) published} explicitly.
+ * It stands in for a feed of the cluster's mutations in tests, or relays changes obtained by other means (eg.
+ * from the application's own writes).
+ */
+public class LocalChangeSource implements ChangeSource {
+
+    private final Subject<DocumentChange, DocumentChange> changes =
+            new SerializedSubject<DocumentChange, DocumentChange>(PublishSubject.<DocumentChange>create());
+
+    /**
+     * Publish a change to the current subscribers of the changes of its document. This can be called from any
+     * thread, but the changes of a given document must be published in order.
+     *
+     * @param change the change.
+     */
+    public void publish(DocumentChange change) {
+        changes.onNext(change);
+    }
+
+    @Override
+    public Observable<DocumentChange> changes(final String id) {
+        return changes.filter(new Func1<DocumentChange, Boolean>() {
+            @Override
+            public Boolean call(DocumentChange change) {
+                return change.id().equals(id);
+            }
+        });
+    }
+}
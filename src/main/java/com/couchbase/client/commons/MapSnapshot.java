@@ -0,0 +1,76 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, fully local copy of a {@link CouchbaseMap}, as returned by {@link CouchbaseMap#snapshot()}.
+ * Reading it doesn't involve the network, but it doesn't reflect later changes to the map either: use
+ * {@link #isStale()} to know if the map changed since the snapshot was taken, and {@link #refresh()} to get an
+ * up-to-date snapshot.
+ *
+ * Note that JSON sub-objects and sub-arrays in the snapshot should be treated as read-only.
+ *
+ * @param <V> the type of values in the map.
+ */
+public final class MapSnapshot<V> extends AbstractMap<String, V> {
+
+    private final CouchbaseMap<V> source;
+    private final Map<String, V> entries;
+    private final long cas;
+
+    MapSnapshot(CouchbaseMap<V> source, Map<String, V> entries, long cas) {
+        this.source = source;
+        this.entries = Collections.unmodifiableMap(entries);
+        this.cas = cas;
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return entries.entrySet();
+    }
+
+    @Override
+    public V get(Object key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the CAS of the document at the time the snapshot was taken.
+     */
+    public long cas() {
+        return cas;
+    }
+
+    /**
+     * Check whether the map changed since the snapshot was taken, by comparing the current CAS of its
+     * document (without fetching its content).
+     *
+     * @return true if the map changed (or was deleted) since the snapshot was taken.
+     */
+    public boolean isStale() {
+        return source.collections().currentCas(source.id()) != cas;
+    }
+
+    /**
+     * Get an up-to-date snapshot of the map, which is this snapshot itself unless the map changed since
+     * it was taken.
+     *
+     * @return an up-to-date snapshot.
+     */
+    public MapSnapshot<V> refresh() {
+        return isStale() ? source.snapshot() : this;
+    }
+}
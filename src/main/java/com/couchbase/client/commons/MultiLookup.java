@@ -0,0 +1,104 @@
+package com.couchbase.client.commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.subdoc.AsyncLookupInBuilder;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import rx.Observable;
+
+/**
+ * Performs subdocument lookups of an arbitrary number of paths inside a single document.
+ *
+ * The paths are packed into as few multi-lookups as the server's limit of {@link #MAX_SPECS} paths
+ * per request allows, and when more than one request is needed they are all sent in parallel.
+ */
+final class MultiLookup {
+
+    /**
+     * The maximum number of paths that the server accepts in a single multi-lookup or multi-mutation.
+     */
+    static final int MAX_SPECS = 16;
+
+    private MultiLookup() { }
+
+    /**
+     * Get all the given paths from the document. The result for the path at position <code>i</code> in
+     * <code>paths</code> is found at index <code>i % MAX_SPECS</code> of the fragment at index
+     * <code>i / MAX_SPECS</code> in the returned list.
+     *
+     * @param collections the {@link CouchbaseCollections} through which to interact with the document.
+     * @param id the id of the document.
+     * @param paths the paths to get.
+     * @return the fragments for each chunk of paths, in order.
+     */
+    static List<DocumentFragment<Lookup>> get(CouchbaseCollections collections, String id, List<String> paths) {
+        return lookup(collections, id, paths, Lookup.GET);
+    }
+
+    /**
+     * Check the existence of all the given paths in the document. See
+     * {@link #get(CouchbaseCollections, String, List)} for how results are laid out.
+     *
+     * @param collections the {@link CouchbaseCollections} through which to interact with the document.
+     * @param id the id of the document.
+     * @param paths the paths to check.
+     * @return the fragments for each chunk of paths, in order.
+     */
+    static List<DocumentFragment<Lookup>> exists(CouchbaseCollections collections, String id, List<String> paths) {
+        return lookup(collections, id, paths, Lookup.EXIST);
+    }
+
+    /**
+     * Prepare (but don't subscribe to) the multi-lookups for the given paths.
+     *
+     * @return an {@link Observable} emitting the fragments for each chunk of paths, in order.
+     */
+    static Observable<DocumentFragment<Lookup>> lookupAsync(AsyncBucket bucket, String id,
+            List<String> paths, Lookup mode) {
+        return lookupAsync(bucket, id, paths, Collections.nCopies(paths.size(), mode));
+    }
+
+    /**
+     * Prepare (but don't subscribe to) the multi-lookups for the given paths, each path being looked
+     * up with the {@link Lookup} at the same position in <code>modes</code>.
+     *
+     * @return an {@link Observable} emitting the fragments for each chunk of paths, in order.
+     */
+    static Observable<DocumentFragment<Lookup>> lookupAsync(AsyncBucket bucket, String id,
+            List<String> paths, List<Lookup> modes) {
+        List<Observable<DocumentFragment<Lookup>>> chunks =
+                new ArrayList<Observable<DocumentFragment<Lookup>>>(chunkCount(paths.size()));
+        for (int from = 0; from < paths.size(); from += MAX_SPECS) {
+            int to = Math.min(from + MAX_SPECS, paths.size());
+            AsyncLookupInBuilder builder = bucket.lookupIn(id);
+            for (int i = from; i < to; i++) {
+                if (modes.get(i) == Lookup.GET) {
+                    builder.get(paths.get(i));
+                } else {
+                    builder.exists(paths.get(i));
+                }
+            }
+            chunks.add(builder.execute());
+        }
+        if (chunks.size() == 1) {
+            return chunks.get(0);
+        }
+        return Observable.concatEager(chunks);
+    }
+
+    static int chunkCount(int pathCount) {
+        return (pathCount + MAX_SPECS - 1) / MAX_SPECS;
+    }
+
+    private static List<DocumentFragment<Lookup>> lookup(CouchbaseCollections collections, String id,
+            List<String> paths, Lookup mode) {
+        if (paths.isEmpty()) {
+            return new ArrayList<DocumentFragment<Lookup>>(0);
+        }
+        return collections.await(lookupAsync(collections.bucket().async(), id, paths, mode).toList());
+    }
+}
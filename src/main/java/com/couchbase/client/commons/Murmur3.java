@@ -0,0 +1,118 @@
+package com.couchbase.client.commons;
+
+import java.nio.charset.Charset;
+
+/**
+ * The 128 bits, x64 variant of Austin Appleby's MurmurHash3, used by the probabilistic structures to hash their
+ * elements. Its output is stable across JVMs and versions (unlike {@link Object#hashCode()}), so that clients
+ * sharing a document agree on the positions of the elements.
+ */
+final class Murmur3 {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() { }
+
+    /**
+     * @return the 128 bits hash of the UTF-8 encoding of <code>value</code>, as two longs.
+     */
+    static long[] hash128(String value) {
+        byte[] data = value.getBytes(UTF_8);
+        return hash128(data, 0, data.length, 0);
+    }
+
+    /**
+     * @return the 128 bits hash of <code>length</code> bytes of <code>data</code>, as two longs.
+     */
+    static long[] hash128(byte[] data, int offset, int length, int seed) {
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = seed & 0xFFFFFFFFL;
+        int blocks = length / 16;
+
+        for (int i = 0; i < blocks; i++) {
+            int position = offset + i * 16;
+            long k1 = getLong(data, position);
+            long k2 = getLong(data, position + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = offset + blocks * 16;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xFF) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xFF) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xFF) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xFF) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xFF) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xFF) << 8;
+            case 9: k2 ^= (long) (data[tail + 8] & 0xFF);
+                h2 ^= mixK2(k2);
+            case 8: k1 ^= (long) (data[tail + 7] & 0xFF) << 56;
+            case 7: k1 ^= (long) (data[tail + 6] & 0xFF) << 48;
+            case 6: k1 ^= (long) (data[tail + 5] & 0xFF) << 40;
+            case 5: k1 ^= (long) (data[tail + 4] & 0xFF) << 32;
+            case 4: k1 ^= (long) (data[tail + 3] & 0xFF) << 24;
+            case 3: k1 ^= (long) (data[tail + 2] & 0xFF) << 16;
+            case 2: k1 ^= (long) (data[tail + 1] & 0xFF) << 8;
+            case 1: k1 ^= (long) (data[tail] & 0xFF);
+                h1 ^= mixK1(k1);
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] { h1, h2 };
+    }
+
+    private static long getLong(byte[] data, int position) {
+        //little endian
+        return (data[position] & 0xFFL)
+                | (data[position + 1] & 0xFFL) << 8
+                | (data[position + 2] & 0xFFL) << 16
+                | (data[position + 3] & 0xFFL) << 24
+                | (data[position + 4] & 0xFFL) << 32
+                | (data[position + 5] & 0xFFL) << 40
+                | (data[position + 6] & 0xFFL) << 48
+                | (data[position + 7] & 0xFFL) << 56;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,20 @@
+package com.couchbase.client.commons;
+
+/**
+ * A block of mutations applied to a local view of a collection, see eg.
+ * {@link CouchbaseArrayList#update(Mutator)} and {@link CouchbaseMap#update(Mutator)}.
+ *
+ * As the block is retried when the collection is concurrently modified, it can be invoked several times and
+ * should have no side effect other than mutating the view it is given.
+ *
+ * @param <T> the type of the view.
+ */
+public interface Mutator<T> {
+
+    /**
+     * Mutate the local view of the collection.
+     *
+     * @param view the local view, initialized with the current content of the collection.
+     */
+    void mutate(T view);
+}
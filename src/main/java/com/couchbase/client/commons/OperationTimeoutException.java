@@ -0,0 +1,25 @@
+package com.couchbase.client.commons;
+
+import com.couchbase.client.core.CouchbaseException;
+
+/**
+ * Thrown when an operation of a collection runs out of its time budget, either the
+ * {@link CollectionOptions#operationTimeoutNanos() operation timeout} of its {@link CouchbaseCollections} or the
+ * deadline set with {@link CouchbaseCollections#withTimeout(long, java.util.concurrent.TimeUnit, rx.functions.Func0)}.
+ *
+ * The budget covers all the attempts of an optimistic locking loop and all the requests they make, so the
+ * operation may or may not have been applied when this is thrown (eg. if the budget ran out while waiting for the
+ * response to a mutation).
+ */
+public class OperationTimeoutException extends CouchbaseException {
+
+    private static final long serialVersionUID = -3178406546328174931L;
+
+    public OperationTimeoutException(String message) {
+        super(message);
+    }
+
+    public OperationTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,74 @@
+package com.couchbase.client.commons;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets concurrent identical reads share a single in-flight request (single-flight): the first caller
+ * for a given key performs the read, and callers that arrive while it is in flight wait for and
+ * share its result instead of issuing their own.
+ */
+final class ReadCoalescer {
+
+    private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    /**
+     * Perform the read identified by <code>key</code>, or join an identical read that is already in flight.
+     *
+     * @param key the key identifying the read.
+     * @param loader the actual read, invoked if there is no identical read in flight.
+     * @param fresh true if the caller needs a read that starts after this call, in which case it will
+     *   never join a read that was already in flight (but later callers can join it).
+     * @param timeoutNanos how long to wait for a read that is already in flight.
+     * @return the result of the read.
+     * @throws OperationTimeoutException if the read that was joined didn't complete in time.
+     */
+    <T> T read(String key, Callable<T> loader, boolean fresh, long timeoutNanos) {
+        FutureTask<T> task = new FutureTask<T>(loader);
+        if (fresh) {
+            inFlight.put(key, task);
+        } else {
+            FutureTask<T> existing = (FutureTask<T>) inFlight.putIfAbsent(key, task);
+            if (existing != null) {
+                return await(existing, timeoutNanos);
+            }
+        }
+        try {
+            task.run();
+            return await(task, timeoutNanos);
+        } finally {
+            inFlight.remove(key, task);
+        }
+    }
+
+    /**
+     * @return the number of reads currently in flight.
+     */
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <T> T await(FutureTask<T> task, long timeoutNanos) {
+        try {
+            return task.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new OperationTimeoutException("The operation ran out of its time budget", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a shared read", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.couchbase.client.commons;
+
+/**
+ * How the reads of whole documents are spread over the active node and the replicas of a document (see
+ * {@link CollectionOptions.Builder#replicaReads(ReplicaReads)}).
+ *
+ * <b>Reads served by a replica may be stale</b>: replication is asynchronous, so a replica can lag behind the
+ * active node and return a previous version of the document, or none at all if it was just created. Writes,
+ * and the reads they depend on, always go to the active node.
+ */
+public enum ReplicaReads {
+
+    /**
+     * All reads go to the active node, and are never stale. This is the default.
+     */
+    NONE,
+
+    /**
+     * Each read is sent to the active node and to all the replicas at once, and the first response wins. This
+     * cuts tail latency rather than load, as every read costs one request per copy of the document.
+     */
+    FIRST_RESPONDER,
+
+    /**
+     * Reads take turns between the active node and each replica, so that the read throughput of a hot document
+     * scales with its number of copies. A read from a replica that fails is retried on the active node.
+     */
+    ROUND_ROBIN
+}
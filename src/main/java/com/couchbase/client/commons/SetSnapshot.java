@@ -0,0 +1,69 @@
+package com.couchbase.client.commons;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * An immutable, fully local copy of a {@link CouchbaseArraySet}, as returned by
+ * {@link CouchbaseArraySet#snapshot()}. Reading it doesn't involve the network, but it doesn't reflect later
+ * changes to the set either: use {@link #isStale()} to know if the set changed since the snapshot was taken,
+ * and {@link #refresh()} to get an up-to-date snapshot.
+ *
+ * @param <T> the type of values in the set.
+ */
+public final class SetSnapshot<T> extends AbstractSet<T> {
+
+    private final CouchbaseArraySet<T> source;
+    private final Set<T> elements;
+    private final long cas;
+
+    SetSnapshot(CouchbaseArraySet<T> source, Set<T> elements, long cas) {
+        this.source = source;
+        this.elements = Collections.unmodifiableSet(elements);
+        this.cas = cas;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return elements.iterator();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return elements.contains(o);
+    }
+
+    /**
+     * @return the CAS of the document at the time the snapshot was taken.
+     */
+    public long cas() {
+        return cas;
+    }
+
+    /**
+     * Check whether the set changed since the snapshot was taken, by comparing the current CAS of its
+     * document (without fetching its content).
+     *
+     * @return true if the set changed (or was deleted) since the snapshot was taken.
+     */
+    public boolean isStale() {
+        return source.collections().currentCas(source.id()) != cas;
+    }
+
+    /**
+     * Get an up-to-date snapshot of the set, which is this snapshot itself unless the set changed since
+     * it was taken.
+     *
+     * @return an up-to-date snapshot.
+     */
+    public SetSnapshot<T> refresh() {
+        return isStale() ? source.snapshot() : this;
+    }
+}
@@ -0,0 +1,160 @@
+package com.couchbase.client.commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Space-Saving sketch (Metwally, Agrawal and El Abbadi, "Efficient Computation of Frequent and Top-k Elements
+ * in Data Streams"), which approximates the most frequent items of a stream with a bounded number of counters.
+ *
+ * Once all the counters are taken, an untracked item replaces the item with the smallest count and inherits that
+ * count (recorded as its error). The count of a tracked item thus overestimates its actual frequency by at most its
+ * error, and any item more frequent than <code>total / capacity</code> is guaranteed to be tracked. The counters are
+ * kept in a min-heap, so that each offer is O(log capacity).
+ *
+ * This class is not thread-safe.
+ *
+ * @param <T> the type of items.
+ */
+final class SpaceSaving<T> {
+
+    private final Map<T, Counter<T>> counters;
+    private final Counter<T>[] heap;
+    private int size;
+    private long total;
+
+    SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.counters = new HashMap<T, Counter<T>>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Count an occurrence of an item.
+     */
+    void offer(T item) {
+        total++;
+        Counter<T> counter = counters.get(item);
+        if (counter == null) {
+            if (size < heap.length) {
+                //a free counter, added as a leaf and moved up above the larger counters
+                counter = new Counter<T>(item);
+                counter.count = 1;
+                counters.put(item, counter);
+                siftUp(size++, counter);
+                return;
+            } else {
+                //evict the least frequent item, whose count becomes the error of the new one
+                counter = heap[0];
+                counters.remove(counter.item);
+                counter.item = item;
+                counter.error = counter.count;
+            }
+            counters.put(item, counter);
+        }
+        counter.count++;
+        siftDown(counter.index);
+    }
+
+    /**
+     * @return the number of occurrences counted so far.
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * @param limit the maximum number of items to return.
+     * @return the estimates of the most frequent items, most frequent first.
+     */
+    List<Estimate<T>> top(int limit) {
+        Counter<T>[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, new Comparator<Counter<T>>() {
+            @Override
+            public int compare(Counter<T> a, Counter<T> b) {
+                return a.count < b.count ? 1 : a.count == b.count ? 0 : -1;
+            }
+        });
+        int count = Math.min(limit, sorted.length);
+        List<Estimate<T>> top = new ArrayList<Estimate<T>>(count);
+        for (int i = 0; i < count; i++) {
+            top.add(new Estimate<T>(sorted[i].item, sorted[i].count, sorted[i].error));
+        }
+        return top;
+    }
+
+    void clear() {
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        total = 0;
+    }
+
+    private void siftUp(int index, Counter<T> counter) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    private void siftDown(int index) {
+        Counter<T> counter = heap[index];
+        for (;;) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    /**
+     * The estimated count of an item: its actual count is between <code>count - error</code> and
+     * <code>count</code>.
+     */
+    static final class Estimate<T> {
+        final T item;
+        final long count;
+        final long error;
+
+        Estimate(T item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private static final class Counter<T> {
+        T item;
+        long count;
+        long error;
+        int index;
+
+        Counter(T item) {
+            this.item = item;
+        }
+    }
+}
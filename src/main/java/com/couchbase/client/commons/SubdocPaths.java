@@ -0,0 +1,80 @@
+package com.couchbase.client.commons;
+
+/**
+ * Builds the subdocument paths used by the collections.
+ *
+ * Array index paths (<code>[index]</code>) are built for every indexed operation, so the paths for the
+ * first {@link #CACHED_INDEXES} indexes are preallocated once and reused, which keeps the hot paths of
+ * the collections from allocating a new String on every call.
+ *
+ * Keys of JSON objects are escaped (quoted in backticks) when they contain characters of the path syntax
+ * (<code>.</code>, <code>[</code>, <code>]</code> or <code>`</code>) or are empty, so that any key addresses
+ * the entry of the same name. Other keys are used as is, without copying them.
+ */
+final class SubdocPaths {
+
+    /**
+     * The number of array index paths that are preallocated (indexes 0 to CACHED_INDEXES - 1).
+     */
+    static final int CACHED_INDEXES = 1024;
+
+    private static final String[] INDEX_PATHS = new String[CACHED_INDEXES];
+
+    static {
+        for (int i = 0; i < CACHED_INDEXES; i++) {
+            INDEX_PATHS[i] = "[" + i + "]";
+        }
+    }
+
+    private SubdocPaths() { }
+
+    /**
+     * Get the path to the element at <code>index</code> in a root array.
+     *
+     * @param index the index of the element (negative values address elements from the end of the array).
+     * @return the path, eg. <code>[12]</code>.
+     */
+    static String index(int index) {
+        if (index >= 0 && index < CACHED_INDEXES) {
+            return INDEX_PATHS[index];
+        }
+        return "[" + index + "]";
+    }
+
+    /**
+     * Get the path to the value associated with a key in a root object.
+     *
+     * @param key the key, which must not be null.
+     * @return the path, eg. <code>key</code> or <code>`some.key`</code> (the key itself if it is a String that
+     *   doesn't need escaping, so that no copy is made).
+     */
+    static String key(Object key) {
+        String name = key instanceof String ? (String) key : String.valueOf(key);
+        return needsEscaping(name) ? "`" + name.replace("`", "``") + "`" : name;
+    }
+
+    /**
+     * Get the path to the value associated with a key in an object that is itself the value of
+     * <code>parent</code> in a root object.
+     *
+     * @param parent the key of the object in the root object, which must not need escaping.
+     * @param key the key in the object, which must not be null.
+     * @return the path, eg. <code>parent.key</code> or <code>parent.`some.key`</code>.
+     */
+    static String member(String parent, Object key) {
+        return parent + "." + key(key);
+    }
+
+    private static boolean needsEscaping(String name) {
+        if (name.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.' || c == '[' || c == ']' || c == '`') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
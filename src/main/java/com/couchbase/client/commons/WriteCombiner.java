@@ -0,0 +1,191 @@
+package com.couchbase.client.commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Combines the concurrent additions to the same document into a single mutation: the first caller for a given
+ * key opens a batch and waits for a short window, during which the callers that arrive join the batch instead of
+ * issuing their own mutation. The first caller then flushes the whole batch, and every caller gets the result of
+ * its own addition.
+ *
+ * Within a JVM, contention on a document thus turns into batching instead of CAS mismatches and retries.
+ */
+final class WriteCombiner {
+
+    /**
+     * The maximum number of additions in a batch, to bound the size of a single mutation.
+     */
+    static final int MAX_BATCH_SIZE = 256;
+
+    /**
+     * Performs the additions of a batch.
+     */
+    interface Flusher {
+        /**
+         * Perform all the additions in a single mutation and {@link Pending#complete(boolean) complete} each of
+         * them. If this throws, all the additions of the batch fail with the same exception (an {@link Error} is
+         * rethrown to the caller that opened the batch and wrapped for the others).
+         */
+        void flush(List<Pending> batch);
+    }
+
+    /**
+     * An addition waiting to be flushed.
+     */
+    static final class Pending {
+        final Object value;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private boolean added;
+        private RuntimeException error;
+
+        Pending(Object value) {
+            this.value = value;
+        }
+
+        /**
+         * @param added true if the value was added, false if it wasn't (eg. it was already in a set).
+         */
+        void complete(boolean added) {
+            this.added = added;
+        }
+
+        /**
+         * @return the result of the addition, once completed.
+         */
+        boolean added() {
+            return added;
+        }
+
+        private void fail(RuntimeException error) {
+            this.error = error;
+        }
+
+        private boolean await(long timeoutNanos) {
+            try {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    done.await();
+                } else if (!done.await(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new OperationTimeoutException("The operation ran out of its time budget waiting for a "
+                            + "combined write");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a combined write", e);
+            }
+            if (error != null) {
+                throw error;
+            }
+            return added;
+        }
+    }
+
+    private final long windowNanos;
+    private final ConcurrentMap<String, Batch> open = new ConcurrentHashMap<String, Batch>();
+
+    /**
+     * @param windowNanos how long a batch stays open for other additions to join it.
+     */
+    WriteCombiner(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Add a value, combining the addition with the concurrent ones that share the same <code>key</code>.
+     *
+     * @param key the key identifying the additions that can be combined, typically the document id.
+     * @param value the value to add.
+     * @param flusher performs the additions of the batch, if this caller is the one to open it.
+     * @return the result of the addition, as {@link Pending#complete(boolean) completed} by the flusher.
+     */
+    boolean add(String key, Object value, Flusher flusher) {
+        return add(key, value, flusher, Long.MAX_VALUE);
+    }
+
+    /**
+     * Add a value like {@link #add(String, Object, Flusher)}, waiting at most <code>timeoutNanos</code> for the
+     * batch it joins to be flushed by another caller.
+     *
+     * @throws OperationTimeoutException if the batch wasn't flushed in time, in which case the value may or may
+     *   not be added.
+     */
+    boolean add(String key, Object value, Flusher flusher, long timeoutNanos) {
+        Pending pending = new Pending(value);
+        for (;;) {
+            Batch batch = open.get(key);
+            if (batch == null) {
+                Batch created = new Batch(pending);
+                if (open.putIfAbsent(key, created) == null) {
+                    flush(key, created, flusher);
+                    return pending.await(Long.MAX_VALUE);
+                }
+            } else if (batch.join(pending)) {
+                return pending.await(timeoutNanos);
+            } else {
+                //the batch is full or about to be flushed, make room for a new one
+                open.remove(key, batch);
+            }
+        }
+    }
+
+    /**
+     * @return the number of batches currently open.
+     */
+    int openCount() {
+        return open.size();
+    }
+
+    private void flush(String key, Batch batch, Flusher flusher) {
+        if (windowNanos > 0) {
+            LockSupport.parkNanos(windowNanos);
+        }
+        open.remove(key, batch);
+        List<Pending> pendings = batch.seal();
+        try {
+            flusher.flush(pendings);
+        } catch (RuntimeException e) {
+            for (Pending pending : pendings) {
+                pending.fail(e);
+            }
+        } catch (Throwable e) {
+            //the joiners must not see a batch that silently wasn't added, the opener gets the original error
+            RuntimeException wrapped = new RuntimeException("The combined write failed", e);
+            for (Pending pending : pendings) {
+                pending.fail(wrapped);
+            }
+            throw e;
+        } finally {
+            for (Pending pending : pendings) {
+                pending.done.countDown();
+            }
+        }
+    }
+
+    private static final class Batch {
+        private final List<Pending> pendings = new ArrayList<Pending>();
+        private boolean sealed;
+
+        Batch(Pending first) {
+            pendings.add(first);
+        }
+
+        synchronized boolean join(Pending pending) {
+            if (sealed || pendings.size() >= MAX_BATCH_SIZE) {
+                return false;
+            }
+            pendings.add(pending);
+            return true;
+        }
+
+        synchronized List<Pending> seal() {
+            sealed = true;
+            return Collections.unmodifiableList(pendings);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.couchbase.client.commons.binary;
+
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * Wraps the content of binary collection documents with a small header, optionally compressing it.
+ *
+ * The layout of a document is:
+ * <ul>
+ *     <li>a magic byte, to detect documents that weren't written by a binary collection.</li>
+ *     <li>the {@link Compression#id() id of the compression codec}.</li>
+ *     <li>if compressed, the size of the uncompressed content as a variable-length integer.</li>
+ *     <li>the (possibly compressed) content.</li>
+ * </ul>
+ */
+public final class BinaryFormat {
+
+    static final int MAGIC = 0xCB;
+
+    private BinaryFormat() { }
+
+    /**
+     * Wrap the first <code>length</code> bytes of <code>content</code> into a document.
+     *
+     * @param content the content of the document.
+     * @param length the number of meaningful bytes in <code>content</code>.
+     * @param compression the {@link Compression} to apply.
+     * @return the bytes to store in the document.
+     */
+    public static byte[] wrap(byte[] content, int length, Compression compression) {
+        BinaryWriter out = new BinaryWriter(length + 12);
+        out.writeByte(MAGIC);
+        out.writeByte(compression.id());
+        if (compression == Compression.NONE) {
+            out.writeBytes(content, 0, length);
+        } else {
+            byte[] compressed = compression.compress(content, 0, length);
+            out.writeVarLong(length);
+            out.writeBytes(compressed, 0, compressed.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Unwrap the content of a document written by {@link #wrap(byte[], int, Compression)}.
+     *
+     * @param id the id of the document, for error messages.
+     * @param stored the bytes stored in the document.
+     * @return the uncompressed content.
+     * @throws TranscodingException if the document wasn't written by a binary collection.
+     */
+    public static byte[] unwrap(String id, byte[] stored) {
+        if (stored.length < 2 || (stored[0] & 0xFF) != MAGIC) {
+            throw new TranscodingException("Document " + id + " is not a binary collection document");
+        }
+        Compression compression = Compression.fromId(stored[1] & 0xFF);
+        if (compression == Compression.NONE) {
+            byte[] content = new byte[stored.length - 2];
+            System.arraycopy(stored, 2, content, 0, content.length);
+            return content;
+        }
+        BinaryReader in = new BinaryReader(stored, 2, stored.length - 2);
+        long size = in.readVarLong();
+        if (size > Integer.MAX_VALUE) {
+            throw new TranscodingException("Document " + id + " is too large: " + size);
+        }
+        byte[] content = new byte[(int) size];
+        compression.decompress(stored, in.position(), stored.length - in.position(), content);
+        return content;
+    }
+}
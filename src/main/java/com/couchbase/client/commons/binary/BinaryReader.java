@@ -0,0 +1,94 @@
+package com.couchbase.client.commons.binary;
+
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * Reads values written by a {@link BinaryWriter} from a byte array.
+ */
+public final class BinaryReader {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public int readByte() {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Read <code>length</code> bytes, returning the offset at which they start in {@link #buffer()}.
+     */
+    public int skipBytes(int length) {
+        require(length);
+        int start = position;
+        position += length;
+        return start;
+    }
+
+    /**
+     * Read an unsigned variable-length integer.
+     */
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new TranscodingException("Malformed variable-length integer at " + position);
+    }
+
+    /**
+     * Read a ZigZag-encoded signed variable-length integer.
+     */
+    public long readZigZagVarLong() {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Read 8 bytes as a big endian long.
+     */
+    public long readLong() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @return the underlying buffer.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    private void require(int length) {
+        if (length < 0 || position + length > limit) {
+            throw new TranscodingException("Truncated binary content, needed " + length + " bytes at " + position);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.couchbase.client.commons.binary;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer to which the binary collection formats are written.
+ *
+ * Variable-length integers use the common base 128 encoding (7 bits per byte, least significant group
+ * first, the most significant bit of each byte signaling that more bytes follow). Signed values can be
+ * ZigZag-encoded first so that values of small magnitude stay small whatever their sign.
+ */
+public final class BinaryWriter {
+
+    private byte[] buffer;
+    private int size;
+
+    public BinaryWriter() {
+        this(64);
+    }
+
+    /**
+     * @param initialCapacity the initial capacity of the buffer, in bytes.
+     */
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 16)];
+        this.size = 0;
+    }
+
+    public BinaryWriter writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    /**
+     * Write a value as an unsigned variable-length integer (1 to 10 bytes).
+     */
+    public BinaryWriter writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Write a signed value ZigZag-encoded as a variable-length integer.
+     */
+    public BinaryWriter writeZigZagVarLong(long value) {
+        return writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write a value as 8 bytes, big endian.
+     */
+    public BinaryWriter writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the internal buffer, of which only the first {@link #size()} bytes are meaningful.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return a copy of the bytes written so far.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.couchbase.client.commons.binary;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * The compression codecs that can be applied to the content of binary collection documents.
+ *
+ * Each codec has a stable {@link #id()} that is stored in the document, so that a document can always be
+ * decoded whatever the codec currently configured for writing.
+ */
+public enum Compression {
+
+    /**
+     * No compression.
+     */
+    NONE(0) {
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return copy;
+        }
+
+        @Override
+        void decompress(byte[] data, int offset, int length, byte[] target) {
+            System.arraycopy(data, offset, target, 0, length);
+        }
+    },
+
+    /**
+     * DEFLATE (as implemented by {@link java.util.zip.Deflater}), favoring speed over ratio.
+     */
+    DEFLATE(1) {
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(data, offset, length);
+                deflater.finish();
+                BinaryWriter out = new BinaryWriter(length / 2 + 16);
+                byte[] chunk = new byte[Math.min(Math.max(length, 64), 64 * 1024)];
+                while (!deflater.finished()) {
+                    int written = deflater.deflate(chunk);
+                    out.writeBytes(chunk, 0, written);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        void decompress(byte[] data, int offset, int length, byte[] target) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data, offset, length);
+                int read = 0;
+                while (read < target.length && !inflater.finished()) {
+                    int n = inflater.inflate(target, read, target.length - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != target.length) {
+                    throw new TranscodingException("Truncated DEFLATE content");
+                }
+            } catch (DataFormatException e) {
+                throw new TranscodingException("Malformed DEFLATE content", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    },
+
+    /**
+     * Snappy (as implemented by a pure Java {@link SnappyCodec}), which compresses less than
+     * {@link #DEFLATE} but is several times faster, especially to decompress.
+     */
+    SNAPPY(2) {
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            return SnappyCodec.compress(data, offset, length);
+        }
+
+        @Override
+        void decompress(byte[] data, int offset, int length, byte[] target) {
+            SnappyCodec.decompress(data, offset, length, target);
+        }
+    };
+
+    private final int id;
+
+    Compression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the identifier of the codec, as stored in documents.
+     */
+    public int id() {
+        return id;
+    }
+
+    abstract byte[] compress(byte[] data, int offset, int length);
+
+    abstract void decompress(byte[] data, int offset, int length, byte[] target);
+
+    static Compression fromId(int id) {
+        for (Compression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new TranscodingException("Unknown compression codec " + id);
+    }
+}
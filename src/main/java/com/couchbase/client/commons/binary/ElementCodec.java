@@ -0,0 +1,28 @@
+package com.couchbase.client.commons.binary;
+
+/**
+ * Encodes and decodes the elements of a binary collection. See {@link ElementCodecs} for the
+ * provided implementations.
+ *
+ * @param <E> the type of elements.
+ */
+public interface ElementCodec<E> {
+
+    /**
+     * Write an element.
+     *
+     * @param element the element to write.
+     * @param out the {@link BinaryWriter} to write to.
+     * @throws ClassCastException if the element is of an unsupported type.
+     * @throws NullPointerException if the element is null and the codec doesn't support nulls.
+     */
+    void write(E element, BinaryWriter out);
+
+    /**
+     * Read an element.
+     *
+     * @param in the {@link BinaryReader} to read from.
+     * @return the element.
+     */
+    E read(BinaryReader in);
+}
@@ -0,0 +1,71 @@
+package com.couchbase.client.commons.binary;
+
+import java.nio.charset.Charset;
+
+/**
+ * The {@link ElementCodec ElementCodecs} provided for binary collections.
+ */
+public final class ElementCodecs {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ElementCodecs() { }
+
+    /**
+     * Length-prefixed UTF-8 strings (the length is a variable-length integer). Supports nulls.
+     */
+    public static final ElementCodec<String> STRING = new ElementCodec<String>() {
+        @Override
+        public void write(String element, BinaryWriter out) {
+            if (element == null) {
+                out.writeVarLong(0);
+                return;
+            }
+            byte[] bytes = element.getBytes(UTF_8);
+            //lengths are shifted by one to make room for null
+            out.writeVarLong(bytes.length + 1L);
+            out.writeBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public String read(BinaryReader in) {
+            long length = in.readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int size = (int) (length - 1);
+            int offset = in.skipBytes(size);
+            return new String(in.buffer(), offset, size, UTF_8);
+        }
+    };
+
+    /**
+     * ZigZag variable-length longs: 1 byte for values in [-64, 63], at most 10 bytes. Doesn't support nulls.
+     */
+    public static final ElementCodec<Long> LONG = new ElementCodec<Long>() {
+        @Override
+        public void write(Long element, BinaryWriter out) {
+            out.writeZigZagVarLong(element);
+        }
+
+        @Override
+        public Long read(BinaryReader in) {
+            return in.readZigZagVarLong();
+        }
+    };
+
+    /**
+     * 8 bytes IEEE 754 doubles. Doesn't support nulls.
+     */
+    public static final ElementCodec<Double> DOUBLE = new ElementCodec<Double>() {
+        @Override
+        public void write(Double element, BinaryWriter out) {
+            out.writeLong(Double.doubleToLongBits(element));
+        }
+
+        @Override
+        public Double read(BinaryReader in) {
+            return Double.longBitsToDouble(in.readLong());
+        }
+    };
+}
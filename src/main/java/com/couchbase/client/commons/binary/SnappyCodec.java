@@ -0,0 +1,172 @@
+package com.couchbase.client.commons.binary;
+
+import com.couchbase.client.java.error.TranscodingException;
+
+/**
+ * A pure Java implementation of the Snappy block format (see
+ * <a href="https://github.com/google/snappy/blob/master/format_description.txt">format description</a>).
+ *
+ * The compressor is a greedy LZ77 matcher over a hash table of 4 bytes sequences, which trades compression ratio
+ * for speed much like the reference implementation. Back references are limited to 64KB, so only the literal and
+ * 1 and 2 bytes offset copy elements are emitted, but the decompressor accepts all the elements of the format.
+ */
+final class SnappyCodec {
+
+    private static final int HASH_TABLE_BITS = 14;
+    private static final int MAX_OFFSET = 65535;
+    private static final int MIN_MATCH = 4;
+
+    private static final int TAG_LITERAL = 0;
+    private static final int TAG_COPY_1 = 1;
+    private static final int TAG_COPY_2 = 2;
+
+    private SnappyCodec() { }
+
+    static byte[] compress(byte[] data, int offset, int length) {
+        //worst case is all literals: a tag of up to 5 bytes every 2^32 bytes, so 1/6 more is plenty
+        BinaryWriter out = new BinaryWriter(32 + length + length / 6);
+        out.writeVarLong(length);
+
+        int[] table = new int[1 << HASH_TABLE_BITS];
+        int end = offset + length;
+        //matches need MIN_MATCH readable bytes
+        int matchLimit = end - MIN_MATCH;
+        int literalStart = offset;
+        int position = offset;
+
+        while (position <= matchLimit) {
+            int hash = hash(data, position);
+            //entries are stored +1 so that 0 means empty
+            int candidate = table[hash] - 1 + offset;
+            table[hash] = position - offset + 1;
+
+            if (candidate < offset || position - candidate > MAX_OFFSET || !equals4(data, candidate, position)) {
+                //like the reference implementation, skip faster over data that doesn't compress
+                position += 1 + ((position - literalStart) >>> 5);
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < end && data[candidate + matchLength] == data[position + matchLength]) {
+                matchLength++;
+            }
+
+            writeLiteral(data, literalStart, position - literalStart, out);
+            writeCopy(position - candidate, matchLength, out);
+
+            position += matchLength;
+            literalStart = position;
+        }
+        writeLiteral(data, literalStart, end - literalStart, out);
+        return out.toByteArray();
+    }
+
+    static void decompress(byte[] data, int offset, int length, byte[] target) {
+        BinaryReader in = new BinaryReader(data, offset, length);
+        long expected = in.readVarLong();
+        if (expected != target.length) {
+            throw new TranscodingException("Snappy content has size " + expected + ", expected " + target.length);
+        }
+
+        int written = 0;
+        while (in.hasRemaining()) {
+            int tag = in.readByte();
+            int copyLength;
+            int copyOffset;
+            switch (tag & 0x03) {
+                case TAG_LITERAL:
+                    int literalLength = tag >>> 2;
+                    if (literalLength >= 60) {
+                        int bytes = literalLength - 59;
+                        literalLength = 0;
+                        for (int i = 0; i < bytes; i++) {
+                            literalLength |= in.readByte() << (8 * i);
+                        }
+                    }
+                    literalLength++;
+                    if (literalLength <= 0 || written + literalLength > target.length) {
+                        throw new TranscodingException("Malformed Snappy content: literal overflows");
+                    }
+                    System.arraycopy(in.buffer(), in.skipBytes(literalLength), target, written, literalLength);
+                    written += literalLength;
+                    continue;
+                case TAG_COPY_1:
+                    copyLength = ((tag >>> 2) & 0x07) + 4;
+                    copyOffset = ((tag >>> 5) << 8) | in.readByte();
+                    break;
+                case TAG_COPY_2:
+                    copyLength = (tag >>> 2) + 1;
+                    copyOffset = in.readByte() | (in.readByte() << 8);
+                    break;
+                default:
+                    //copy with a 4 bytes offset
+                    copyLength = (tag >>> 2) + 1;
+                    copyOffset = in.readByte() | (in.readByte() << 8) | (in.readByte() << 16) | (in.readByte() << 24);
+                    break;
+            }
+            if (copyOffset <= 0 || copyOffset > written || written + copyLength > target.length) {
+                throw new TranscodingException("Malformed Snappy content: invalid copy");
+            }
+            //byte by byte, as the source and destination can overlap
+            for (int i = 0; i < copyLength; i++) {
+                target[written] = target[written - copyOffset];
+                written++;
+            }
+        }
+        if (written != target.length) {
+            throw new TranscodingException("Truncated Snappy content");
+        }
+    }
+
+    private static void writeLiteral(byte[] data, int start, int length, BinaryWriter out) {
+        if (length == 0) {
+            return;
+        }
+        int n = length - 1;
+        if (n < 60) {
+            out.writeByte(TAG_LITERAL | (n << 2));
+        } else {
+            int bytes = n < (1 << 8) ? 1 : n < (1 << 16) ? 2 : n < (1 << 24) ? 3 : 4;
+            out.writeByte(TAG_LITERAL | ((59 + bytes) << 2));
+            for (int i = 0; i < bytes; i++) {
+                out.writeByte(n >>> (8 * i));
+            }
+        }
+        out.writeBytes(data, start, length);
+    }
+
+    private static void writeCopy(int copyOffset, int length, BinaryWriter out) {
+        //copies with a 2 bytes offset hold up to 64 bytes, make sure the last one has at least 4 for a 1 byte offset
+        while (length >= 68) {
+            writeCopy2(copyOffset, 64, out);
+            length -= 64;
+        }
+        if (length > 64) {
+            writeCopy2(copyOffset, 60, out);
+            length -= 60;
+        }
+        if (length <= 11 && copyOffset < 2048) {
+            out.writeByte(TAG_COPY_1 | ((length - 4) << 2) | ((copyOffset >>> 8) << 5));
+            out.writeByte(copyOffset);
+        } else {
+            writeCopy2(copyOffset, length, out);
+        }
+    }
+
+    private static void writeCopy2(int copyOffset, int length, BinaryWriter out) {
+        out.writeByte(TAG_COPY_2 | ((length - 1) << 2));
+        out.writeByte(copyOffset);
+        out.writeByte(copyOffset >>> 8);
+    }
+
+    private static int hash(byte[] data, int position) {
+        int value = (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8
+                | (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 24;
+        return (value * 0x1E35A7BD) >>> (32 - HASH_TABLE_BITS);
+    }
+
+    private static boolean equals4(byte[] data, int a, int b) {
+        return data[a] == data[b] && data[a + 1] == data[b + 1]
+                && data[a + 2] == data[b + 2] && data[a + 3] == data[b + 3];
+    }
+}
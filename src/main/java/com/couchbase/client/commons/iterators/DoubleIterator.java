@@ -0,0 +1,20 @@
+package com.couchbase.client.commons.iterators;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over primitive <code>double</code> values, which doesn't box them.
+ */
+public interface DoubleIterator {
+
+    /**
+     * @return true if the iteration has more elements.
+     */
+    boolean hasNext();
+
+    /**
+     * @return the next element in the iteration.
+     * @throws NoSuchElementException if the iteration has no more elements.
+     */
+    double nextDouble();
+}
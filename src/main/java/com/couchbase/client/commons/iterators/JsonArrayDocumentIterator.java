@@ -2,11 +2,13 @@ package com.couchbase.client.commons.iterators;
 
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import com.couchbase.client.core.message.ResponseStatus;
 import com.couchbase.client.core.message.kv.subdoc.multi.Mutation;
 import com.couchbase.client.java.Bucket;
 import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.subdoc.MultiMutationException;
 import com.couchbase.client.java.subdoc.DocumentFragment;
@@ -21,31 +23,42 @@ public class JsonArrayDocumentIterator<E> implements Iterator<E> {
     private final String id;
 
     private long cas;
-    private final Iterator<E> delegate;
+    private final JsonArray content;
+    private int cursor = 0;
     private int lastVisited = -1;
     private boolean doneRemove = false;
 
     public JsonArrayDocumentIterator(Bucket bucket, String id) {
-        this.bucket = bucket;
-        this.id = id;
+        this(bucket, bucket.get(id, JsonArrayDocument.class));
+    }
 
-        JsonArrayDocument current = bucket.get(id, JsonArrayDocument.class);
-        this.cas = current.cas();
-        this.delegate = (Iterator<E>) current.content().iterator();
+    /**
+     * Create an iterator over an already fetched <code>document</code>. The document's content is never
+     * modified by the iterator, so it can safely be shared with other readers.
+     *
+     * @param bucket the {@link Bucket} from which the document was fetched.
+     * @param document the document to iterate over.
+     */
+    public JsonArrayDocumentIterator(Bucket bucket, JsonArrayDocument document) {
+        this.bucket = bucket;
+        this.id = document.id();
+        this.cas = document.cas();
+        this.content = document.content();
     }
 
     @Override
     public boolean hasNext() {
-        return delegate.hasNext();
+        return cursor < content.size();
     }
 
     @Override
     public E next() {
-        if (hasNext()) {
-            lastVisited++;
-            doneRemove = false;
+        if (!hasNext()) {
+            throw new NoSuchElementException();
         }
-        return delegate.next();
+        lastVisited++;
+        doneRemove = false;
+        return (E) content.get(cursor++);
     }
 
     @Override
@@ -66,8 +79,7 @@ public class JsonArrayDocumentIterator<E> implements Iterator<E> {
                     .execute();
             //update the cas
             this.cas = itrRemoveResult.cas();
-            //ok the remove succeeded in DB, let's reflect that in the iterator's backing collection and state
-            delegate.remove();
+            //ok the remove succeeded in DB, let's reflect that in the iterator's state
             doneRemove = true;
             lastVisited--;
         } catch (CASMismatchException e) {
@@ -0,0 +1,169 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assume;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscriber;
+
+public class AsyncCallsTest {
+
+    private static final int IN_FLIGHT = 10000;
+
+    @Test
+    public void shouldReturnLastValue() {
+        assertEquals("b", AsyncCalls.await(Observable.just("a", "b"), 1, TimeUnit.SECONDS, true));
+        assertEquals("b", AsyncCalls.await(Observable.just("a", "b"), 1, TimeUnit.SECONDS, false));
+        assertEquals(Long.valueOf(0), AsyncCalls.await(Observable.timer(20, TimeUnit.MILLISECONDS), 1,
+                TimeUnit.SECONDS, true));
+    }
+
+    @Test
+    public void shouldReturnNullWhenEmpty() {
+        assertNull(AsyncCalls.await(Observable.<String>empty(), 1, TimeUnit.SECONDS, true));
+        assertNull(AsyncCalls.await(Observable.<String>empty(), 1, TimeUnit.SECONDS, false));
+    }
+
+    @Test
+    public void shouldRethrowRuntimeExceptions() {
+        IllegalStateException error = new IllegalStateException();
+        for (boolean park : new boolean[] { true, false }) {
+            try {
+                AsyncCalls.await(Observable.<String>error(error), 1, TimeUnit.SECONDS, park);
+                fail();
+            } catch (IllegalStateException e) {
+                assertSame(error, e);
+            }
+        }
+    }
+
+    @Test
+    public void shouldWrapCheckedExceptions() {
+        IOException error = new IOException();
+        for (boolean park : new boolean[] { true, false }) {
+            try {
+                AsyncCalls.await(Observable.<String>error(error), 1, TimeUnit.SECONDS, park);
+                fail();
+            } catch (RuntimeException e) {
+                assertSame(error, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void shouldTimeOut() {
+        for (boolean park : new boolean[] { true, false }) {
+            long start = System.nanoTime();
+            try {
+                AsyncCalls.await(Observable.<String>never(), 50, TimeUnit.MILLISECONDS, park);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    public void shouldFailAndKeepInterruptWhileParked() {
+        Thread.currentThread().interrupt();
+        try {
+            AsyncCalls.await(Observable.<String>never(), 1, TimeUnit.SECONDS, true);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void shouldKeepInterruptWhenCallCompletes() throws InterruptedException {
+        final Thread waiter = Thread.currentThread();
+        final Thread[] completer = new Thread[1];
+        Observable<String> call = Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(final Subscriber<? super String> subscriber) {
+                completer[0] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        //only interrupt once the waiter is parked, then complete right away
+                        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+                            Thread.yield();
+                        }
+                        waiter.interrupt();
+                        subscriber.onNext("a");
+                        subscriber.onCompleted();
+                    }
+                });
+                completer[0].start();
+            }
+        });
+
+        boolean interrupted;
+        try {
+            //the call may complete before the waiter notices the interrupt, or not
+            assertEquals("a", AsyncCalls.await(call, 1, TimeUnit.SECONDS, true));
+            interrupted = Thread.interrupted();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+            interrupted = Thread.interrupted();
+        }
+        assertTrue(interrupted);
+        completer[0].join();
+    }
+
+    /**
+     * Keeps {@value #IN_FLIGHT} parked calls in flight at once, one per virtual thread. Only runs on JDKs with
+     * virtual threads (21+).
+     */
+    @Test
+    public void shouldScaleToManyCallsInFlight() throws Exception {
+        ExecutorService executor = virtualThreadExecutor();
+        Assume.assumeTrue(executor != null);
+        try {
+            final long callMillis = 200;
+            long start = System.nanoTime();
+            List<Future<Long>> calls = new ArrayList<Future<Long>>(IN_FLIGHT);
+            for (int i = 0; i < IN_FLIGHT; i++) {
+                calls.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return AsyncCalls.await(Observable.timer(callMillis, TimeUnit.MILLISECONDS), 30,
+                                TimeUnit.SECONDS, true);
+                    }
+                }));
+            }
+            for (Future<Long> call : calls) {
+                assertEquals(Long.valueOf(0), call.get());
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            //sequential waits would take IN_FLIGHT * callMillis, a pool of platform threads a multiple of callMillis
+            assertTrue(elapsedMillis < 20 * callMillis);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.Test;
+
+public class BitSetContainersTest {
+
+    @Test
+    public void shouldUseArrayContainerForSparseChunks() {
+        long[] words = new long[BitSetContainers.WORDS];
+        BitSetContainers.setRange(words, 3, 4);
+        BitSetContainers.setRange(words, 1000, 1001);
+        BitSetContainers.setRange(words, 65535, 65536);
+
+        byte[] encoded = BitSetContainers.encode(words).toByteArray();
+
+        assertTrue("size " + encoded.length, encoded.length < 10);
+        assertArrayEquals(words, BitSetContainers.decode("id", encoded));
+    }
+
+    @Test
+    public void shouldUseRunContainerForClusteredChunks() {
+        long[] words = new long[BitSetContainers.WORDS];
+        BitSetContainers.setRange(words, 0, 30000);
+        BitSetContainers.setRange(words, 40000, 65536);
+
+        byte[] encoded = BitSetContainers.encode(words).toByteArray();
+
+        assertTrue("size " + encoded.length, encoded.length < 16);
+        assertArrayEquals(words, BitSetContainers.decode("id", encoded));
+        assertEquals(55536, BitSetContainers.cardinality(words));
+    }
+
+    @Test
+    public void shouldUseBitmapContainerForDenseChunks() {
+        long[] words = new long[BitSetContainers.WORDS];
+        Random random = new Random(42);
+        for (int i = 0; i < words.length; i++) {
+            words[i] = random.nextLong();
+        }
+
+        byte[] encoded = BitSetContainers.encode(words).toByteArray();
+
+        assertEquals(1 + BitSetContainers.WORDS * 8, encoded.length);
+        assertArrayEquals(words, BitSetContainers.decode("id", encoded));
+    }
+
+    @Test
+    public void shouldEncodeEmptyChunks() {
+        long[] words = new long[BitSetContainers.WORDS];
+
+        assertArrayEquals(words, BitSetContainers.decode("id", BitSetContainers.encode(words).toByteArray()));
+    }
+
+    @Test
+    public void shouldSetAndClearRanges() {
+        long[] words = new long[BitSetContainers.WORDS];
+        BitSetContainers.setRange(words, 60, 200);
+        BitSetContainers.clearRange(words, 64, 128);
+
+        assertEquals(76, BitSetContainers.cardinality(words));
+        assertEquals(60, BitSetContainers.nextSetBit(words, 0));
+        assertEquals(64, BitSetContainers.nextClearBit(words, 60));
+        assertEquals(128, BitSetContainers.nextSetBit(words, 64));
+        assertEquals(199, BitSetContainers.lastSetBit(words));
+        assertEquals(-1, BitSetContainers.nextSetBit(words, 200));
+        assertEquals(BitSetContainers.CHUNK_BITS, BitSetContainers.nextClearBit(words, BitSetContainers.CHUNK_BITS));
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldRejectUnknownContainers() {
+        BitSetContainers.decode("id", new byte[] { 7 });
+    }
+}
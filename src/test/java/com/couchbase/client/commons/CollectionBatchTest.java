@@ -0,0 +1,195 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CollectionBatchTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String mapId;
+    private String listId;
+
+    @Before
+    public void generateIds() {
+        mapId = UUID.randomUUID().toString();
+        listId = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDocs() {
+        for (String id : new String[] { mapId, listId }) {
+            try {
+                bucket.remove(id);
+            } catch (DocumentDoesNotExistException e) {
+                //ignore
+            }
+        }
+    }
+
+    @Test
+    public void shouldExecuteReadsAndWritesAcrossDocuments() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(mapId, bucket, Collections.singletonMap("foo", "bar"));
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(listId, bucket, "a", "b");
+
+        CollectionBatch batch = new CollectionBatch();
+        CollectionBatch.Result<Void> put = batch.put(map, "baz", 123);
+        CollectionBatch.Result<Object> foo = batch.get(map, "foo");
+        CollectionBatch.Result<Object> baz = batch.get(map, "baz");
+        CollectionBatch.Result<Object> absent = batch.get(map, "absent");
+        CollectionBatch.Result<Boolean> containsFoo = batch.containsKey(map, "foo");
+        CollectionBatch.Result<Void> add = batch.add(list, "c");
+        CollectionBatch.Result<Object> second = batch.get(list, 1);
+        CollectionBatch.Result<Object> third = batch.get(list, 2);
+        CollectionBatch.Result<Object> outOfBounds = batch.get(list, 10);
+        assertEquals(2, batch.documentCount());
+        assertFalse(put.isDone());
+
+        batch.execute();
+
+        assertTrue(put.isSuccess());
+        assertTrue(add.isSuccess());
+        assertEquals("bar", foo.value());
+        assertEquals(123, baz.value());
+        assertNull(absent.value());
+        assertTrue(containsFoo.value());
+        assertEquals("b", second.value());
+        assertEquals("c", third.value());
+        assertFalse(outOfBounds.isSuccess());
+        assertTrue(outOfBounds.error() instanceof IndexOutOfBoundsException);
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void shouldChunkWritesOnSameDocumentInOrder() {
+        CouchbaseArrayList<Integer> list = new CouchbaseArrayList<Integer>(listId, bucket, Collections.<Integer>emptyList());
+        List<Integer> expected = new ArrayList<Integer>();
+
+        CollectionBatch batch = new CollectionBatch();
+        for (int i = 0; i < 40; i++) {
+            batch.add(list, i);
+            expected.add(i);
+        }
+        batch.execute();
+
+        assertEquals(expected, list.getRange(0, 40));
+    }
+
+    @Test
+    public void shouldShareDurabilityWaitAcrossWrites() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .durability(PersistTo.MASTER, ReplicateTo.NONE)
+                .build());
+        CouchbaseArrayList<Integer> list = collections.list(listId, Collections.<Integer>emptyList());
+
+        CollectionBatch batch = new CollectionBatch();
+        List<CollectionBatch.Result<Void>> adds = new ArrayList<CollectionBatch.Result<Void>>();
+        for (int i = 0; i < 40; i++) {
+            adds.add(batch.add(list, i));
+        }
+        batch.execute();
+
+        for (CollectionBatch.Result<Void> add : adds) {
+            assertTrue(add.isSuccess());
+        }
+        assertEquals(40, list.size());
+    }
+
+    @Test
+    public void shouldDecodeElementsOfTypedLists() {
+        CouchbaseLongList list = new CouchbaseLongList(listId, bucket, new long[] { 1L, 2L });
+
+        CollectionBatch batch = new CollectionBatch();
+        CollectionBatch.Result<Long> second = batch.get(list, 1);
+        batch.execute();
+
+        assertEquals(Long.valueOf(2L), second.value());
+    }
+
+    @Test
+    public void shouldFailPendingOperationsOnTimeout() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .operationTimeout(1, TimeUnit.NANOSECONDS)
+                .build());
+        CouchbaseMap<Object> map = collections.map(mapId, Collections.singletonMap("foo", "bar"));
+
+        CollectionBatch batch = new CollectionBatch();
+        CollectionBatch.Result<Void> put = batch.put(map, "baz", 123);
+        CollectionBatch.Result<Object> foo = batch.get(map, "foo");
+        batch.execute();
+
+        assertTrue(put.isDone());
+        assertTrue(put.error() instanceof OperationTimeoutException);
+        assertTrue(foo.isDone());
+        assertTrue(foo.error() instanceof OperationTimeoutException);
+    }
+
+    @Test
+    public void shouldRecordOperationsForHotKeys() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .trackHotKeys(10)
+                .build());
+        CouchbaseMap<Object> map = collections.map(mapId);
+        CouchbaseArrayList<Object> list = collections.list(listId);
+        collections.resetHotKeys();
+
+        CollectionBatch batch = new CollectionBatch();
+        batch.put(map, "hot", 1);
+        batch.get(map, "hot");
+        batch.containsKey(map, "cold");
+        batch.add(list, "a");
+        batch.get(list, 0);
+        batch.execute();
+
+        HotKeyReport report = collections.hotKeys();
+        assertEquals(5, report.operations());
+        assertEquals(0, report.conflicts());
+        assertEquals("hot", report.keysByOperations().get(0).key());
+        assertEquals(2, report.keysByOperations().get(0).count());
+    }
+
+    @Test
+    public void shouldNotExecuteTwice() {
+        CollectionBatch batch = new CollectionBatch();
+        batch.execute();
+        try {
+            batch.execute();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+}
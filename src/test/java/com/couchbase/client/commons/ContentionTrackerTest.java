@@ -0,0 +1,111 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentionTrackerTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldNotSerializeUncontendedDocuments() {
+        ContentionTracker tracker = new ContentionTracker();
+        tracker.conflict("doc");
+        tracker.success("doc");
+
+        assertFalse(tracker.isContended("doc"));
+        assertSame(ContentionTracker.NO_PERMIT, tracker.acquire("doc"));
+        assertSame(ContentionTracker.NO_PERMIT, tracker.acquire("other"));
+    }
+
+    @Test
+    public void shouldDetectRepeatedConflicts() {
+        ContentionTracker tracker = new ContentionTracker();
+        for (int i = 0; i < 3; i++) {
+            tracker.conflict("doc");
+        }
+
+        assertTrue(tracker.isContended("doc"));
+        assertFalse(tracker.isContended("other"));
+    }
+
+    @Test
+    public void shouldSerializeAttemptsOnContendedDocument() throws Exception {
+        final ContentionTracker tracker = new ContentionTracker();
+        for (int i = 0; i < 3; i++) {
+            tracker.conflict("doc");
+        }
+        ContentionTracker.Permit permit = tracker.acquire("doc");
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        Future<Void> other = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                tracker.acquire("doc").release();
+                acquired.countDown();
+                return null;
+            }
+        });
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        permit.release();
+        other.get(5, TimeUnit.SECONDS);
+        assertEquals(0, acquired.getCount());
+    }
+
+    @Test
+    public void shouldGiveUpWaitingForContendedDocument() throws Exception {
+        final ContentionTracker tracker = new ContentionTracker();
+        for (int i = 0; i < 3; i++) {
+            tracker.conflict("doc");
+        }
+        ContentionTracker.Permit permit = tracker.acquire("doc");
+
+        Future<ContentionTracker.Permit> other = executor.submit(new Callable<ContentionTracker.Permit>() {
+            @Override
+            public ContentionTracker.Permit call() {
+                return tracker.acquire("doc", TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        });
+
+        assertNull(other.get(5, TimeUnit.SECONDS));
+        permit.release();
+    }
+
+    @Test
+    public void shouldForgetDocumentOnceConflictsStop() {
+        ContentionTracker tracker = new ContentionTracker();
+        tracker.conflict("doc");
+        assertEquals(1, tracker.trackedCount());
+
+        for (int i = 0; i < 100 && tracker.trackedCount() > 0; i++) {
+            tracker.success("doc");
+        }
+
+        assertEquals(0, tracker.trackedCount());
+    }
+}
@@ -15,11 +15,15 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -209,6 +213,67 @@ public class CouchbaseArrayListTest {
         list.get(4234324);
     }
 
+    @Test
+    public void shouldGetAllIgnoringOutOfBounds() {
+        List<Integer> content = new ArrayList<Integer>();
+        for (int i = 0; i < 40; i++) {
+            content.add(i * 10);
+        }
+        CouchbaseArrayList<Integer> list = new CouchbaseArrayList<Integer>(uuid, bucket, content);
+
+        Map<Integer, Integer> elements = list.getAll(39, 0, 100, 17);
+
+        assertEquals(Arrays.asList(39, 0, 17), new ArrayList<Integer>(elements.keySet()));
+        assertEquals(Integer.valueOf(390), elements.get(39));
+        assertEquals(Integer.valueOf(0), elements.get(0));
+        assertEquals(Integer.valueOf(170), elements.get(17));
+    }
+
+    @Test
+    public void shouldGetRangeTruncatedAtEnd() {
+        List<Integer> content = new ArrayList<Integer>();
+        for (int i = 0; i < 30; i++) {
+            content.add(i);
+        }
+        CouchbaseArrayList<Integer> list = new CouchbaseArrayList<Integer>(uuid, bucket, content);
+
+        assertEquals(content.subList(0, 20), list.getRange(0, 20));
+        assertEquals(content.subList(20, 30), list.getRange(20, 40));
+        assertTrue(list.getRange(40, 60).isEmpty());
+    }
+
+    @Test
+    public void shouldGetUnboundedRangeOfShortList() {
+        List<Integer> content = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            content.add(i);
+        }
+        CouchbaseArrayList<Integer> list = new CouchbaseArrayList<Integer>(uuid, bucket, content);
+
+        assertEquals(content, list.getRange(0, Integer.MAX_VALUE));
+        assertEquals(content.subList(90, 100), list.getRange(90, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testGetAcrossCachedIndexPaths() {
+        List<Integer> content = new ArrayList<Integer>();
+        for (int i = 0; i < SubdocPaths.CACHED_INDEXES + 10; i++) {
+            content.add(i);
+        }
+        CouchbaseArrayList<Integer> list = new CouchbaseArrayList<Integer>(uuid, bucket, content);
+
+        assertEquals(Integer.valueOf(0), list.get(0));
+        assertEquals(Integer.valueOf(SubdocPaths.CACHED_INDEXES - 1), list.get(SubdocPaths.CACHED_INDEXES - 1));
+        assertEquals(Integer.valueOf(SubdocPaths.CACHED_INDEXES), list.get(SubdocPaths.CACHED_INDEXES));
+        assertEquals(Integer.valueOf(SubdocPaths.CACHED_INDEXES + 9), list.get(SubdocPaths.CACHED_INDEXES + 9));
+        try {
+            list.get(SubdocPaths.CACHED_INDEXES + 10);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+
     @Test
     public void testConstructorWithPreExistingDocument() {
         JsonArrayDocument preExisting = JsonArrayDocument.create(uuid, JsonArray.from("test"));
@@ -287,4 +352,201 @@ public class CouchbaseArrayListTest {
         assertTrue(list.contains(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSnapshotIsLocalAndDetectsChanges() {
+        List<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList("a", "b"));
+        ListSnapshot<Object> snapshot = ((CouchbaseArrayList<Object>) list).snapshot();
+
+        assertEquals(Arrays.asList("a", "b"), snapshot);
+        assertFalse(snapshot.isStale());
+        assertSame(snapshot, snapshot.refresh());
+
+        list.add("c");
+        assertEquals(2, snapshot.size());
+        assertTrue(snapshot.isStale());
+        ListSnapshot<Object> refreshed = snapshot.refresh();
+        assertEquals(Arrays.asList("a", "b", "c"), refreshed);
+        assertFalse(refreshed.isStale());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList("a", "b"));
+
+        list.snapshot().add("c");
+    }
+
+    @Test
+    public void testSnapshotIsStaleWhenDeleted() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList("a", "b"));
+        ListSnapshot<Object> snapshot = list.snapshot();
+
+        bucket.remove(uuid);
+
+        assertTrue(snapshot.isStale());
+    }
+
+    @Test
+    public void testUpdateAppliesAllChangesInOrder() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList("a", "b", "c", "d", "e"));
+
+        list.update(new Mutator<List<Object>>() {
+            @Override
+            public void mutate(List<Object> view) {
+                view.remove(0);
+                view.remove("c");
+                view.remove(view.size() - 1);
+                view.add("f");
+                view.add(0, "g");
+                view.set(1, "B");
+            }
+        });
+
+        assertEquals(Arrays.asList("g", "B", "d", "f"), list);
+    }
+
+    @Test
+    public void testUpdateWithManyChangesReplacesDocument() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList(1, 2, 3));
+
+        list.update(new Mutator<List<Object>>() {
+            @Override
+            public void mutate(List<Object> view) {
+                view.clear();
+                for (int i = 0; i < 20; i++) {
+                    view.add(i);
+                }
+            }
+        });
+
+        assertEquals(20, list.size());
+        assertEquals(19, list.get(19));
+    }
+
+    @Test
+    public void testUpdateRetriesOnConcurrentModification() {
+        final CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList("a"));
+        final int[] attempts = { 0 };
+
+        list.update(new Mutator<List<Object>>() {
+            @Override
+            public void mutate(List<Object> view) {
+                if (attempts[0]++ == 0) {
+                    //simulate a concurrent writer
+                    new CouchbaseArrayList<Object>(uuid, bucket).add("concurrent");
+                }
+                view.add("b");
+            }
+        });
+
+        assertEquals(2, attempts[0]);
+        assertEquals(Arrays.asList("a", "concurrent", "b"), list);
+    }
+
+    @Test
+    public void testUpdateDoesNothingWhenMutatorFails() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.asList("a"));
+
+        try {
+            list.update(new Mutator<List<Object>>() {
+                @Override
+                public void mutate(List<Object> view) {
+                    view.add("b");
+                    throw new IllegalStateException("abort");
+                }
+            });
+            fail("expected the mutator's exception");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        assertEquals(Arrays.asList("a"), list);
+    }
+
+    @Test
+    public void testReplace() {
+        List<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.<Object>asList("a", "b", "c"));
+
+        ((CouchbaseArrayList<Object>) list).replace(1, "B");
+
+        assertEquals(Arrays.asList("a", "B", "c"), list);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReplaceOutOfBounds() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, Arrays.<Object>asList("a"));
+
+        list.replace(1, "b");
+    }
+
+    @Test
+    public void testCombinedConcurrentAdds() throws InterruptedException {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .addCombiningWindow(1, TimeUnit.MILLISECONDS)
+                .build());
+        final CouchbaseArrayList<Object> list = collections.list(uuid);
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < 16; t++) {
+            final int writer = t;
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(list.add(writer));
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(16, list.size());
+        for (int i = 0; i < 16; i++) {
+            assertTrue(list.contains(i));
+        }
+    }
+
+    @Test
+    public void testReplicaReads() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .replicaReads(ReplicaReads.ROUND_ROBIN)
+                .build());
+        CouchbaseArrayList<Object> list = collections.list(uuid, Arrays.<Object>asList("a", "b"));
+        assertTrue(list.readsMayBeStale());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("b", list.get(1));
+            assertEquals(2, list.size());
+            assertEquals(Arrays.<Object>asList("a", "b"), new ArrayList<Object>(list));
+        }
+        try {
+            list.get(2);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testLiveView() {
+        CouchbaseArrayList<Object> list = new CouchbaseArrayList<Object>(uuid, bucket, "a");
+        LocalChangeSource source = new LocalChangeSource();
+        LiveView<ListSnapshot<Object>> view = list.liveView(source);
+        assertEquals(Collections.<Object>singletonList("a"), view.get());
+
+        list.add("b");
+        assertEquals(1, view.get().size());
+        JsonArrayDocument current = bucket.get(uuid, JsonArrayDocument.class);
+        source.publish(DocumentChange.mutation(uuid, current.cas(), current.content().toString()));
+        assertEquals(Arrays.<Object>asList("a", "b"), view.get());
+        assertEquals(current.cas(), view.cas());
+
+        view.close();
+        source.publish(DocumentChange.deletion(uuid, current.cas() + 1));
+        assertEquals(2, view.get().size());
+        assertFalse(view.isLive());
+    }
+}
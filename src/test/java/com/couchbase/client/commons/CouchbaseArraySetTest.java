@@ -1,12 +1,17 @@
 package com.couchbase.client.commons;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.couchbase.client.java.Bucket;
 import com.couchbase.client.java.Cluster;
@@ -163,4 +168,51 @@ public class CouchbaseArraySetTest {
 
         assertEquals(0, set.size());
     }
+
+    @Test
+    public void testSnapshotIsLocalAndDetectsChanges() {
+        CouchbaseArraySet<String> set = new CouchbaseArraySet<String>(uuid, bucket);
+        set.add("a");
+        SetSnapshot<String> snapshot = set.snapshot();
+
+        assertTrue(snapshot.contains("a"));
+        assertFalse(snapshot.isStale());
+
+        set.add("b");
+        assertEquals(1, snapshot.size());
+        assertTrue(snapshot.isStale());
+        assertEquals(2, snapshot.refresh().size());
+    }
+
+    @Test
+    public void testCombinedConcurrentAdds() throws InterruptedException {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .addCombiningWindow(1, TimeUnit.MILLISECONDS)
+                .build());
+        final CouchbaseArraySet<Object> set = collections.set(uuid);
+        final AtomicInteger added = new AtomicInteger();
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < 16; t++) {
+            final int writer = t;
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //two writers add each value, only one of them gets true
+                    if (set.add("value" + (writer / 2))) {
+                        added.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(8, added.get());
+        assertEquals(8, set.size());
+    }
 }
@@ -0,0 +1,154 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.commons.binary.ElementCodecs;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseBinaryListTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDoc() {
+        try {
+            bucket.remove(uuid);
+        } catch (DocumentDoesNotExistException e) {
+            //ignore
+        }
+    }
+
+    @Test
+    public void shouldCreateAndMutateStringList() {
+        CouchbaseBinaryList<String> list = CouchbaseBinaryList.ofStrings(uuid, bucket);
+        assertTrue(list.isEmpty());
+
+        list.add("foo");
+        list.add(null);
+        list.add(0, "bar");
+        assertEquals("foo", list.set(1, "baz"));
+        assertEquals(null, list.remove(2));
+
+        assertEquals(Arrays.asList("bar", "baz"), list);
+        assertEquals(2, list.size());
+        assertTrue(list.contains("baz"));
+        assertEquals(Arrays.asList("bar", "baz"), CouchbaseBinaryList.ofStrings(uuid, bucket));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldFailGetOutOfRange() {
+        CouchbaseBinaryList.ofLongs(uuid, bucket).get(0);
+    }
+
+    @Test
+    public void shouldAddAllAndClear() {
+        CouchbaseBinaryList<Long> list = new CouchbaseBinaryList<Long>(uuid, bucket, ElementCodecs.LONG,
+                Arrays.asList(1L, 2L));
+        list.addAll(Arrays.asList(3L, -4L));
+        assertEquals(Arrays.asList(1L, 2L, 3L, -4L), list);
+
+        list.clear();
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void shouldReadCompressedDocumentsWhateverTheCurrentOption() {
+        CouchbaseCollections compressed = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .compression(Compression.DEFLATE)
+                .compressionThreshold(0)
+                .build());
+        List<String> expected = Arrays.asList("a", "b", "c");
+        compressed.binaryList(uuid, ElementCodecs.STRING, expected);
+
+        assertEquals(expected, CouchbaseBinaryList.ofStrings(uuid, bucket));
+    }
+
+    @Test
+    public void shouldRemoveThroughIterator() {
+        CouchbaseBinaryList<Long> list = new CouchbaseBinaryList<Long>(uuid, bucket, ElementCodecs.LONG,
+                Arrays.asList(1L, 2L, 3L));
+        Iterator<Long> iterator = list.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() != 2L) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(Arrays.asList(2L), list);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void shouldFailIteratorRemoveAfterConcurrentModification() {
+        CouchbaseBinaryList<Long> list = new CouchbaseBinaryList<Long>(uuid, bucket, ElementCodecs.LONG,
+                Arrays.asList(1L, 2L, 3L));
+        Iterator<Long> iterator = list.iterator();
+        iterator.next();
+        list.add(4L);
+
+        iterator.remove();
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldRejectJsonDocument() {
+        bucket.upsert(JsonArrayDocument.create(uuid, JsonArray.from(1, 2)));
+
+        CouchbaseBinaryList.ofLongs(uuid, bucket).size();
+    }
+
+    @Test
+    public void shouldKeepSortedLongSetSortedAndDistinct() {
+        CouchbaseSortedLongSet set = new CouchbaseSortedLongSet(uuid, bucket, Arrays.asList(5L, 1L, 5L));
+        assertTrue(set.add(3L));
+        assertFalse(set.add(3L));
+        assertTrue(set.addAll(Arrays.asList(-10L, 1L, 100L)));
+        assertFalse(set.addAll(Arrays.asList(1L, 100L)));
+        assertTrue(set.remove(5L));
+        assertFalse(set.remove(5L));
+
+        assertEquals(4, set.size());
+        assertTrue(set.contains(100L));
+        assertFalse(set.contains(100));
+        assertArrayEquals(new long[] { -10L, 1L, 3L, 100L }, set.toLongArray());
+        assertArrayEquals(new long[] { -10L, 1L, 3L, 100L }, new CouchbaseSortedLongSet(uuid, bucket).toLongArray());
+    }
+}
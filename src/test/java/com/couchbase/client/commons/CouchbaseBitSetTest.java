@@ -0,0 +1,138 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.UUID;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseBitSetTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDocs() {
+        new CouchbaseBitSet(uuid, bucket).clear();
+        bucket.remove(uuid);
+    }
+
+    @Test
+    public void shouldSetGetAndClearBits() {
+        CouchbaseBitSet bits = new CouchbaseBitSet(uuid, bucket);
+        assertTrue(bits.isEmpty());
+
+        assertTrue(bits.set(3));
+        assertFalse(bits.set(3));
+        assertTrue(bits.set(1000000));
+
+        assertTrue(bits.get(3));
+        assertFalse(bits.get(4));
+        assertTrue(bits.get(1000000));
+        assertEquals(2, bits.cardinality());
+        assertEquals(1000001, bits.length());
+
+        assertTrue(bits.clear(3));
+        assertFalse(bits.clear(3));
+        assertEquals(1000000, bits.nextSetBit(0));
+        assertEquals(-1, bits.nextSetBit(1000001));
+    }
+
+    @Test
+    public void shouldSetAndClearRangesAcrossChunks() {
+        CouchbaseBitSet bits = new CouchbaseBitSet(uuid, bucket);
+
+        bits.set(60000, 200000);
+        bits.clear(70000, 131072);
+
+        BitSet expected = new BitSet();
+        expected.set(60000, 200000);
+        expected.clear(70000, 131072);
+        assertEquals(expected, bits.toBitSet());
+        assertEquals(expected.cardinality(), bits.cardinality());
+        assertEquals(131072, bits.nextSetBit(70000));
+    }
+
+    @Test
+    public void shouldCombineWithOtherBitSets() {
+        CouchbaseBitSet bits = new CouchbaseBitSet(uuid, bucket);
+        bits.set(1);
+        bits.set(100000);
+
+        BitSet other = new BitSet();
+        other.set(2);
+        other.set(100000);
+        other.set(300000);
+        bits.or(other);
+
+        BitSet mask = new BitSet();
+        mask.set(1);
+        mask.set(300000);
+        bits.and(mask);
+
+        assertEquals(mask, bits.toBitSet());
+    }
+
+    @Test
+    public void shouldClearAllBits() {
+        CouchbaseBitSet bits = new CouchbaseBitSet(uuid, bucket);
+        bits.set(1);
+        bits.set(500000);
+
+        bits.clear();
+
+        assertTrue(bits.isEmpty());
+        assertEquals(0, bits.length());
+
+        //bits set after clear() are seen by the operations on the whole set
+        assertTrue(bits.set(500001));
+        assertEquals(1, bits.cardinality());
+        assertEquals(500001, bits.nextSetBit(0));
+    }
+
+    @Test
+    public void shouldHonorCollectionOptions() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .durability(PersistTo.MASTER, ReplicateTo.NONE)
+                .parkingCalls(true)
+                .build());
+        CouchbaseBitSet bits = collections.bitSet(uuid);
+        assertTrue(bits.set(1));
+        bits.set(100000, 100010);
+        assertTrue(bits.clear(1));
+
+        BitSet expected = new BitSet();
+        expected.set(100000, 100010);
+        assertEquals(expected, bits.toBitSet());
+    }
+}
@@ -0,0 +1,54 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CouchbaseBloomFilterSizingTest {
+
+    @Test
+    public void shouldSizeLikeClassicBloomFilter() {
+        int blocks = CouchbaseBloomFilter.blocks(1000000, 0.01);
+        long bits = (long) blocks * CouchbaseBloomFilter.BLOCK_BITS;
+
+        //a classic Bloom filter needs ~9.6 bits per element for 1%, plus 10% for blocking
+        assertTrue(bits > 10500000 && bits < 10600000);
+        assertEquals(7, CouchbaseBloomFilter.hashes(1000000, bits));
+    }
+
+    @Test
+    public void shouldMeetFalsePositiveRate() {
+        int expected = 100000;
+        double fpp = 0.01;
+        int blocks = CouchbaseBloomFilter.blocks(expected, fpp);
+        int hashes = CouchbaseBloomFilter.hashes(expected, (long) blocks * CouchbaseBloomFilter.BLOCK_BITS);
+        //simulate the filter locally
+        long[] words = new long[blocks * CouchbaseBloomFilter.WORDS_PER_BLOCK];
+
+        for (int i = 0; i < expected; i++) {
+            long[] masks = new long[CouchbaseBloomFilter.WORDS_PER_BLOCK];
+            int block = CouchbaseBloomFilter.block(Murmur3.hash128("in" + i), blocks, hashes, masks);
+            for (int w = 0; w < masks.length; w++) {
+                words[block * CouchbaseBloomFilter.WORDS_PER_BLOCK + w] |= masks[w];
+            }
+        }
+        int falsePositives = 0;
+        int probes = 100000;
+        for (int i = 0; i < probes; i++) {
+            long[] masks = new long[CouchbaseBloomFilter.WORDS_PER_BLOCK];
+            int block = CouchbaseBloomFilter.block(Murmur3.hash128("out" + i), blocks, hashes, masks);
+            boolean all = true;
+            for (int w = 0; w < masks.length; w++) {
+                long word = words[block * CouchbaseBloomFilter.WORDS_PER_BLOCK + w];
+                all &= (word & masks[w]) == masks[w];
+            }
+            if (all) {
+                falsePositives++;
+            }
+        }
+
+        double rate = (double) falsePositives / probes;
+        assertTrue("false positive rate " + rate, rate < fpp * 1.2);
+    }
+}
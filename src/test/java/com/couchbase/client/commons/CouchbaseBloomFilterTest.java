@@ -0,0 +1,99 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseBloomFilterTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDocs() {
+        try {
+            new CouchbaseBloomFilter(uuid, bucket).clear();
+            bucket.remove(uuid);
+        } catch (DocumentDoesNotExistException e) {
+            //ignore
+        }
+    }
+
+    @Test
+    public void shouldContainPutElements() {
+        CouchbaseBloomFilter filter = new CouchbaseBloomFilter(uuid, bucket, 1000, 0.01);
+
+        assertFalse(filter.mightContain("a"));
+        assertTrue(filter.put("a"));
+        assertFalse(filter.put("a"));
+
+        assertTrue(filter.mightContain("a"));
+        assertFalse(filter.mightContain("b"));
+    }
+
+    @Test
+    public void shouldReopenWithSizing() {
+        CouchbaseBloomFilter filter = new CouchbaseBloomFilter(uuid, bucket, 100000, 0.001);
+        filter.put("a");
+
+        CouchbaseBloomFilter reopened = new CouchbaseBloomFilter(uuid, bucket);
+        CouchbaseBloomFilter recreated = new CouchbaseBloomFilter(uuid, bucket, 10, 0.5);
+
+        assertEquals(filter.bitSize(), reopened.bitSize());
+        assertEquals(filter.hashCount(), reopened.hashCount());
+        assertEquals(100000, recreated.expectedInsertions());
+        assertTrue(reopened.mightContain("a"));
+        assertTrue(recreated.mightContain("a"));
+    }
+
+    @Test
+    public void shouldSpanSeveralChunks() {
+        CouchbaseBloomFilter filter = new CouchbaseBloomFilter(uuid, bucket, 200000, 0.01);
+        assertTrue(filter.bitSize() > CouchbaseBloomFilter.BLOCKS_PER_DOCUMENT * CouchbaseBloomFilter.BLOCK_BITS);
+
+        for (int i = 0; i < 100; i++) {
+            filter.put("element" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(filter.mightContain("element" + i));
+        }
+
+        filter.clear();
+        assertFalse(filter.mightContain("element0"));
+    }
+
+    @Test(expected = DocumentDoesNotExistException.class)
+    public void shouldFailToOpenMissingFilter() {
+        new CouchbaseBloomFilter(uuid, bucket);
+    }
+}
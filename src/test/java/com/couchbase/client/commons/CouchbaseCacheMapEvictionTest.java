@@ -0,0 +1,71 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import org.junit.Test;
+
+public class CouchbaseCacheMapEvictionTest {
+
+    private static final long NOW = 10000L;
+
+    private static JsonObject usage() {
+        return JsonObject.create()
+                .put("a", JsonArray.from(300L, 10L))
+                .put("b", JsonArray.from(100L, 20L))
+                .put("c", JsonArray.from(200L, 30L));
+    }
+
+    @Test
+    public void shouldNotEvictWithinBudget() {
+        EvictionPolicy eviction = EvictionPolicy.builder().maxEntries(4).maxBytes(100).build();
+
+        assertTrue(CouchbaseCacheMap.victims(usage(), JsonObject.empty(), "d", 40, eviction, NOW).isEmpty());
+        //overwriting an entry doesn't count it twice
+        assertTrue(CouchbaseCacheMap.victims(usage(), JsonObject.empty(), "c", 70, eviction, NOW).isEmpty());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedOverMaxEntries() {
+        EvictionPolicy eviction = EvictionPolicy.builder().maxEntries(2).build();
+
+        assertEquals(Arrays.asList("b", "c"),
+                CouchbaseCacheMap.victims(usage(), JsonObject.empty(), "d", 1, eviction, NOW));
+        assertEquals(Collections.singletonList("b"),
+                CouchbaseCacheMap.victims(usage(), JsonObject.empty(), "a", 1, eviction, NOW));
+    }
+
+    @Test
+    public void shouldEvictUntilUnderMaxBytes() {
+        EvictionPolicy eviction = EvictionPolicy.builder().maxBytes(60).build();
+
+        //60 bytes used, 25 more need the 20 and 30 bytes of the two least recently used entries
+        assertEquals(Arrays.asList("b", "c"),
+                CouchbaseCacheMap.victims(usage(), JsonObject.empty(), "d", 25, eviction, NOW));
+    }
+
+    @Test
+    public void shouldEvictExpiredEntriesFirst() {
+        EvictionPolicy eviction = EvictionPolicy.builder().maxEntries(3).build();
+        JsonObject expiries = JsonObject.create().put("a", NOW - 1).put("c", NOW + 1);
+
+        assertEquals(Collections.singletonList("a"),
+                CouchbaseCacheMap.victims(usage(), expiries, "d", 1, eviction, NOW));
+    }
+
+    @Test
+    public void shouldMeasureEntriesAsJson() {
+        assertEquals(3 + 7, CouchbaseCacheMap.entrySize("key", "value"));
+        assertEquals(1 + 11, CouchbaseCacheMap.entrySize("k", JsonObject.create().put("a", JsonArray.from(1, 2))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeBounds() {
+        EvictionPolicy.builder().maxEntries(-1);
+    }
+}
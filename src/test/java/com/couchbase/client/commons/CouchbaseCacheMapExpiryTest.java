@@ -0,0 +1,41 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import org.junit.Test;
+
+public class CouchbaseCacheMapExpiryTest {
+
+    @Test
+    public void shouldExpireAtDeadline() {
+        assertFalse(CouchbaseCacheMap.isExpired(1000L, 999L));
+        assertTrue(CouchbaseCacheMap.isExpired(1000L, 1000L));
+        //small timestamps decode as integers
+        assertTrue(CouchbaseCacheMap.isExpired(5, 1000L));
+    }
+
+    @Test
+    public void shouldListExpiredKeysUpToLimit() {
+        JsonObject expiries = JsonObject.create()
+                .put("a", 100L)
+                .put("b", 200L)
+                .put("c", 300L)
+                .put("d", 50L);
+
+        assertEquals(Arrays.asList("a", "d"), CouchbaseCacheMap.expiredKeys(expiries, 150L, null, 10));
+        assertEquals(Collections.singletonList("d"), CouchbaseCacheMap.expiredKeys(expiries, 150L, "a", 10));
+        assertEquals(2, CouchbaseCacheMap.expiredKeys(expiries, 1000L, null, 2).size());
+        assertTrue(CouchbaseCacheMap.expiredKeys(expiries, 10L, null, 10).isEmpty());
+    }
+
+    @Test
+    public void shouldSweepWithinMultiMutationLimit() {
+        assertTrue(2 + 2 * CouchbaseCacheMap.SWEEP_BATCH <= MultiLookup.MAX_SPECS);
+    }
+}
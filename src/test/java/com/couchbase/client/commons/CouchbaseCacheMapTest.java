@@ -0,0 +1,193 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseCacheMapTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDoc() {
+        try {
+            bucket.remove(uuid);
+        } catch (DocumentDoesNotExistException e) {
+            //ignore
+        }
+    }
+
+    @Test
+    public void shouldPutGetAndRemove() {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket);
+
+        assertNull(map.put("some.key", "a"));
+        assertEquals("a", map.put("some.key", "b"));
+
+        assertEquals("b", map.get("some.key"));
+        assertTrue(map.containsKey("some.key"));
+        assertEquals(Collections.singletonMap("some.key", "b"), map);
+
+        assertEquals("b", map.remove("some.key"));
+        assertNull(map.remove("some.key"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void shouldHideExpiredEntries() throws InterruptedException {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket);
+        map.put("short", "a", 100, TimeUnit.MILLISECONDS);
+        map.put("long", "b", 1, TimeUnit.HOURS);
+
+        Thread.sleep(200);
+
+        assertNull(map.get("short"));
+        assertFalse(map.containsKey("short"));
+        assertEquals(Collections.singletonMap("long", "b"), map);
+        assertNull(map.put("short", "c"));
+    }
+
+    @Test
+    public void shouldSweepExpiredEntriesOnWrite() throws InterruptedException {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket);
+        for (int i = 0; i < 3; i++) {
+            map.put("key" + i, "value", 100, TimeUnit.MILLISECONDS);
+        }
+
+        Thread.sleep(200);
+        map.put("other", "value");
+
+        JsonObject content = bucket.get(uuid).content();
+        assertEquals(1, content.getObject(CouchbaseCacheMap.ENTRIES).size());
+        assertEquals(0, content.getObject(CouchbaseCacheMap.EXPIRIES).size());
+    }
+
+    @Test
+    public void shouldPurgeExpiredEntries() throws InterruptedException {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket);
+        for (int i = 0; i < 20; i++) {
+            map.put("key" + i, "value", 100, TimeUnit.MILLISECONDS);
+        }
+        map.put("kept", "value", 1, TimeUnit.HOURS);
+
+        Thread.sleep(200);
+
+        assertEquals(20, map.purgeExpired());
+        assertEquals(0, map.purgeExpired());
+        assertEquals(1, bucket.get(uuid).content().getObject(CouchbaseCacheMap.ENTRIES).size());
+    }
+
+    @Test
+    public void shouldCancelExpiryOnPlainPut() throws InterruptedException {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket);
+        map.put("key", "a", 100, TimeUnit.MILLISECONDS);
+        map.put("key", "b");
+
+        Thread.sleep(200);
+
+        assertEquals("b", map.get("key"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyWrittenEntries() throws InterruptedException {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket, 0,
+                EvictionPolicy.builder().maxEntries(3).build());
+        for (int i = 0; i < 5; i++) {
+            map.put("key" + i, "value");
+            Thread.sleep(5);
+        }
+
+        assertEquals(3, map.size());
+        assertFalse(map.containsKey("key0"));
+        assertFalse(map.containsKey("key1"));
+        assertEquals(3, bucket.get(uuid).content().getObject(CouchbaseCacheMap.USAGE).size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyReadEntriesInAccessOrder() throws InterruptedException {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket, 0,
+                EvictionPolicy.builder().maxEntries(2).accessOrder(true).build());
+        map.put("a", "value");
+        Thread.sleep(5);
+        map.put("b", "value");
+        Thread.sleep(5);
+        map.get("a");
+        Thread.sleep(5);
+
+        map.put("c", "value");
+
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+    }
+
+    @Test
+    public void shouldStayUnderMaxBytes() {
+        CouchbaseCacheMap<String> map = new CouchbaseCacheMap<String>(uuid, bucket, 0,
+                EvictionPolicy.builder().maxBytes(1000).build());
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 90; i++) {
+            value.append('x');
+        }
+        for (int i = 0; i < 50; i++) {
+            map.put("key" + i, value.toString());
+        }
+
+        //each entry takes 4 or 5 bytes of key and 92 bytes of value
+        assertEquals(10, map.size());
+        assertTrue(map.containsKey("key49"));
+    }
+
+    @Test
+    public void shouldHonorCollectionOptions() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .durability(PersistTo.MASTER, ReplicateTo.NONE)
+                .parkingCalls(true)
+                .operationTimeout(5, TimeUnit.SECONDS)
+                .build());
+        CouchbaseCacheMap<Object> map = collections.cacheMap(uuid, 0, EvictionPolicy.builder().maxEntries(2).build());
+        map.put("a", 1);
+        map.put("b", 2, 1, TimeUnit.HOURS);
+        map.put("c", 3);
+        assertEquals(Integer.valueOf(3), map.remove("c"));
+
+        assertEquals(Collections.<String, Object>singletonMap("b", 2), map);
+        assertEquals(0, map.purgeExpired());
+    }
+}
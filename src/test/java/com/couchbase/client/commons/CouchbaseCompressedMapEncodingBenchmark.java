@@ -0,0 +1,54 @@
+package com.couchbase.client.commons;
+
+import com.couchbase.client.commons.binary.BinaryFormat;
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.java.document.json.JsonObject;
+import org.junit.Test;
+
+/**
+ * Compares the size and encoding/decoding time of a multi-MB {@link CouchbaseCompressedMap} document with each
+ * {@link Compression} codec, against plain JSON ({@link Compression#NONE}). Time on the wire is proportional to the
+ * size.
+ *
+ * As its name doesn't match the test patterns, it is left out of the default test run. Run it explicitly with
+ * <code>mvn test -Dtest=CouchbaseCompressedMapEncodingBenchmark</code>.
+ */
+public class CouchbaseCompressedMapEncodingBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    @Test
+    public void benchmarkAgainstPlainJson() {
+        JsonObject content = CouchbaseCompressedMapEncodingTest.sample();
+        int jsonSize = CouchbaseCompressedMap.encode(content).size();
+
+        System.out.println(String.format("Sample of %d bytes of JSON, %d rounds", jsonSize, ROUNDS));
+        for (Compression compression : Compression.values()) {
+            byte[] stored = null;
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                stored = encode(content, compression);
+                CouchbaseCompressedMap.decode("doc", BinaryFormat.unwrap("doc", stored));
+            }
+            long encodeNanos = 0;
+            long decodeNanos = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                stored = encode(content, compression);
+                long encoded = System.nanoTime();
+                CouchbaseCompressedMap.decode("doc", BinaryFormat.unwrap("doc", stored));
+                encodeNanos += encoded - start;
+                decodeNanos += System.nanoTime() - encoded;
+            }
+            System.out.println(String.format("%-8s %9d bytes (%5.1f%% of JSON), encode %7.2f ms, decode %7.2f ms",
+                    compression, stored.length, 100d * stored.length / jsonSize,
+                    encodeNanos / 1e6 / ROUNDS, decodeNanos / 1e6 / ROUNDS));
+        }
+    }
+
+    private static byte[] encode(JsonObject content, Compression compression) {
+        BinaryWriter json = CouchbaseCompressedMap.encode(content);
+        return BinaryFormat.wrap(json.buffer(), json.size(), compression);
+    }
+}
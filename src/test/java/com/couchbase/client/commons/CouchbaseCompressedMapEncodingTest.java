@@ -0,0 +1,57 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.couchbase.client.commons.binary.BinaryFormat;
+import com.couchbase.client.commons.binary.BinaryWriter;
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import org.junit.Test;
+
+/**
+ * Checks the encoding of a multi-MB {@link CouchbaseCompressedMap} document with each {@link Compression} codec.
+ */
+public class CouchbaseCompressedMapEncodingTest {
+
+    static JsonObject sample() {
+        JsonObject content = JsonObject.create();
+        for (int i = 0; i < 20000; i++) {
+            content.put("user::" + i, JsonObject.create()
+                    .put("name", "User " + i)
+                    .put("email", "user" + i + "@example.com")
+                    .put("active", i % 3 != 0)
+                    .put("score", i * 7 % 1000)
+                    .put("tags", JsonArray.from("tag" + (i % 10), "group" + (i % 7))));
+        }
+        return content;
+    }
+
+    @Test
+    public void shouldRoundTripContent() {
+        JsonObject content = sample();
+        for (Compression compression : Compression.values()) {
+            BinaryWriter json = CouchbaseCompressedMap.encode(content);
+            byte[] stored = BinaryFormat.wrap(json.buffer(), json.size(), compression);
+
+            assertEquals(compression.name(), content,
+                    CouchbaseCompressedMap.decode("doc", BinaryFormat.unwrap("doc", stored)));
+        }
+    }
+
+    @Test
+    public void shouldBeSmallerThanPlainJson() {
+        JsonObject content = sample();
+        BinaryWriter json = CouchbaseCompressedMap.encode(content);
+        int jsonSize = json.size();
+
+        int plainSize = BinaryFormat.wrap(json.buffer(), json.size(), Compression.NONE).length;
+        int deflateSize = BinaryFormat.wrap(json.buffer(), json.size(), Compression.DEFLATE).length;
+        int snappySize = BinaryFormat.wrap(json.buffer(), json.size(), Compression.SNAPPY).length;
+
+        assertTrue("Uncompressed documents should only add a header", plainSize - jsonSize < 16);
+        assertTrue("Snappy should compress JSON at least 3 times", snappySize * 3 < jsonSize);
+        assertTrue("Deflate should compress at least as well as Snappy", deflateSize <= snappySize);
+    }
+}
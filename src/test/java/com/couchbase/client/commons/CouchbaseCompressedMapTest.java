@@ -0,0 +1,169 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.couchbase.client.commons.binary.Compression;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseCompressedMapTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDoc() {
+        try {
+            bucket.remove(uuid);
+        } catch (DocumentDoesNotExistException e) {
+            //ignore
+        }
+    }
+
+    @Test
+    public void shouldPutGetAndRemove() {
+        CouchbaseCompressedMap<Object> map = new CouchbaseCompressedMap<Object>(uuid, bucket);
+        assertNull(map.put("foo", "bar"));
+        assertEquals("bar", map.put("foo", "baz"));
+        map.put("sub", JsonObject.create().put("a", 1));
+
+        assertEquals("baz", map.get("foo"));
+        assertEquals(1, ((JsonObject) map.get("sub")).getInt("a").intValue());
+        assertTrue(map.containsKey("sub"));
+        assertEquals("baz", map.remove("foo"));
+        assertNull(map.remove("foo"));
+        assertEquals(1, map.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldRejectNullKeyInContainsKey() {
+        CouchbaseCompressedMap<Object> map = new CouchbaseCompressedMap<Object>(uuid, bucket);
+        map.put("null", "value");
+        map.containsKey(null);
+    }
+
+    @Test
+    public void shouldCompressLargeDocumentsAndRoundTripThroughConstructor() {
+        Map<String, Object> data = new HashMap<String, Object>();
+        for (int i = 0; i < 5000; i++) {
+            data.put("key" + i, "a fairly repetitive value " + (i % 10));
+        }
+        int jsonSize = JsonObject.from(data).toString().length();
+
+        CouchbaseCompressedMap<Object> map = new CouchbaseCompressedMap<Object>(uuid, bucket, data);
+
+        BinaryDocument stored = bucket.get(uuid, BinaryDocument.class);
+        int storedSize = stored.content().readableBytes();
+        stored.content().release();
+        assertTrue(storedSize * 3 < jsonSize);
+        assertEquals(data, new HashMap<String, Object>(map));
+    }
+
+    @Test
+    public void shouldApplyThresholdAndCodecFromOptions() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .compression(Compression.DEFLATE)
+                .compressionThreshold(1 << 20)
+                .build());
+        Map<String, Object> map = collections.compressedMap(uuid);
+        map.put("foo", "bar");
+
+        BinaryDocument stored = bucket.get(uuid, BinaryDocument.class);
+        String raw = stored.content().toString(Charset.forName("UTF-8"));
+        stored.content().release();
+        //below the threshold, the JSON is stored as is after the header
+        assertTrue(raw.endsWith("{\"foo\":\"bar\"}"));
+        assertEquals("bar", new CouchbaseCompressedMap<Object>(uuid, bucket).get("foo"));
+    }
+
+    @Test
+    public void shouldPutAllAndGetAll() {
+        CouchbaseCompressedMap<Object> map = new CouchbaseCompressedMap<Object>(uuid, bucket);
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("a", 1);
+        data.put("b", 2);
+        map.putAll(data);
+
+        Map<String, Object> all = map.getAll(Arrays.asList("b", "c", "a"));
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(all.keySet().toArray()));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void shouldWriteThroughEntrySet() {
+        CouchbaseCompressedMap<Object> map = new CouchbaseCompressedMap<Object>(uuid, bucket);
+        map.put("a", 1);
+        map.put("b", 2);
+
+        Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Object> entry = iterator.next();
+            if (entry.getKey().equals("a")) {
+                iterator.remove();
+            } else {
+                entry.setValue(3);
+            }
+        }
+
+        assertFalse(map.containsKey("a"));
+        assertEquals(3, map.get("b"));
+    }
+
+    @Test
+    public void shouldHonorCollectionOptions() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .durability(PersistTo.MASTER, ReplicateTo.NONE)
+                .parkingCalls(true)
+                .operationTimeout(5, TimeUnit.SECONDS)
+                .build());
+        CouchbaseCompressedMap<Object> map = collections.compressedMap(uuid);
+        map.put("key", "value");
+        map.put("other", 1);
+        assertEquals("value", map.remove("key"));
+
+        assertEquals(Collections.<String, Object>singletonMap("other", 1), map);
+    }
+}
@@ -0,0 +1,110 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseHyperLogLogTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+
+    @After
+    public void deleteDoc() {
+        try {
+            bucket.remove(uuid);
+        } catch (DocumentDoesNotExistException e) {
+            //ignore
+        }
+    }
+
+    @Test
+    public void shouldEstimateAddedElements() {
+        CouchbaseHyperLogLog hll = new CouchbaseHyperLogLog(uuid, bucket);
+
+        assertTrue(hll.add("a"));
+        assertFalse(hll.add("a"));
+        hll.add("b");
+
+        assertEquals(2, hll.estimate());
+    }
+
+    @Test
+    public void shouldMergeLocalBuffers() {
+        CouchbaseHyperLogLog hll = new CouchbaseHyperLogLog(uuid, bucket, 12);
+        HyperLogLog first = hll.newBuffer();
+        HyperLogLog second = hll.newBuffer();
+        for (int i = 0; i < 50000; i++) {
+            first.add("visitor" + i);
+            second.add("visitor" + (i + 25000));
+        }
+
+        assertTrue(hll.merge(first, second));
+        //merging is idempotent
+        assertFalse(hll.merge(first));
+
+        double error = Math.abs(hll.estimate() - 75000) / 75000.0;
+        assertTrue("error " + error, error < 0.05);
+    }
+
+    @Test
+    public void shouldMergeStoredSketchesAndKeepPrecision() {
+        CouchbaseHyperLogLog hll = new CouchbaseHyperLogLog(uuid, bucket, 10);
+        String otherId = UUID.randomUUID().toString();
+        try {
+            CouchbaseHyperLogLog other = new CouchbaseHyperLogLog(otherId, bucket, 10);
+            other.addAll(Arrays.asList("a", "b", "c"));
+            hll.add("a");
+
+            assertTrue(hll.merge(other));
+
+            assertEquals(3, hll.estimate());
+            assertEquals(3, other.estimate());
+            assertEquals(10, new CouchbaseHyperLogLog(uuid, bucket).precision());
+        } finally {
+            bucket.remove(otherId);
+        }
+    }
+
+    @Test
+    public void shouldClear() {
+        CouchbaseHyperLogLog hll = new CouchbaseHyperLogLog(uuid, bucket);
+        hll.add("a");
+
+        hll.clear();
+
+        assertEquals(0, hll.estimate());
+    }
+}
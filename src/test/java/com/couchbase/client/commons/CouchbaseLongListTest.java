@@ -0,0 +1,149 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+
+import com.couchbase.client.commons.iterators.DoubleIterator;
+import com.couchbase.client.commons.iterators.LongIterator;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.document.JsonArrayDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CouchbaseLongListTest {
+
+    private static Cluster cluster;
+    private static Bucket bucket;
+
+    @BeforeClass
+    public static void setup() {
+        cluster = CouchbaseCluster.create();
+        bucket = cluster.openBucket();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        cluster.disconnect();
+    }
+
+    private String uuid;
+
+    @Before
+    public void generateId() {
+        uuid = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void deleteDoc() {
+        try {
+            bucket.remove(uuid);
+        } catch (DocumentDoesNotExistException e) {
+            //ignore
+        }
+    }
+
+    @Test
+    public void shouldUsePrimitiveAccessors() {
+        CouchbaseLongList list = new CouchbaseLongList(uuid, bucket, new long[] { 1L, Long.MAX_VALUE });
+        list.addLong(-3L);
+
+        assertEquals(3, list.size());
+        assertEquals(1L, list.getLong(0));
+        assertEquals(Long.MAX_VALUE, list.getLong(1));
+        assertArrayEquals(new long[] { 1L, Long.MAX_VALUE, -3L }, list.toLongArray());
+
+        LongIterator iterator = list.longIterator();
+        assertEquals(1L, iterator.nextLong());
+        assertEquals(Long.MAX_VALUE, iterator.nextLong());
+        assertEquals(-3L, iterator.nextLong());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void shouldAppendThroughCollections() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .trackHotKeys(16)
+                .build());
+        CouchbaseLongList longs = collections.longList(uuid, new long[0]);
+        longs.addLong(1L);
+        longs.addLong(2L);
+        assertArrayEquals(new long[] { 1L, 2L }, longs.toLongArray());
+        assertEquals(2, collections.hotKeys().operations());
+
+        collections.resetHotKeys();
+        CouchbaseDoubleList doubles = collections.doubleList(uuid, new double[0]);
+        doubles.addDouble(0.5);
+        assertArrayEquals(new double[] { 0.5 }, doubles.toDoubleArray(), 0);
+        assertEquals(1, collections.hotKeys().operations());
+    }
+
+    @Test
+    public void shouldNormalizeBoxedElementsToLong() {
+        bucket.upsert(JsonArrayDocument.create(uuid, JsonArray.from(1, 2L)));
+        CouchbaseLongList list = new CouchbaseLongList(uuid, bucket);
+
+        Long first = list.get(0);
+        assertEquals(Long.valueOf(1L), first);
+        assertTrue(list.contains(2L));
+        for (Long value : list) {
+            assertTrue(value > 0);
+        }
+    }
+
+    @Test
+    public void shouldRejectNonIntegralElements() {
+        bucket.upsert(JsonArrayDocument.create(uuid, JsonArray.from(1, 1.5)));
+        CouchbaseLongList list = new CouchbaseLongList(uuid, bucket);
+
+        assertEquals(Long.valueOf(1L), list.get(0));
+        try {
+            list.get(1);
+            fail("Expected TranscodingException from get");
+        } catch (TranscodingException e) {
+            //expected
+        }
+        try {
+            list.getLong(1);
+            fail("Expected TranscodingException from getLong");
+        } catch (TranscodingException e) {
+            //expected
+        }
+        try {
+            list.toLongArray();
+            fail("Expected TranscodingException from toLongArray");
+        } catch (TranscodingException e) {
+            //expected
+        }
+        try {
+            list.longIterator();
+            fail("Expected TranscodingException from longIterator");
+        } catch (TranscodingException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void shouldReadInteroperableJsonArray() {
+        bucket.upsert(JsonArrayDocument.create(uuid, JsonArray.from(1.5, 2)));
+        CouchbaseDoubleList list = new CouchbaseDoubleList(uuid, bucket);
+        list.addDouble(3.25);
+
+        assertArrayEquals(new double[] { 1.5, 2, 3.25 }, list.toDoubleArray(), 0d);
+        assertEquals(Double.valueOf(2), list.get(1));
+        DoubleIterator iterator = list.doubleIterator();
+        assertEquals(1.5, iterator.nextDouble(), 0d);
+    }
+}
@@ -1,17 +1,30 @@
 package com.couchbase.client.commons;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import com.couchbase.client.java.Bucket;
 import com.couchbase.client.java.Cluster;
 import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
 import com.couchbase.client.java.document.JsonArrayDocument;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonArray;
@@ -23,6 +36,7 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import rx.functions.Func0;
 
 public class CouchbaseMapTest {
 
@@ -60,6 +74,23 @@ public class CouchbaseMapTest {
         return UUID.randomUUID().toString();
     }
 
+    @Test
+    public void testKeysWithPathSyntax() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        map.put("a.b", 1);
+        map.upsert("c[0]", 2);
+        map.put("d`e", 3);
+
+        assertEquals(1, map.get("a.b"));
+        assertTrue(map.containsKey("c[0]"));
+        assertEquals(3, map.remove("d`e"));
+        assertEquals(Collections.<String, Object>singletonMap("a.b", 1), map.getAll(Arrays.asList("a.b", "d`e")));
+        JsonObject content = bucket.get(uuid).content();
+        assertEquals(1, content.get("a.b"));
+        assertEquals(2, content.get("c[0]"));
+        assertFalse(content.containsKey("a"));
+    }
+
     @Test
     public void testConstructorWithPreExistingDocument() {
         JsonDocument preExisting = JsonDocument.create(uuid, JsonObject.create().put("test", 123).put("foo", "bar"));
@@ -107,4 +138,495 @@ public class CouchbaseMapTest {
 
         assertEquals(0, map.size());
     }
+
+    @Test
+    public void testEntrySetKeepsNestedJsonValues() {
+        JsonObject sub = JsonObject.create().put("subKey", "subValue");
+        JsonArray array = JsonArray.from("A", "B");
+        bucket.upsert(JsonDocument.create(uuid, JsonObject.create().put("sub", sub).put("array", array)));
+
+        Map<String, Object> map = new CouchbaseMap<Object>(uuid, bucket);
+
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getKey().equals("sub")) {
+                assertTrue(entry.getValue() instanceof JsonObject);
+                assertEquals(sub, entry.getValue());
+            } else {
+                assertTrue(entry.getValue() instanceof JsonArray);
+                assertEquals(array, entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testKeySetSkipsValues() {
+        JsonObject sub = JsonObject.create().put("subKey", JsonArray.from(1, 2, 3));
+        bucket.upsert(JsonDocument.create(uuid, JsonObject.create().put("sub", sub).put("foo", "bar")));
+
+        Map<String, Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        Set<String> keys = map.keySet();
+
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains("sub"));
+        assertTrue(keys.contains("foo"));
+        assertTrue(keys.remove("foo"));
+        assertEquals(Collections.singleton("sub"), map.keySet());
+    }
+
+    @Test
+    public void testKeySetOnDocumentOfWrongTypeFails() {
+        bucket.upsert(JsonArrayDocument.create(uuid, JsonArray.from("test")));
+
+        Map<String, Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        try {
+            map.keySet().iterator();
+            fail("Expected TranscodingException");
+        } catch (TranscodingException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testEntrySetValueWritesThrough() {
+        Map<String, Object> map = new CouchbaseMap<Object>(uuid, bucket, Collections.singletonMap("foo", "bar"));
+
+        Map.Entry<String, Object> entry = map.entrySet().iterator().next();
+        assertEquals("bar", entry.setValue("baz"));
+        assertEquals("baz", map.get("foo"));
+    }
+
+    @Test
+    public void testGetAllSpanningSeveralLookups() {
+        Map<String, Object> data = new HashMap<String, Object>();
+        for (int i = 0; i < 40; i++) {
+            data.put("key" + i, i);
+        }
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket, data);
+
+        List<String> keys = new ArrayList<String>(data.keySet());
+        keys.add("absent");
+        Map<String, Object> values = map.getAll(keys);
+
+        assertEquals(data, values);
+        assertFalse(values.containsKey("absent"));
+    }
+
+    @Test
+    public void testContainsKeys() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket, Collections.singletonMap("foo", "bar"));
+
+        Map<String, Boolean> present = map.containsKeys(Arrays.asList("foo", "bar"));
+
+        assertEquals(Boolean.TRUE, present.get("foo"));
+        assertEquals(Boolean.FALSE, present.get("bar"));
+        assertTrue(map.containsAllKeys(Collections.singleton("foo")));
+        assertFalse(map.containsAllKeys(Arrays.asList("foo", "bar")));
+    }
+
+    @Test
+    public void testSnapshotIsLocalAndDetectsChanges() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        map.put("a", 1);
+        map.put("sub", JsonObject.create().put("b", 2));
+        MapSnapshot<Object> snapshot = map.snapshot();
+
+        assertEquals(2, snapshot.size());
+        assertEquals(1, snapshot.get("a"));
+        assertTrue(snapshot.get("sub") instanceof JsonObject);
+        assertFalse(snapshot.isStale());
+        assertSame(snapshot, snapshot.refresh());
+
+        map.remove("a");
+        assertTrue(snapshot.containsKey("a"));
+        assertTrue(snapshot.isStale());
+        assertEquals(Collections.singleton("sub"), snapshot.refresh().keySet());
+    }
+
+    @Test
+    public void testSnapshotStalenessProbeWorksOnObjectRoots() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        MapSnapshot<Object> snapshot = map.snapshot();
+        assertFalse(snapshot.isStale());
+
+        map.put("a", 1);
+        assertTrue(snapshot.isStale());
+        MapSnapshot<Object> refreshed = snapshot.refresh();
+        assertFalse(refreshed.isStale());
+
+        bucket.remove(uuid);
+        assertTrue(refreshed.isStale());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+
+        map.snapshot().put("a", 1);
+    }
+
+    @Test
+    public void testUpdateAppliesNetChanges() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+
+        map.update(new Mutator<Map<String, Object>>() {
+            @Override
+            public void mutate(Map<String, Object> view) {
+                view.remove("a");
+                view.put("b", 20);
+                view.put("d", 4);
+                view.put("temp", 0);
+                view.remove("temp");
+                view.entrySet().iterator().next().setValue(200);
+            }
+        });
+
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("b", 200);
+        expected.put("c", 3);
+        expected.put("d", 4);
+        assertEquals(expected, new HashMap<String, Object>(map));
+    }
+
+    @Test
+    public void testUpdateWithManyChangesReplacesDocument() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        map.put("a", 1);
+
+        map.update(new Mutator<Map<String, Object>>() {
+            @Override
+            public void mutate(Map<String, Object> view) {
+                view.clear();
+                for (int i = 0; i < 20; i++) {
+                    view.put("key" + i, i);
+                }
+            }
+        });
+
+        assertEquals(20, map.size());
+        assertFalse(map.containsKey("a"));
+        assertEquals(19, map.get("key19"));
+    }
+
+    @Test
+    public void testCompute() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        BiFunction<String, Object, Object> increment = new BiFunction<String, Object, Object>() {
+            @Override
+            public Object apply(String key, Object current) {
+                return current == null ? 1 : (Integer) current + 1;
+            }
+        };
+
+        assertEquals(1, map.compute("counter", increment));
+        assertEquals(2, map.compute("counter", increment));
+        assertNull(map.compute("counter", new BiFunction<String, Object, Object>() {
+            @Override
+            public Object apply(String key, Object current) {
+                return null;
+            }
+        }));
+        assertFalse(map.containsKey("counter"));
+    }
+
+    @Test
+    public void testComputeIfAbsentAndIfPresent() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        final int[] calls = { 0 };
+        Function<String, Object> mapping = new Function<String, Object>() {
+            @Override
+            public Object apply(String key) {
+                calls[0]++;
+                return key.toUpperCase();
+            }
+        };
+        BiFunction<String, Object, Object> append = new BiFunction<String, Object, Object>() {
+            @Override
+            public Object apply(String key, Object current) {
+                return current + "!";
+            }
+        };
+
+        assertNull(map.computeIfPresent("a", append));
+        assertFalse(map.containsKey("a"));
+        assertEquals("A", map.computeIfAbsent("a", mapping));
+        assertEquals("A", map.computeIfAbsent("a", mapping));
+        assertEquals(1, calls[0]);
+        assertEquals("A!", map.computeIfPresent("a", append));
+        assertEquals("A!", map.get("a"));
+    }
+
+    @Test
+    public void testMerge() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        BiFunction<Object, Object, Object> concat = new BiFunction<Object, Object, Object>() {
+            @Override
+            public Object apply(Object current, Object value) {
+                return current + "," + value;
+            }
+        };
+
+        assertEquals("a", map.merge("k", "a", concat));
+        assertEquals("a,b", map.merge("k", "b", concat));
+        assertEquals("a,b", map.get("k"));
+    }
+
+    @Test
+    public void testComputeThroughMapInterfaceIsAtomic() {
+        Map<String, Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        final int[] attempts = { 0 };
+
+        Object result = map.compute("k", (key, current) -> {
+            if (attempts[0]++ == 0) {
+                //simulate a concurrent writer, which the default Map.compute would overwrite
+                new CouchbaseMap<Object>(uuid, bucket).put("k", "concurrent");
+            }
+            return current + "+mine";
+        });
+
+        assertEquals(2, attempts[0]);
+        assertEquals("concurrent+mine", result);
+        assertEquals(1, map.merge("n", 1, (current, value) -> (Integer) current + (Integer) value));
+        assertEquals(3, map.merge("n", 2, (current, value) -> (Integer) current + (Integer) value));
+    }
+
+    @Test
+    public void testComputeRetriesOnConcurrentModification() {
+        final CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+        final int[] attempts = { 0 };
+
+        Object result = map.compute("k", new BiFunction<String, Object, Object>() {
+            @Override
+            public Object apply(String key, Object current) {
+                if (attempts[0]++ == 0) {
+                    //simulate a concurrent writer
+                    new CouchbaseMap<Object>(uuid, bucket).put("k", "concurrent");
+                }
+                return current + "+mine";
+            }
+        });
+
+        assertEquals(2, attempts[0]);
+        assertEquals("concurrent+mine", result);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testComputeGivesUpAfterMaxAttempts() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .maxAttempts(2)
+                .build());
+        final CouchbaseMap<Object> map = collections.map(uuid);
+
+        map.compute("k", new BiFunction<String, Object, Object>() {
+            @Override
+            public Object apply(String key, Object current) {
+                //always modified concurrently
+                new CouchbaseMap<Object>(uuid, bucket).put("other", System.nanoTime());
+                return "value";
+            }
+        });
+    }
+
+    @Test
+    public void testUpsert() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket);
+
+        map.upsert("k", "a");
+        map.upsert("k", "b");
+
+        assertEquals("b", map.get("k"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testAdaptivePutsUnderContention() throws InterruptedException {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .adaptiveWrites(true)
+                .build());
+        final CouchbaseMap<Object> map = collections.map(uuid);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int writer = t;
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20; i++) {
+                            map.put("key" + writer, i);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(8, map.size());
+        assertEquals(19, map.get("key0"));
+    }
+
+    @Test
+    public void testAdaptiveUpdatesUnderContention() throws InterruptedException {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .adaptiveWrites(true)
+                .build());
+        final CouchbaseMap<Object> map = collections.map(uuid, Collections.singletonMap("counter", 0));
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final Mutator<Map<String, Object>> increment = new Mutator<Map<String, Object>>() {
+            @Override
+            public void mutate(Map<String, Object> view) {
+                view.put("counter", (Integer) view.get("counter") + 1);
+            }
+        };
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20; i++) {
+                            map.update(increment);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(160, map.get("counter"));
+    }
+
+    @Test
+    public void testOperationTimeout() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .operationTimeout(1, TimeUnit.MINUTES)
+                .build());
+        final CouchbaseMap<Object> map = collections.map(uuid);
+        assertNull(map.put("key", "value"));
+
+        try {
+            collections.withTimeout(1, TimeUnit.NANOSECONDS, new Func0<Object>() {
+                @Override
+                public Object call() {
+                    return map.put("key", "other");
+                }
+            });
+            fail("expected a timeout");
+        } catch (OperationTimeoutException e) {
+            //expected
+        }
+        assertEquals("value", map.get("key"));
+    }
+
+    @Test
+    public void testDurableWrites() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .durability(PersistTo.MASTER, ReplicateTo.NONE)
+                .build());
+        CouchbaseMap<Object> map = collections.map(uuid);
+        map.put("key", "value");
+        map.upsert("other", 1);
+        assertEquals("value", map.remove("key"));
+
+        assertEquals(Collections.<String, Object>singletonMap("other", 1), bucket.get(uuid).content().toMap());
+    }
+
+    @Test
+    public void testReplicaReads() {
+        for (ReplicaReads mode : new ReplicaReads[] { ReplicaReads.FIRST_RESPONDER, ReplicaReads.ROUND_ROBIN }) {
+            CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                    .replicaReads(mode)
+                    .build());
+            CouchbaseMap<Object> map = collections.map(uuid);
+            assertTrue(map.readsMayBeStale());
+            map.put("key", mode.name());
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals(mode.name(), map.get("key"));
+                assertTrue(map.containsKey("key"));
+                assertFalse(map.containsKey("absent"));
+                assertEquals(1, map.size());
+            }
+        }
+        assertFalse(new CouchbaseMap<Object>(uuid, bucket).readsMayBeStale());
+    }
+
+    @Test
+    public void testLiveView() {
+        CouchbaseMap<Object> map = new CouchbaseMap<Object>(uuid, bucket, Collections.singletonMap("key", "value"));
+        LocalChangeSource source = new LocalChangeSource();
+        LiveView<MapSnapshot<Object>> view = map.liveView(source);
+        assertEquals(Collections.<String, Object>singletonMap("key", "value"), view.get());
+
+        map.put("other", 1);
+        JsonDocument current = bucket.get(uuid);
+        source.publish(DocumentChange.mutation(uuid, current.cas(), current.content().toString()));
+        assertEquals(2, view.get().size());
+        assertEquals(1, view.get().get("other"));
+        assertFalse(view.get().isStale());
+
+        source.publish(DocumentChange.deletion(uuid, current.cas() + 1));
+        assertTrue(view.get().isEmpty());
+        view.close();
+    }
+
+    @Test
+    public void testHotKeys() {
+        CouchbaseCollections collections = new CouchbaseCollections(bucket, CollectionOptions.builder()
+                .trackHotKeys(10)
+                .build());
+        CouchbaseMap<Object> map = collections.map(uuid);
+        for (int i = 0; i < 5; i++) {
+            map.put("hot", i);
+        }
+        map.get("cold");
+
+        HotKeyReport report = collections.hotKeys();
+
+        assertEquals(6, report.operations());
+        assertEquals(uuid, report.documentsByOperations().get(0).id());
+        assertEquals("hot", report.keysByOperations().get(0).key());
+        assertEquals(5, report.keysByOperations().get(0).count());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testHotKeysRequireTracking() {
+        new CouchbaseCollections(bucket).hotKeys();
+    }
+
+    @Test
+    public void testDocumentExpiry() throws InterruptedException {
+        CouchbaseMap<String> map = new CouchbaseMap<String>(uuid, bucket, 2);
+        map.put("key", "value");
+        assertEquals(2, map.expiry());
+
+        Thread.sleep(1000);
+        assertTrue(map.touch());
+        Thread.sleep(1500);
+        assertEquals("value", bucket.get(uuid).content().getString("key"));
+
+        Thread.sleep(3000);
+        assertNull(bucket.get(uuid));
+        assertFalse(map.touch());
+    }
 }
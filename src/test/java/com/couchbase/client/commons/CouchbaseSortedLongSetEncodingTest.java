@@ -0,0 +1,42 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.couchbase.client.commons.binary.BinaryWriter;
+import org.junit.Test;
+
+public class CouchbaseSortedLongSetEncodingTest {
+
+    @Test
+    public void shouldRoundTripExtremeValues() {
+        long[] values = { Long.MIN_VALUE, -1L, 0L, 1L, Long.MAX_VALUE };
+
+        BinaryWriter encoded = CouchbaseSortedLongSet.encode(values, values.length);
+
+        assertArrayEquals(values, CouchbaseSortedLongSet.decode("doc", encoded.toByteArray()));
+    }
+
+    @Test
+    public void shouldEncodeDenseValuesOnOneBytePerElement() {
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000000000L + i * 3;
+        }
+
+        BinaryWriter encoded = CouchbaseSortedLongSet.encode(values, values.length);
+
+        //count (2 bytes) + first value (5 bytes) + one byte per delta
+        assertEquals(2 + 5 + 999, encoded.size());
+        assertArrayEquals(values, CouchbaseSortedLongSet.decode("doc", encoded.toByteArray()));
+    }
+
+    @Test
+    public void shouldEncodeOnlyTheGivenSize() {
+        long[] values = { 1L, 2L, 3L, 4L };
+
+        BinaryWriter encoded = CouchbaseSortedLongSet.encode(values, 2);
+
+        assertArrayEquals(new long[] { 1L, 2L }, CouchbaseSortedLongSet.decode("doc", encoded.toByteArray()));
+    }
+}
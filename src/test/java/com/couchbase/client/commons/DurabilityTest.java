@@ -0,0 +1,36 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.couchbase.client.java.PersistTo;
+import com.couchbase.client.java.ReplicateTo;
+import org.junit.Test;
+
+public class DurabilityTest {
+
+    @Test
+    public void shouldHaveNoRequirementByDefault() {
+        assertTrue(CollectionOptions.DEFAULT.durability().isNone());
+        assertSame(Durability.NONE, Durability.of(PersistTo.NONE, ReplicateTo.NONE));
+        assertFalse(Durability.of(PersistTo.MASTER, ReplicateTo.NONE).isNone());
+        assertFalse(Durability.of(PersistTo.NONE, ReplicateTo.ONE).isNone());
+    }
+
+    @Test
+    public void shouldCombineToStrongestRequirements() {
+        Durability persisted = Durability.of(PersistTo.TWO, ReplicateTo.NONE);
+        Durability replicated = Durability.of(PersistTo.MASTER, ReplicateTo.ONE);
+
+        Durability both = persisted.strongest(replicated);
+        assertEquals(PersistTo.TWO, both.persistTo());
+        assertEquals(ReplicateTo.ONE, both.replicateTo());
+
+        assertEquals(PersistTo.MASTER, Durability.NONE.strongest(replicated).persistTo());
+        assertEquals(PersistTo.ONE, Durability.of(PersistTo.ONE, ReplicateTo.NONE)
+                .strongest(Durability.of(PersistTo.MASTER, ReplicateTo.NONE)).persistTo());
+        assertSame(Durability.NONE, Durability.NONE.strongest(Durability.NONE));
+    }
+}
@@ -0,0 +1,45 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HotKeyTrackerTest {
+
+    @Test
+    public void shouldReportDocumentsAndKeysSeparately() {
+        HotKeyTracker tracker = new HotKeyTracker(10);
+        tracker.operation("map", "a");
+        tracker.operation("map", "a");
+        tracker.operation("map", "b");
+        tracker.operation("list", null);
+        tracker.conflict("map", "a");
+
+        HotKeyReport report = tracker.report(false);
+
+        assertEquals(4, report.operations());
+        assertEquals(1, report.conflicts());
+        assertEquals("map", report.documentsByOperations().get(0).id());
+        assertNull(report.documentsByOperations().get(0).key());
+        assertEquals(3, report.documentsByOperations().get(0).count());
+        assertEquals(2, report.keysByOperations().size());
+        assertEquals("a", report.keysByOperations().get(0).key());
+        assertEquals(2, report.keysByOperations().get(0).count());
+        assertEquals("map", report.keysByConflicts().get(0).id());
+        assertEquals("a", report.keysByConflicts().get(0).key());
+    }
+
+    @Test
+    public void shouldResetAfterReport() {
+        HotKeyTracker tracker = new HotKeyTracker(10);
+        tracker.operation("doc", null);
+
+        assertEquals(1, tracker.report(true).operations());
+        HotKeyReport report = tracker.report(false);
+
+        assertEquals(0, report.operations());
+        assertTrue(report.documentsByOperations().isEmpty());
+    }
+}
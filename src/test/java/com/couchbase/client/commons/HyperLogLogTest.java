@@ -0,0 +1,81 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void shouldBeExactForSmallCardinalities() {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        assertTrue(sketch.isEmpty());
+        assertEquals(0, sketch.estimate());
+
+        for (int i = 0; i < 10; i++) {
+            sketch.add("element" + i);
+            sketch.add("element" + i);
+        }
+
+        assertEquals(10, sketch.estimate());
+    }
+
+    @Test
+    public void shouldEstimateWithinStandardError() {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        int cardinality = 1000000;
+        for (int i = 0; i < cardinality; i++) {
+            sketch.add("element" + i);
+        }
+
+        //3 standard errors of 0.8%
+        double error = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+        assertTrue("error " + error, error < 0.025);
+    }
+
+    @Test
+    public void shouldEstimateUnionOnMerge() {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        for (int i = 0; i < 20000; i++) {
+            a.add("element" + i);
+            b.add("element" + (i + 10000));
+        }
+
+        assertTrue(a.merge(b));
+        assertFalse(a.merge(b));
+
+        double error = Math.abs(a.estimate() - 30000) / 30000.0;
+        assertTrue("error " + error, error < 0.05);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMergeOfDifferentPrecisions() {
+        new HyperLogLog(10).merge(new HyperLogLog(11));
+    }
+
+    @Test
+    public void shouldRoundTripEncoding() {
+        HyperLogLog sketch = new HyperLogLog(8);
+        sketch.add("a");
+        sketch.add("b");
+
+        HyperLogLog decoded = HyperLogLog.decode("doc", sketch.encode().toByteArray());
+
+        assertEquals(8, decoded.precision());
+        assertEquals(sketch.estimate(), decoded.estimate());
+        assertFalse(decoded.merge(sketch));
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldRejectTruncatedContent() {
+        byte[] content = new HyperLogLog(8).encode().toByteArray();
+
+        HyperLogLog.decode("doc", Arrays.copyOf(content, content.length - 1));
+    }
+}
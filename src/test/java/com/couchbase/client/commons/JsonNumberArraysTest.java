@@ -0,0 +1,51 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.Test;
+
+public class JsonNumberArraysTest {
+
+    @Test
+    public void shouldDecodeLongs() {
+        long[] expected = new long[100];
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = Long.MAX_VALUE - i;
+            json.append(i == 0 ? "" : ",").append(expected[i]);
+        }
+        json.append("]");
+
+        assertArrayEquals(expected, JsonNumberArrays.decodeLongs("id", json.toString()));
+        assertArrayEquals(new long[0], JsonNumberArrays.decodeLongs("id", "[]"));
+    }
+
+    @Test
+    public void shouldDecodeDoubles() {
+        assertArrayEquals(new double[] { 1.5, -2, 3e10 },
+                JsonNumberArrays.decodeDoubles("id", "[1.5, -2, 3e10]"), 0d);
+    }
+
+    @Test
+    public void shouldCountWithoutDecoding() {
+        assertEquals(4, JsonNumberArrays.count("id", "[1, {\"a\": [1, 2]}, [3, 4], \"foo\"]"));
+        assertEquals(0, JsonNumberArrays.count("id", "[]"));
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldFailOnNonIntegralElement() {
+        JsonNumberArrays.decodeLongs("id", "[1, 2.5]");
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldFailOnNullElement() {
+        JsonNumberArrays.decodeDoubles("id", "[1, null]");
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldFailOnObjectRoot() {
+        JsonNumberArrays.count("id", "{\"a\": 1}");
+    }
+}
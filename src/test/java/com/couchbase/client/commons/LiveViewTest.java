@@ -0,0 +1,143 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import rx.Observable;
+
+public class LiveViewTest {
+
+    @Test
+    public void shouldApplyChangesWithoutReloading() {
+        LocalChangeSource source = new LocalChangeSource();
+        CountingSnapshots snapshots = new CountingSnapshots(source, null);
+        LiveView<String> view = new LiveView<String>(source, "doc", snapshots);
+        assertEquals("loaded", view.get());
+        assertEquals(0, view.cas());
+
+        source.publish(DocumentChange.mutation("doc", 1, "first"));
+        source.publish(DocumentChange.mutation("other", 2, "ignored"));
+        source.publish(DocumentChange.mutation("doc", 3, "second"));
+        assertEquals("second", view.get());
+        assertEquals(3, view.cas());
+
+        source.publish(DocumentChange.deletion("doc", 4));
+        assertEquals("", view.get());
+        assertEquals(1, snapshots.loads);
+        assertTrue(view.isLive());
+    }
+
+    @Test
+    public void shouldPreferChangesReceivedWhileLoading() {
+        LocalChangeSource source = new LocalChangeSource();
+        CountingSnapshots snapshots = new CountingSnapshots(source, DocumentChange.mutation("doc", 5, "during load"));
+        LiveView<String> view = new LiveView<String>(source, "doc", snapshots);
+
+        assertEquals("during load", view.get());
+        assertEquals(5, view.cas());
+    }
+
+    @Test
+    public void shouldStopFollowingOnceClosed() {
+        LocalChangeSource source = new LocalChangeSource();
+        LiveView<String> view = new LiveView<String>(source, "doc", new CountingSnapshots(source, null));
+        view.close();
+        source.publish(DocumentChange.mutation("doc", 1, "after close"));
+
+        assertEquals("loaded", view.get());
+        assertFalse(view.isLive());
+        assertNull(view.error());
+    }
+
+    @Test
+    public void shouldStopFollowingOnSourceFailure() {
+        final IllegalStateException failure = new IllegalStateException("feed lost");
+        ChangeSource source = new ChangeSource() {
+            @Override
+            public Observable<DocumentChange> changes(String id) {
+                return Observable.concat(Observable.just(DocumentChange.mutation(id, 1, "first")),
+                        Observable.<DocumentChange>error(failure));
+            }
+        };
+        LiveView<String> view = new LiveView<String>(source, "doc", new CountingSnapshots(null, null));
+
+        assertEquals("first", view.get());
+        assertFalse(view.isLive());
+        assertSame(failure, view.error());
+    }
+
+    @Test
+    public void shouldUnsubscribeWhenLoadFails() {
+        final List<String> subscriptions = new ArrayList<String>();
+        ChangeSource source = new ChangeSource() {
+            @Override
+            public Observable<DocumentChange> changes(final String id) {
+                return Observable.<DocumentChange>never()
+                        .doOnSubscribe(new rx.functions.Action0() {
+                            @Override
+                            public void call() {
+                                subscriptions.add(id);
+                            }
+                        })
+                        .doOnUnsubscribe(new rx.functions.Action0() {
+                            @Override
+                            public void call() {
+                                subscriptions.remove(id);
+                            }
+                        });
+            }
+        };
+        try {
+            new LiveView<String>(source, "doc", new LiveView.Snapshots<String>() {
+                @Override
+                public String load() {
+                    throw new IllegalStateException("load failed");
+                }
+
+                @Override
+                public String decode(DocumentChange change) {
+                    return change.content();
+                }
+            });
+            fail("expected the failure of the load");
+        } catch (IllegalStateException e) {
+            assertTrue(subscriptions.isEmpty());
+        }
+    }
+
+    /**
+     * Loads "loaded", optionally publishing a change during the load, and decodes changes to their content.
+     */
+    private static class CountingSnapshots implements LiveView.Snapshots<String> {
+        private final LocalChangeSource source;
+        private final DocumentChange duringLoad;
+        int loads;
+
+        CountingSnapshots(LocalChangeSource source, DocumentChange duringLoad) {
+            this.source = source;
+            this.duringLoad = duringLoad;
+        }
+
+        @Override
+        public String load() {
+            loads++;
+            if (duringLoad != null) {
+                source.publish(duringLoad);
+            }
+            return "loaded";
+        }
+
+        @Override
+        public String decode(DocumentChange change) {
+            return change.isDeletion() ? "" : change.content();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class Murmur3Test {
+
+    @Test
+    public void shouldMatchReferenceImplementation() {
+        //reference values of MurmurHash3_x64_128 with a seed of 0
+        long[] hello = Murmur3.hash128("hello");
+        assertEquals(0xcbd8a7b341bd9b02L, hello[0]);
+        assertEquals(0x5b1e906a48ae1d19L, hello[1]);
+
+        long[] empty = Murmur3.hash128("");
+        assertEquals(0L, empty[0]);
+        assertEquals(0L, empty[1]);
+    }
+
+    @Test
+    public void shouldHashAllTailLengths() {
+        //every length from 0 to 2 blocks and a tail gives a distinct hash
+        Set<Long> hashes = new HashSet<Long>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            hashes.add(Murmur3.hash128(value.toString())[0]);
+            value.append('a');
+        }
+        assertEquals(40, hashes.size());
+    }
+}
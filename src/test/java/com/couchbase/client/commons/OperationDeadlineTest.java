@@ -0,0 +1,102 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import rx.functions.Func0;
+
+public class OperationDeadlineTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldHaveNoDeadlineByDefault() {
+        CouchbaseCollections collections = new CouchbaseCollections(null);
+        assertEquals(Long.MAX_VALUE, collections.remainingNanos());
+
+        Long outer = collections.beginOperation();
+        assertEquals(Long.MAX_VALUE, collections.remainingNanos());
+        collections.endOperation(outer);
+    }
+
+    @Test
+    public void shouldShareOperationTimeoutWithinOperation() {
+        CouchbaseCollections collections = new CouchbaseCollections(null, CollectionOptions.builder()
+                .operationTimeout(1, TimeUnit.SECONDS)
+                .build());
+
+        Long outer = collections.beginOperation();
+        long remaining = collections.remainingNanos();
+        assertTrue(remaining > 0 && remaining <= SECOND);
+        assertTrue(collections.remainingNanos() <= remaining);
+        collections.endOperation(outer);
+
+        assertEquals(Long.MAX_VALUE, collections.remainingNanos());
+    }
+
+    @Test
+    public void shouldApplyEarliestDeadline() {
+        final CouchbaseCollections collections = new CouchbaseCollections(null, CollectionOptions.builder()
+                .operationTimeout(1, TimeUnit.MINUTES)
+                .build());
+
+        long remaining = collections.withTimeout(1, TimeUnit.SECONDS, new Func0<Long>() {
+            @Override
+            public Long call() {
+                Long outer = collections.beginOperation();
+                try {
+                    return collections.withTimeout(1, TimeUnit.HOURS, new Func0<Long>() {
+                        @Override
+                        public Long call() {
+                            return collections.remainingNanos();
+                        }
+                    });
+                } finally {
+                    collections.endOperation(outer);
+                }
+            }
+        });
+
+        assertTrue(remaining > 0 && remaining <= SECOND);
+        assertEquals(Long.MAX_VALUE, collections.remainingNanos());
+    }
+
+    @Test
+    public void shouldFailOnceDeadlinePassed() {
+        final CouchbaseCollections collections = new CouchbaseCollections(null);
+        try {
+            collections.withTimeout(10, TimeUnit.MILLISECONDS, new Func0<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    collections.beginWrite("doc").release();
+                    return null;
+                }
+            });
+            fail("expected a timeout");
+        } catch (OperationTimeoutException e) {
+            //expected
+        }
+        assertEquals(Long.MAX_VALUE, collections.remainingNanos());
+    }
+
+    @Test
+    public void shouldNotOverflowWithHugeTimeout() {
+        final CouchbaseCollections collections = new CouchbaseCollections(null);
+        long remaining = collections.withTimeout(Long.MAX_VALUE, TimeUnit.DAYS, new Func0<Long>() {
+            @Override
+            public Long call() {
+                return collections.remainingNanos();
+            }
+        });
+        assertTrue(remaining > SECOND);
+    }
+}
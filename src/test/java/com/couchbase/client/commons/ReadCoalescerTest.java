@@ -0,0 +1,149 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReadCoalescerTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldShareInFlightRead() throws Exception {
+        final ReadCoalescer coalescer = new ReadCoalescer();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> loader = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                loading.countDown();
+                release.await();
+                return loads.incrementAndGet();
+            }
+        };
+
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        results.add(executor.submit(read(coalescer, loader, false)));
+        loading.await();
+        for (int i = 0; i < 10; i++) {
+            results.add(executor.submit(read(coalescer, loader, false)));
+        }
+        //give the joiners a chance to join
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    public void shouldNotJoinInFlightReadWhenFresh() throws Exception {
+        final ReadCoalescer coalescer = new ReadCoalescer();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Integer> slowLoader = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                loading.countDown();
+                release.await();
+                return loads.incrementAndGet();
+            }
+        };
+
+        Future<Integer> first = executor.submit(read(coalescer, slowLoader, false));
+        loading.await();
+        Integer fresh = coalescer.read("key", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return loads.incrementAndGet() * 100;
+            }
+        }, true, Long.MAX_VALUE);
+        release.countDown();
+
+        assertEquals(Integer.valueOf(100), fresh);
+        assertEquals(Integer.valueOf(2), first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldPropagateFailureToAllReaders() {
+        ReadCoalescer coalescer = new ReadCoalescer();
+        try {
+            coalescer.read("key", new Callable<Object>() {
+                @Override
+                public Object call() {
+                    throw new IllegalStateException("expected");
+                }
+            }, false, Long.MAX_VALUE);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("expected", e.getMessage());
+        }
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    public void shouldStopWaitingForInFlightReadOnTimeout() throws Exception {
+        final ReadCoalescer coalescer = new ReadCoalescer();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Integer> slowLoader = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                loading.countDown();
+                release.await();
+                return 1;
+            }
+        };
+
+        Future<Integer> first = executor.submit(read(coalescer, slowLoader, false));
+        loading.await();
+        try {
+            coalescer.read("key", slowLoader, false, TimeUnit.MILLISECONDS.toNanos(50));
+            fail("Expected OperationTimeoutException");
+        } catch (OperationTimeoutException e) {
+            //expected
+        }
+        release.countDown();
+
+        assertEquals(Integer.valueOf(1), first.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    private static Callable<Integer> read(final ReadCoalescer coalescer, final Callable<Integer> loader,
+            final boolean fresh) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return coalescer.read("key", loader, fresh, Long.MAX_VALUE);
+            }
+        };
+    }
+}
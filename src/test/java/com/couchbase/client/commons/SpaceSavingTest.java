@@ -0,0 +1,70 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void shouldCountExactlyUnderCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<String>(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                sketch.offer("item" + i);
+            }
+        }
+
+        List<SpaceSaving.Estimate<String>> top = sketch.top(3);
+
+        assertEquals(3, top.size());
+        assertEquals("item4", top.get(0).item);
+        assertEquals(5, top.get(0).count);
+        assertEquals(0, top.get(0).error);
+        assertEquals("item3", top.get(1).item);
+        assertEquals("item2", top.get(2).item);
+        assertEquals(15, sketch.total());
+    }
+
+    @Test
+    public void shouldFindHeavyHittersInLongTail() {
+        SpaceSaving<String> sketch = new SpaceSaving<String>(20);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            //a third of the stream goes to 3 hot items, the rest to 10000 cold ones
+            if (i % 3 == 0) {
+                sketch.offer("hot" + (i % 9) / 3);
+            } else {
+                sketch.offer("cold" + random.nextInt(10000));
+            }
+        }
+
+        List<SpaceSaving.Estimate<String>> top = sketch.top(3);
+
+        for (SpaceSaving.Estimate<String> estimate : top) {
+            assertTrue(estimate.item, estimate.item.startsWith("hot"));
+            //each hot item was offered 11111 times, which the estimate bounds
+            assertTrue(estimate.count >= 11111);
+            assertTrue(estimate.count - estimate.error <= 11112);
+        }
+    }
+
+    @Test
+    public void shouldForgetEverythingOnClear() {
+        SpaceSaving<String> sketch = new SpaceSaving<String>(2);
+        sketch.offer("a");
+        sketch.offer("b");
+        sketch.offer("c");
+
+        sketch.clear();
+        sketch.offer("d");
+
+        assertEquals(1, sketch.top(10).size());
+        assertEquals("d", sketch.top(10).get(0).item);
+        assertEquals(1, sketch.total());
+    }
+}
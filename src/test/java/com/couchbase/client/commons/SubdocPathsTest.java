@@ -0,0 +1,81 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class SubdocPathsTest {
+
+    private static final int ITERATIONS = 100000;
+
+    @Test
+    public void shouldBuildIndexPaths() {
+        assertEquals("[0]", SubdocPaths.index(0));
+        assertEquals("[1023]", SubdocPaths.index(SubdocPaths.CACHED_INDEXES - 1));
+        assertEquals("[1024]", SubdocPaths.index(SubdocPaths.CACHED_INDEXES));
+        assertEquals("[-1]", SubdocPaths.index(-1));
+    }
+
+    @Test
+    public void shouldReuseCachedIndexPaths() {
+        for (int i = 0; i < SubdocPaths.CACHED_INDEXES; i++) {
+            assertSame(SubdocPaths.index(i), SubdocPaths.index(i));
+        }
+    }
+
+    @Test
+    public void shouldNotCopyPlainStringKeys() {
+        String key = new String("someKey");
+        assertSame(key, SubdocPaths.key(key));
+        assertEquals("12", SubdocPaths.key(12));
+    }
+
+    @Test
+    public void shouldEscapeKeysWithPathSyntax() {
+        assertEquals("`some.key`", SubdocPaths.key("some.key"));
+        assertEquals("`a``b[0]`", SubdocPaths.key("a`b[0]"));
+        assertEquals("`]`", SubdocPaths.key("]"));
+        assertEquals("``", SubdocPaths.key(""));
+    }
+
+    @Test
+    public void shouldEscapeMemberPathsLikeKeys() {
+        assertEquals("entries.key", SubdocPaths.member("entries", "key"));
+        assertEquals("entries.`some.key`", SubdocPaths.member("entries", "some.key"));
+        assertEquals("entries.`a``b[0]`", SubdocPaths.member("entries", "a`b[0]"));
+    }
+
+    /**
+     * Index paths are built for each indexed access of a list, so getting cached ones must not allocate.
+     */
+    @Test
+    public void cachedIndexPathsShouldNotAllocate() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        //warm up so that the measure is not polluted by class loading or compilation
+        int expected = cachedPaths();
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        int length = cachedPaths();
+        long allocated = threads.getThreadAllocatedBytes(thread) - start;
+
+        assertEquals(expected, length);
+        assertTrue("cached paths allocated " + allocated + " bytes", allocated < ITERATIONS);
+    }
+
+    private static int cachedPaths() {
+        int length = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            length += SubdocPaths.index(i % SubdocPaths.CACHED_INDEXES).length();
+        }
+        return length;
+    }
+}
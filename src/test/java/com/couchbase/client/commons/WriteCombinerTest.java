@@ -0,0 +1,201 @@
+package com.couchbase.client.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteCombinerTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCombineConcurrentAdditions() throws Exception {
+        WriteCombiner combiner = new WriteCombiner(TimeUnit.MILLISECONDS.toNanos(200));
+        RecordingFlusher flusher = new RecordingFlusher();
+
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 10; i++) {
+            results.add(executor.submit(add(combiner, "doc", i, flusher)));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            //the flusher only accepts even values
+            assertEquals(i % 2 == 0, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, flusher.batches.size());
+        assertEquals(10, flusher.batches.get(0).size());
+        assertEquals(0, combiner.openCount());
+    }
+
+    @Test
+    public void shouldNotCombineAdditionsToDifferentKeys() throws Exception {
+        WriteCombiner combiner = new WriteCombiner(TimeUnit.MILLISECONDS.toNanos(100));
+        RecordingFlusher flusher = new RecordingFlusher();
+
+        Future<Boolean> a = executor.submit(add(combiner, "a", 0, flusher));
+        Future<Boolean> b = executor.submit(add(combiner, "b", 0, flusher));
+
+        assertTrue(a.get(5, TimeUnit.SECONDS));
+        assertTrue(b.get(5, TimeUnit.SECONDS));
+        assertEquals(2, flusher.batches.size());
+    }
+
+    @Test
+    public void shouldSplitBatchesOverMaxSize() throws Exception {
+        WriteCombiner combiner = new WriteCombiner(TimeUnit.MILLISECONDS.toNanos(500));
+        RecordingFlusher flusher = new RecordingFlusher();
+
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < WriteCombiner.MAX_BATCH_SIZE + 1; i++) {
+            results.add(executor.submit(add(combiner, "doc", 0, flusher)));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertTrue(flusher.batches.size() >= 2);
+        for (List<Object> batch : flusher.batches) {
+            assertTrue(batch.size() <= WriteCombiner.MAX_BATCH_SIZE);
+        }
+    }
+
+    @Test
+    public void shouldFailAllAdditionsOfFailedBatch() throws Exception {
+        WriteCombiner combiner = new WriteCombiner(TimeUnit.MILLISECONDS.toNanos(200));
+        final IllegalStateException failure = new IllegalStateException("flush failed");
+        final CountDownLatch flushed = new CountDownLatch(1);
+        final WriteCombiner.Flusher flusher = new WriteCombiner.Flusher() {
+            @Override
+            public void flush(List<WriteCombiner.Pending> batch) {
+                flushed.countDown();
+                throw failure;
+            }
+        };
+
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(add(combiner, "doc", i, flusher)));
+        }
+
+        for (Future<Boolean> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("expected the failure of the flush");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(0, flushed.getCount());
+    }
+
+    @Test
+    public void shouldFailAllAdditionsOfBatchFailedWithError() throws Exception {
+        WriteCombiner combiner = new WriteCombiner(TimeUnit.MILLISECONDS.toNanos(200));
+        final AssertionError failure = new AssertionError("flush failed");
+        final WriteCombiner.Flusher flusher = new WriteCombiner.Flusher() {
+            @Override
+            public void flush(List<WriteCombiner.Pending> batch) {
+                throw failure;
+            }
+        };
+
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(add(combiner, "doc", i, flusher)));
+        }
+
+        int rethrown = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("expected the failure of the flush");
+            } catch (ExecutionException e) {
+                if (e.getCause() == failure) {
+                    rethrown++;
+                } else {
+                    assertSame(failure, e.getCause().getCause());
+                }
+            }
+        }
+        //only the caller that opened the batch gets the error itself
+        assertEquals(1, rethrown);
+    }
+
+    @Test
+    public void shouldStopWaitingForBatchAfterTimeout() throws Exception {
+        final WriteCombiner combiner = new WriteCombiner(TimeUnit.MILLISECONDS.toNanos(500));
+        final RecordingFlusher flusher = new RecordingFlusher();
+
+        Future<Boolean> first = executor.submit(add(combiner, "doc", 0, flusher));
+        while (combiner.openCount() == 0) {
+            Thread.sleep(1);
+        }
+        Future<Boolean> late = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return combiner.add("doc", 1, flusher, TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        });
+
+        try {
+            late.get(5, TimeUnit.SECONDS);
+            fail("expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OperationTimeoutException);
+        }
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        //the addition was already part of the batch, it is still written
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(0, 1)), flusher.batches);
+    }
+
+    private static Callable<Boolean> add(final WriteCombiner combiner, final String key, final int value,
+            final WriteCombiner.Flusher flusher) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return combiner.add(key, value, flusher);
+            }
+        };
+    }
+
+    private static class RecordingFlusher implements WriteCombiner.Flusher {
+        final List<List<Object>> batches = Collections.synchronizedList(new ArrayList<List<Object>>());
+
+        @Override
+        public void flush(List<WriteCombiner.Pending> batch) {
+            List<Object> values = new ArrayList<Object>();
+            for (WriteCombiner.Pending pending : batch) {
+                values.add(pending.value);
+                pending.complete(((Integer) pending.value) % 2 == 0);
+            }
+            batches.add(values);
+        }
+    }
+}
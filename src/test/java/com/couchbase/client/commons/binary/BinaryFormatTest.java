@@ -0,0 +1,121 @@
+package com.couchbase.client.commons.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.Test;
+
+public class BinaryFormatTest {
+
+    @Test
+    public void shouldRoundTripVarLongs() {
+        long[] values = { 0L, 1L, 127L, 128L, 300L, Integer.MAX_VALUE, Long.MAX_VALUE, -1L, Long.MIN_VALUE };
+        BinaryWriter out = new BinaryWriter(1);
+        for (long value : values) {
+            out.writeVarLong(value);
+            out.writeZigZagVarLong(value);
+            out.writeLong(value);
+        }
+
+        BinaryReader in = new BinaryReader(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, in.readVarLong());
+            assertEquals(value, in.readZigZagVarLong());
+            assertEquals(value, in.readLong());
+        }
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void shouldEncodeSmallValuesOnOneByte() {
+        BinaryWriter out = new BinaryWriter();
+        out.writeVarLong(127L);
+        out.writeZigZagVarLong(-64L);
+        out.writeZigZagVarLong(63L);
+        assertEquals(3, out.size());
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldFailOnTruncatedContent() {
+        BinaryWriter out = new BinaryWriter();
+        out.writeVarLong(Long.MAX_VALUE);
+        byte[] truncated = new byte[out.size() - 1];
+        System.arraycopy(out.buffer(), 0, truncated, 0, truncated.length);
+
+        new BinaryReader(truncated).readVarLong();
+    }
+
+    @Test
+    public void shouldRoundTripCodecs() {
+        BinaryWriter out = new BinaryWriter();
+        ElementCodecs.STRING.write("foo", out);
+        ElementCodecs.STRING.write(null, out);
+        ElementCodecs.STRING.write("", out);
+        ElementCodecs.STRING.write("été ☃", out);
+        ElementCodecs.LONG.write(-42L, out);
+        ElementCodecs.DOUBLE.write(Math.PI, out);
+
+        BinaryReader in = new BinaryReader(out.toByteArray());
+        assertEquals("foo", ElementCodecs.STRING.read(in));
+        assertNull(ElementCodecs.STRING.read(in));
+        assertEquals("", ElementCodecs.STRING.read(in));
+        assertEquals("été ☃", ElementCodecs.STRING.read(in));
+        assertEquals(Long.valueOf(-42L), ElementCodecs.LONG.read(in));
+        assertEquals(Math.PI, ElementCodecs.DOUBLE.read(in), 0d);
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void shouldWrapAndUnwrapWithEachCompression() {
+        BinaryWriter content = new BinaryWriter();
+        for (int i = 0; i < 10000; i++) {
+            ElementCodecs.STRING.write("value" + (i % 100), content);
+        }
+        byte[] expected = content.toByteArray();
+
+        for (Compression compression : Compression.values()) {
+            byte[] stored = BinaryFormat.wrap(content.buffer(), content.size(), compression);
+            assertArrayEquals(compression.name(), expected, BinaryFormat.unwrap("doc", stored));
+        }
+        assertTrue(BinaryFormat.wrap(content.buffer(), content.size(), Compression.DEFLATE).length
+                < expected.length / 5);
+    }
+
+    @Test
+    public void shouldWrapEmptyContent() {
+        for (Compression compression : Compression.values()) {
+            byte[] stored = BinaryFormat.wrap(new byte[0], 0, compression);
+            assertEquals(0, BinaryFormat.unwrap("doc", stored).length);
+        }
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldRejectForeignDocuments() {
+        BinaryFormat.unwrap("doc", "[1,2,3]".getBytes());
+    }
+
+    @Test
+    public void shouldBeSmallerThanJson() {
+        Random random = new Random(42);
+        JsonArray json = JsonArray.create();
+        BinaryWriter binary = new BinaryWriter();
+        binary.writeVarLong(10000);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextInt(1000000);
+            json.add(value);
+            ElementCodecs.LONG.write(value, binary);
+        }
+
+        int jsonSize = json.toString().length();
+        //values below 2^21 take at most 3 bytes as zigzag varints, plus up to 2 bytes for the count
+        assertTrue(binary.size() <= 3 * 10000 + 2);
+        assertTrue(binary.size() * 2 < jsonSize);
+    }
+}
@@ -0,0 +1,89 @@
+package com.couchbase.client.commons.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.couchbase.client.java.error.TranscodingException;
+import org.junit.Test;
+
+public class SnappyCodecTest {
+
+    private static byte[] roundTrip(byte[] data) {
+        byte[] compressed = SnappyCodec.compress(data, 0, data.length);
+        byte[] decompressed = new byte[data.length];
+        SnappyCodec.decompress(compressed, 0, compressed.length, decompressed);
+        assertArrayEquals(data, decompressed);
+        return compressed;
+    }
+
+    @Test
+    public void shouldRoundTripSmallInputs() {
+        roundTrip(new byte[0]);
+        roundTrip(new byte[] { 1 });
+        roundTrip(new byte[] { 1, 2, 3, 4 });
+        roundTrip(new byte[] { 1, 1, 1, 1, 1, 1, 1, 1, 1 });
+    }
+
+    @Test
+    public void shouldRoundTripIncompressibleInput() {
+        byte[] data = new byte[200000];
+        new Random(42).nextBytes(data);
+
+        byte[] compressed = roundTrip(data);
+
+        assertTrue(compressed.length < data.length + data.length / 100 + 16);
+    }
+
+    @Test
+    public void shouldCompressLongRuns() {
+        byte[] data = new byte[100000];
+        Arrays.fill(data, (byte) 'a');
+
+        byte[] compressed = roundTrip(data);
+
+        assertTrue(compressed.length < data.length / 20);
+    }
+
+    @Test
+    public void shouldRoundTripMatchesOfAllLengthsAndOffsets() {
+        Random random = new Random(42);
+        byte[] data = new byte[300000];
+        int position = 0;
+        while (position < data.length) {
+            int length = Math.min(data.length - position, 1 + random.nextInt(100));
+            if (position > 0 && random.nextBoolean()) {
+                //repeat an earlier sequence, near or far, possibly overlapping
+                int from = Math.max(0, position - 1 - random.nextInt(Math.min(position, 70000)));
+                for (int i = 0; i < length; i++) {
+                    data[position + i] = data[from + i];
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    data[position + i] = (byte) random.nextInt(4);
+                }
+            }
+            position += length;
+        }
+
+        roundTrip(data);
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldRejectCopyBeforeStart() {
+        //size 8, then a 1 byte offset copy of 4 bytes at offset 1 before anything was written
+        byte[] malformed = { 8, 0x01, 0x01 };
+
+        SnappyCodec.decompress(malformed, 0, malformed.length, new byte[8]);
+    }
+
+    @Test(expected = TranscodingException.class)
+    public void shouldRejectTruncatedContent() {
+        byte[] data = "some content that is long enough".getBytes();
+        byte[] compressed = SnappyCodec.compress(data, 0, data.length);
+
+        SnappyCodec.decompress(compressed, 0, compressed.length - 1, new byte[data.length]);
+    }
+}